@@ -0,0 +1,135 @@
+/*
+ *     Copyright (C) 2015-2020 chronicle.software
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.core.benchmark;
+
+import net.openhft.chronicle.core.Jvm;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+
+/*
+ * Compares the bulk Memory operations with the byte and long at a time loops they replace.
+ * Run with -Djvm.memory.vectorized=false to compare without ArraysSupport.vectorizedMismatch
+ */
+@State(Scope.Thread)
+public class BulkMemory {
+    @Param({"64", "4096", "4194304"})
+    long size;
+
+    long addr1;
+    long addr2;
+
+    public static void main(String... args) throws RunnerException, InvocationTargetException, IllegalAccessException {
+        if (Jvm.isDebug()) {
+            BulkMemory main = new BulkMemory();
+            main.size = 4096;
+            main.setup();
+            for (Method m : BulkMemory.class.getMethods()) {
+                if (m.getAnnotation(Benchmark.class) != null) {
+                    m.invoke(main);
+                }
+            }
+            main.tearDown();
+        } else {
+            int time = Jvm.getBoolean("longTest") ? 5 : 1;
+            System.out.println("measurementTime: " + time + " secs");
+            Options opt = new OptionsBuilder()
+                    .include(BulkMemory.class.getSimpleName())
+                    .warmupIterations(5)
+                    .measurementIterations(5)
+                    .forks(1)
+                    .mode(Mode.AverageTime)
+                    .measurementTime(TimeValue.seconds(time))
+                    .timeUnit(TimeUnit.NANOSECONDS)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+
+    @Setup
+    public void setup() {
+        addr1 = MEMORY.allocate(size);
+        addr2 = MEMORY.allocate(size);
+        MEMORY.fillMemory(addr1, size, 0x0102030405060708L);
+        MEMORY.copyMemory(addr1, addr2, size);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MEMORY.freeMemory(addr1, size);
+        MEMORY.freeMemory(addr2, size);
+    }
+
+    @Benchmark
+    public long mismatchPerByte() {
+        for (long i = 0; i < size; i++)
+            if (MEMORY.readByte(addr1 + i) != MEMORY.readByte(addr2 + i))
+                return i;
+        return -1;
+    }
+
+    @Benchmark
+    public long mismatchPerLong() {
+        long i = 0;
+        for (; i < size - 7; i += 8)
+            if (MEMORY.readLong(addr1 + i) != MEMORY.readLong(addr2 + i))
+                break;
+        for (; i < size; i++)
+            if (MEMORY.readByte(addr1 + i) != MEMORY.readByte(addr2 + i))
+                return i;
+        return -1;
+    }
+
+    @Benchmark
+    public long mismatch() {
+        return MEMORY.mismatch(addr1, addr2, size);
+    }
+
+    @Benchmark
+    public long fillPerLong() {
+        for (long i = 0; i < size; i += 8)
+            MEMORY.writeLong(addr2 + i, 0x0102030405060708L);
+        return addr2;
+    }
+
+    @Benchmark
+    public long fillMemory() {
+        MEMORY.fillMemory(addr2, size, 0x0102030405060708L);
+        return addr2;
+    }
+
+    @Benchmark
+    public long moveMemoryOverlapping() {
+        MEMORY.moveMemory(addr2, addr2 + 8, size - 8);
+        return addr2;
+    }
+
+    @Benchmark
+    public long copyMemory() {
+        MEMORY.copyMemory(addr1, addr2, size);
+        return addr2;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *     Copyright (C) 2015-2020 chronicle.software
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.core.benchmark;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.util.NanoSampler;
+import net.openhft.chronicle.jlbh.JLBH;
+import net.openhft.chronicle.jlbh.JLBHOptions;
+import net.openhft.chronicle.jlbh.JLBHTask;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares raw latencies with latencies corrected for coordinated omission for a task which stalls occasionally.
+ * JLBH's own correction is turned off so its end to end results are raw, and the "corrected" probe back-fills the
+ * samples each stall delayed with {@link NanoSampler#withExpectedInterval(NanoSampler, long)}.
+ */
+public class CoordinatedOmissionJLBH implements JLBHTask {
+    private static final int THROUGHPUT = Integer.getInteger("throughput", 100_000);
+    private static final int STALL_EVERY = Integer.getInteger("stallEvery", 50_000);
+    private static final long STALL_NS = Long.getLong("stallNs", 2_000_000);
+
+    private JLBH jlbh;
+    private NanoSampler corrected;
+    private long count;
+
+    public static void main(String[] args) {
+        System.setProperty("jvm.resource.tracing", "false");
+        Jvm.init();
+        new JLBH(new JLBHOptions()
+                .jlbhTask(new CoordinatedOmissionJLBH())
+                .iterations(1_000_000)
+                .warmUpIterations(100_000)
+                .runs(3)
+                .throughput(THROUGHPUT)
+                .accountForCoordinatedOmission(false)
+                .recordOSJitter(false))
+                .start();
+    }
+
+    @Override
+    public void init(JLBH jlbh) {
+        this.jlbh = jlbh;
+        corrected = NanoSampler.withExpectedInterval(jlbh.addProbe("corrected"), 1_000_000_000L / THROUGHPUT);
+    }
+
+    @Override
+    public void run(long startTimeNS) {
+        if (++count % STALL_EVERY == 0)
+            LockSupport.parkNanos(STALL_NS);
+        final long durationNs = System.nanoTime() - startTimeNS;
+        jlbh.sample(durationNs);
+        corrected.sampleNanos(durationNs);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ *     Copyright (C) 2015-2020 chronicle.software
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.core.benchmark;
+
+import net.openhft.chronicle.core.Jvm;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+
+/*
+ * is7Bit and firstNon7Bit for longer text than the short sizes in Main, with the non 7-bit byte last.
+ * Run with -Djvm.memory.vectorized=false to compare byte[] without StringCoding.countPositives/hasNegatives
+ */
+@State(Scope.Thread)
+public class Is7Bit {
+    @Param({"16", "64", "1024", "65536"})
+    int size;
+
+    byte[] bytes;
+    char[] chars;
+    long addr;
+
+    public static void main(String... args) throws RunnerException, InvocationTargetException, IllegalAccessException {
+        if (Jvm.isDebug()) {
+            Is7Bit main = new Is7Bit();
+            main.size = 1024;
+            main.setup();
+            for (Method m : Is7Bit.class.getMethods()) {
+                if (m.getAnnotation(Benchmark.class) != null) {
+                    m.invoke(main);
+                }
+            }
+            main.tearDown();
+        } else {
+            int time = Jvm.getBoolean("longTest") ? 5 : 1;
+            System.out.println("measurementTime: " + time + " secs");
+            Options opt = new OptionsBuilder()
+                    .include(Is7Bit.class.getSimpleName())
+                    .warmupIterations(5)
+                    .measurementIterations(5)
+                    .forks(1)
+                    .mode(Mode.AverageTime)
+                    .measurementTime(TimeValue.seconds(time))
+                    .timeUnit(TimeUnit.NANOSECONDS)
+                    .build();
+            new Runner(opt).run();
+        }
+    }
+
+    @Setup
+    public void setup() {
+        bytes = new byte[size];
+        Arrays.fill(bytes, (byte) 'a');
+        bytes[size - 1] = (byte) 0x80;
+        chars = new char[size];
+        Arrays.fill(chars, 'a');
+        chars[size - 1] = 0x80;
+        addr = MEMORY.allocate(size);
+        MEMORY.copyMemory(bytes, 0, addr, size);
+    }
+
+    @TearDown
+    public void tearDown() {
+        MEMORY.freeMemory(addr, size);
+    }
+
+    @Benchmark
+    public boolean is7bitBytes() {
+        return MEMORY.is7Bit(bytes, 0, size);
+    }
+
+    @Benchmark
+    public boolean is7bitChars() {
+        return MEMORY.is7Bit(chars, 0, size);
+    }
+
+    @Benchmark
+    public boolean is7bitAddr() {
+        return MEMORY.is7Bit(addr, size);
+    }
+
+    @Benchmark
+    public int firstNon7bitBytes() {
+        return MEMORY.firstNon7Bit(bytes, 0, size);
+    }
+
+    @Benchmark
+    public int firstNon7bitChars() {
+        return MEMORY.firstNon7Bit(chars, 0, size);
+    }
+
+    @Benchmark
+    public int firstNon7bitAddr() {
+        return MEMORY.firstNon7Bit(addr, size);
+    }
+}
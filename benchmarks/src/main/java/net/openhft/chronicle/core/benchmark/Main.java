@@ -270,6 +270,26 @@ Main.partialBytes:partialBytes·p1.00    sample            289280.000          n
         count++;
         return UnsafeMemory.INSTANCE.is7Bit(addr[i] + o, s);
     }
+
+    //    @Benchmark
+    public int firstNon7bitBytes() {
+        int i = count & 3;
+        int s = size[(count >> 2) & 7];
+        int o = (count >> 6) & 7;
+        count++;
+        return UnsafeMemory.INSTANCE.firstNon7Bit(bytes[i], o, s);
+    }
+
+    //    @Benchmark
+    public int firstNon7bitAddr() {
+        int i = count & 3;
+        int s = size[(count >> 2) & 7];
+        int o = (count >> 6) & 7;
+        count++;
+        return UnsafeMemory.INSTANCE.firstNon7Bit(addr[i] + o, s);
+    }
+
+    // for long inputs see Is7Bit
 */
 
     double value = 0;
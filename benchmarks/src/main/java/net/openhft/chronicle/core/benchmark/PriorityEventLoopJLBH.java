@@ -0,0 +1,94 @@
+/*
+ *     Copyright (C) 2015-2020 chronicle.software
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.openhft.chronicle.core.benchmark;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.threads.EventHandler;
+import net.openhft.chronicle.core.threads.HandlerPriority;
+import net.openhft.chronicle.core.threads.Pauser;
+import net.openhft.chronicle.core.threads.PriorityEventLoop;
+import net.openhft.chronicle.jlbh.JLBH;
+import net.openhft.chronicle.jlbh.JLBHOptions;
+import net.openhft.chronicle.jlbh.JLBHTask;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the overhead of a {@link PriorityEventLoop}, as the time from publishing a value to a HIGH handler seeing it
+ * while the loop also runs a number of idle MEDIUM handlers.
+ * <p>
+ * -Dpauser picks the pauser as described in {@link Pauser#of(String)}, -Dhandlers the number of idle handlers and -Daffinity the CPU of the loop.
+ */
+public class PriorityEventLoopJLBH implements JLBHTask {
+    private static final int THROUGHPUT = Integer.getInteger("throughput", 100_000);
+    private static final int HANDLERS = Integer.getInteger("handlers", 10);
+    private static final String PAUSER = System.getProperty("pauser", "busy");
+    private static final String AFFINITY = System.getProperty("affinity");
+
+    private final AtomicLong published = new AtomicLong();
+    private PriorityEventLoop eventLoop;
+    private JLBH jlbh;
+
+    public static void main(String[] args) {
+        System.setProperty("jvm.resource.tracing", "false");
+        Jvm.init();
+        new JLBH(new JLBHOptions()
+                .jlbhTask(new PriorityEventLoopJLBH())
+                .iterations(1_000_000)
+                .warmUpIterations(100_000)
+                .runs(3)
+                .throughput(THROUGHPUT)
+                .recordOSJitter(false))
+                .start();
+    }
+
+    @Override
+    public void init(JLBH jlbh) {
+        this.jlbh = jlbh;
+        eventLoop = new PriorityEventLoop("loop-overhead", Pauser.of(PAUSER), AFFINITY);
+        for (int i = 0; i < HANDLERS; i++)
+            eventLoop.addHandler(() -> false);
+        eventLoop.addHandler(new EventHandler() {
+            @Override
+            public boolean action() {
+                final long startTimeNS = published.getAndSet(0);
+                if (startTimeNS == 0)
+                    return false;
+                PriorityEventLoopJLBH.this.jlbh.sample(System.nanoTime() - startTimeNS);
+                return true;
+            }
+
+            @Override
+            public HandlerPriority priority() {
+                return HandlerPriority.HIGH;
+            }
+        });
+        eventLoop.start();
+    }
+
+    @Override
+    public void run(long startTimeNS) {
+        published.set(startTimeNS);
+        eventLoop.unpause();
+    }
+
+    @Override
+    public void complete() {
+        System.out.println(eventLoop.pauser());
+        eventLoop.close();
+    }
+}
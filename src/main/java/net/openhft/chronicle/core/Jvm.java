@@ -664,6 +664,18 @@ public final class Jvm {
         return UnsafeMemory.INSTANCE.nativeMemoryUsed();
     }
 
+    /**
+     * Returns the memory used in bytes by UnsafeMemory.allocate() for each calling class, if enabled with
+     * {@code -Djvm.memory.by.caller=true} or {@link UnsafeMemory#trackNativeMemoryByCaller(boolean)}. This is
+     * estimated from a sample of allocations, see {@link UnsafeMemory#callerSampleInterval(int)}
+     *
+     * @return the memory allocated and not yet freed by class name, empty if not enabled
+     */
+    @NotNull
+    public static Map<String, Long> usedNativeMemoryByCaller() {
+        return UnsafeMemory.INSTANCE.nativeMemoryUsedByCaller();
+    }
+
     /**
      * Returns the maximum direct memory in bytes that can ever be allocated or 0 if the
      * value cannot be determined.
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core;
+
+/**
+ * The options which can be requested when memory mapping a file with {@link MapOptions}, and reported as having
+ * taken effect by {@link OS#mapOptionsApplied(long)} and {@link OS#memoryMappedByOption()}.
+ * <p>
+ * The advice options correspond to the madvise() flags of the same name, and at most one of these can be requested.
+ */
+public enum MapOption {
+    /**
+     * Advise the kernel to back the mapping with transparent huge pages, madvise(MADV_HUGEPAGE).
+     * For a file this is only honoured by file systems which support it, such as tmpfs.
+     */
+    HUGE_PAGES,
+    /**
+     * Fault in every page of the file when mapped, like MAP_POPULATE
+     */
+    POPULATE,
+    /**
+     * Expect pages to be accessed in order, madvise(MADV_SEQUENTIAL)
+     */
+    SEQUENTIAL,
+    /**
+     * Expect pages to be accessed in a random order, madvise(MADV_RANDOM)
+     */
+    RANDOM,
+    /**
+     * Expect the pages to be accessed soon, madvise(MADV_WILLNEED)
+     */
+    WILL_NEED,
+    /**
+     * Don't expect the pages to be accessed soon, madvise(MADV_DONTNEED)
+     */
+    DONT_NEED,
+    /**
+     * Fault in the pages from a thread bound to the CPUs of a NUMA node
+     */
+    NUMA_NODE;
+
+    /**
+     * @return whether this option is madvise() advice on the expected access pattern
+     */
+    public boolean isAdvice() {
+        return this == SEQUENTIAL || this == RANDOM || this == WILL_NEED || this == DONT_NEED;
+    }
+}
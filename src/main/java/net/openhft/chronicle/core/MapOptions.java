@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * How a region of a file should be memory mapped by
+ * {@link OS#map(java.nio.channels.FileChannel, java.nio.channels.FileChannel.MapMode, long, long, int, MapOptions)}
+ * <p>
+ * Options are a request to the OS, and which of them took effect is reported by {@link OS#mapOptionsApplied(long)}.
+ * On platforms other than Linux only {@link MapOption#POPULATE} takes effect.
+ * <p>
+ * NUMA binding relies on the kernel's default first touch policy, the pages of the file are faulted in from a thread
+ * bound to the CPUs of that node. Pages already in the page cache stay where they are. This requires the optional
+ * affinity library.
+ */
+public final class MapOptions {
+    private boolean hugePages;
+    private boolean populate;
+    @Nullable
+    private MapOption advice;
+    private int numaNode = -1;
+
+    /**
+     * @return a new set of options which maps with the default policy
+     */
+    @NotNull
+    public static MapOptions mapOptions() {
+        return new MapOptions();
+    }
+
+    public boolean hugePages() {
+        return hugePages;
+    }
+
+    /**
+     * @param hugePages whether to advise the OS to use transparent huge pages for this mapping
+     * @return this
+     */
+    public MapOptions hugePages(boolean hugePages) {
+        this.hugePages = hugePages;
+        return this;
+    }
+
+    public boolean populate() {
+        return populate;
+    }
+
+    /**
+     * @param populate whether to fault in the pages of the file up front rather than on first access
+     * @return this
+     */
+    public MapOptions populate(boolean populate) {
+        this.populate = populate;
+        return this;
+    }
+
+    @Nullable
+    public MapOption advice() {
+        return advice;
+    }
+
+    /**
+     * @param advice on the expected access pattern, or null for none
+     * @return this
+     * @throws IllegalArgumentException if the option is not advice
+     */
+    public MapOptions advice(@Nullable MapOption advice) throws IllegalArgumentException {
+        if (advice != null && !advice.isAdvice())
+            throw new IllegalArgumentException(advice + " is not advice");
+        this.advice = advice;
+        return this;
+    }
+
+    public int numaNode() {
+        return numaNode;
+    }
+
+    /**
+     * @param numaNode to place the pages on, or -1 for no preference
+     * @return this
+     */
+    public MapOptions numaNode(int numaNode) {
+        this.numaNode = numaNode;
+        return this;
+    }
+
+    /**
+     * @return the options requested
+     */
+    @NotNull
+    public Set<MapOption> requested() {
+        final Set<MapOption> set = EnumSet.noneOf(MapOption.class);
+        if (hugePages)
+            set.add(MapOption.HUGE_PAGES);
+        if (populate)
+            set.add(MapOption.POPULATE);
+        if (advice != null)
+            set.add(advice);
+        if (numaNode >= 0)
+            set.add(MapOption.NUMA_NODE);
+        return set;
+    }
+
+    @Override
+    public String toString() {
+        return "MapOptions{" +
+                "hugePages=" + hugePages +
+                ", populate=" + populate +
+                ", advice=" + advice +
+                ", numaNode=" + numaNode +
+                '}';
+    }
+}
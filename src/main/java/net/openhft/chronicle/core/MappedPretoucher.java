@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core;
+
+import net.openhft.affinity.AffinityLock;
+import net.openhft.chronicle.core.io.AbstractCloseable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+
+/**
+ * Faults in the pages of a memory mapped region on a background thread, ahead of the position a latency sensitive
+ * thread reports it has reached, so that thread doesn't take the page faults itself.
+ * <p>
+ * The region is typically obtained from {@link OS#map(java.nio.channels.FileChannel, java.nio.channels.FileChannel.MapMode, long, long)}.
+ * Pages of a writable region are touched with a compare-and-swap of zero with zero, which takes the write fault without
+ * changing the data, and read-only regions with a volatile read.
+ * <p>
+ * The pretoucher must be closed before the region is unmapped. Closing waits for the background thread to stop.
+ */
+public class MappedPretoucher extends AbstractCloseable {
+    private static final long IDLE_PARK_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+    private final long address;
+    private final long size;
+    private final boolean writable;
+    private final long aheadBytes;
+    private final long nanosPerPage;
+    @Nullable
+    private final String affinity;
+    private final int pageSize;
+    private final AtomicLong cursor = new AtomicLong();
+    private final Thread thread;
+
+    // only written by the pretoucher thread
+    private volatile long touchedTo;
+    private volatile long pagesTouched;
+    private volatile long faultTimeNanos;
+    private volatile long maxFaultNanos;
+
+    /**
+     * Creates and starts a pretoucher with no rate limit or affinity.
+     *
+     * @param name       of the background thread
+     * @param address    of the start of the region
+     * @param size       of the region in bytes
+     * @param writable   whether the region is mapped READ_WRITE
+     * @param aheadBytes how far ahead of the cursor to touch pages
+     */
+    public MappedPretoucher(@NotNull String name, long address, long size, boolean writable, long aheadBytes) {
+        this(name, address, size, writable, aheadBytes, 0, null);
+    }
+
+    /**
+     * Creates and starts a pretoucher.
+     *
+     * @param name              of the background thread
+     * @param address           of the start of the region
+     * @param size              of the region in bytes
+     * @param writable          whether the region is mapped READ_WRITE
+     * @param aheadBytes        how far ahead of the cursor to touch pages
+     * @param maxPagesPerSecond to limit the rate at which pages are touched, or 0 for no limit
+     * @param affinity          to pass to AffinityLock.acquireLock(String) for the background thread, or null to not pin it
+     */
+    public MappedPretoucher(@NotNull String name, long address, long size, boolean writable, long aheadBytes, long maxPagesPerSecond, @Nullable String affinity) {
+        if (address == 0 || size <= 0 || aheadBytes <= 0 || maxPagesPerSecond < 0)
+            throw new IllegalArgumentException("address: " + address + ", size: " + size + ", aheadBytes: " + aheadBytes + ", maxPagesPerSecond: " + maxPagesPerSecond);
+        this.name = name;
+        this.address = address;
+        this.size = size;
+        this.writable = writable;
+        this.aheadBytes = aheadBytes;
+        this.nanosPerPage = maxPagesPerSecond == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / maxPagesPerSecond;
+        this.affinity = affinity;
+        this.pageSize = OS.pageSize();
+        singleThreadedCheckDisabled(true);
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Reports the offset within the region the caller has reached. This is a single ordered write, cheap enough to
+     * call on every message.
+     *
+     * @param offset within the region
+     */
+    public void cursor(long offset) {
+        cursor.lazySet(offset);
+    }
+
+    /**
+     * @return the offset within the region the caller last reported
+     */
+    public long cursor() {
+        return cursor.get();
+    }
+
+    /**
+     * @return the offset within the region up to which pages have been touched
+     */
+    public long touchedTo() {
+        return touchedTo;
+    }
+
+    /**
+     * @return the number of pages touched
+     */
+    public long pagesTouched() {
+        return pagesTouched;
+    }
+
+    /**
+     * @return the total time spent touching pages in nanoseconds, most of which is page faults
+     */
+    public long faultTimeNanos() {
+        return faultTimeNanos;
+    }
+
+    /**
+     * @return the longest time taken to touch one page in nanoseconds
+     */
+    public long maxFaultNanos() {
+        return maxFaultNanos;
+    }
+
+    private void run() {
+        final AffinityLock lock = affinity == null ? null : acquireLock(affinity);
+        try {
+            long nextPageTime = System.nanoTime();
+            long offset = 0;
+            while (offset < size && !isClosing()) {
+                final long target = Math.min(size, cursor.get() + aheadBytes);
+                if (offset >= target) {
+                    LockSupport.parkNanos(IDLE_PARK_NS);
+                    continue;
+                }
+                if (nanosPerPage > 0) {
+                    final long wait = nextPageTime - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                        continue;
+                    }
+                    nextPageTime = Math.max(nextPageTime, System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(1)) + nanosPerPage;
+                }
+                final long start = System.nanoTime();
+                touch(address + offset);
+                final long time = System.nanoTime() - start;
+                offset += pageSize;
+                touchedTo = Math.min(offset, size);
+                pagesTouched++;
+                faultTimeNanos += time;
+                if (time > maxFaultNanos)
+                    maxFaultNanos = time;
+            }
+        } finally {
+            if (lock != null)
+                lock.release();
+        }
+    }
+
+    private void touch(long pageAddress) {
+        if (writable)
+            MEMORY.compareAndSwapInt(pageAddress, 0, 0);
+        else
+            MEMORY.readVolatileByte(pageAddress);
+    }
+
+    @Nullable
+    private AffinityLock acquireLock(@NotNull String affinity) {
+        try {
+            return AffinityLock.acquireLock(affinity);
+        } catch (Exception | LinkageError e) {
+            Jvm.warn().on(MappedPretoucher.class, "Unable to acquire affinity " + affinity + " for " + name, e);
+            return null;
+        }
+    }
+
+    @Override
+    protected void performClose() {
+        // the region must not be unmapped while the thread could still touch it
+        boolean interrupted = false;
+        while (thread.isAlive() && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(10);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedPretoucher{" +
+                "name='" + name + '\'' +
+                ", size=" + size +
+                ", cursor=" + cursor() +
+                ", touchedTo=" + touchedTo +
+                ", pagesTouched=" + pagesTouched +
+                ", faultTimeNanos=" + faultTimeNanos +
+                ", maxFaultNanos=" + maxFaultNanos +
+                '}';
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core;
+
+import net.openhft.chronicle.core.io.ManagedCloseable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A live memory mapping made by {@link OS#map(java.nio.channels.FileChannel, java.nio.channels.FileChannel.MapMode, long, long, int)},
+ * as recorded by {@link MappedRegions}.
+ * <p>
+ * When resource tracing is enabled, regions are monitored like any other {@link net.openhft.chronicle.core.io.Closeable}
+ * so a mapping which is never unmapped is reported by {@code AbstractCloseable.assertCloseablesClosed()} with the stack
+ * trace of where it was mapped.
+ */
+public final class MappedRegion implements ManagedCloseable {
+    static final String UNKNOWN = "unknown";
+
+    private final long address;
+    private final long offset;
+    private final long size;
+    private final int pageSize;
+    @Nullable
+    private final String file;
+    private final String mode;
+    private final String owner;
+    private final long createdTimeMillis;
+    @Nullable
+    private final StackTrace createdHere;
+    private volatile Set<MapOption> optionsApplied = Collections.emptySet();
+    private volatile boolean unmapped;
+
+    MappedRegion(long address, long offset, long size, int pageSize, @Nullable String file, String mode) {
+        this.address = address;
+        this.offset = offset;
+        this.size = size;
+        this.pageSize = pageSize;
+        this.file = file;
+        this.mode = mode;
+        this.createdTimeMillis = System.currentTimeMillis();
+        // finding the owner needs a stack trace, so only when resource tracing already takes one
+        this.createdHere = Jvm.isResourceTracing() ? new StackTrace("Mapped here") : null;
+        this.owner = createdHere == null ? UNKNOWN : ownerOf(createdHere.getStackTrace());
+    }
+
+    static String ownerOf(StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace) {
+            final String className = element.getClassName();
+            if (!className.equals(OS.class.getName()) && !className.equals(MappedRegion.class.getName()))
+                return className;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @return the address of the start of the mapping
+     */
+    public long address() {
+        return address;
+    }
+
+    /**
+     * @return the offset in the file of the start of the mapping
+     */
+    public long offset() {
+        return offset;
+    }
+
+    /**
+     * @return the size of the mapping in bytes, rounded up to the page size
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the path of the file mapped, or null if not known
+     */
+    @Nullable
+    public String file() {
+        return file;
+    }
+
+    /**
+     * @return the map mode, READ_ONLY, READ_WRITE or PRIVATE
+     */
+    public String mode() {
+        return mode;
+    }
+
+    /**
+     * @return the name of the class which called OS.map if resource tracing is enabled, otherwise "unknown"
+     */
+    public String owner() {
+        return owner;
+    }
+
+    public long createdTimeMillis() {
+        return createdTimeMillis;
+    }
+
+    /**
+     * @return where the mapping was made if resource tracing is enabled, otherwise null
+     */
+    @Nullable
+    @Override
+    public StackTrace createdHere() {
+        return createdHere;
+    }
+
+    /**
+     * @return the options which took effect when mapped, see {@link MapOptions}
+     */
+    @NotNull
+    public Set<MapOption> optionsApplied() {
+        return optionsApplied;
+    }
+
+    void optionsApplied(@NotNull Set<MapOption> optionsApplied) {
+        this.optionsApplied = Collections.unmodifiableSet(optionsApplied);
+    }
+
+    void unmapped() {
+        unmapped = true;
+    }
+
+    /**
+     * Unmaps the region if it hasn't been already.
+     */
+    @Override
+    public void close() {
+        if (unmapped)
+            return;
+        try {
+            OS.unmap(address, size, pageSize);
+        } catch (IOException e) {
+            Jvm.warn().on(MappedRegion.class, "Error on unmap of " + this, e);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return unmapped;
+    }
+
+    @Override
+    public String toString() {
+        return "MappedRegion{" +
+                "address=" + Long.toUnsignedString(address, 16) +
+                ", file=" + file +
+                ", offset=" + offset +
+                ", size=" + size +
+                ", mode=" + mode +
+                ", owner=" + owner +
+                (optionsApplied.isEmpty() ? "" : ", optionsApplied=" + optionsApplied) +
+                '}';
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core;
+
+import net.openhft.chronicle.core.internal.CloseableUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A registry of every live memory mapping made by OS.map, so it is possible to tell which files and components hold
+ * the virtual address space mapped.
+ * <p>
+ * Regions are added by OS.map and removed by OS.unmap, keyed by address. They can be queried with {@link #regions()}
+ * or over JMX as {@code net.openhft.chronicle.core:type=MappedRegions}, registered by {@link #registerMBean()} or at
+ * startup with {@code -Dmapped.regions.jmx=true}
+ */
+public final class MappedRegions {
+    private static final String OBJECT_NAME = "net.openhft.chronicle.core:type=MappedRegions";
+    private static final Map<Long, MappedRegion> REGIONS = new ConcurrentHashMap<>();
+
+    static {
+        if (Jvm.getBoolean("mapped.regions.jmx"))
+            registerMBean();
+    }
+
+    // Suppresses default constructor, ensuring non-instantiability.
+    private MappedRegions() {
+    }
+
+    static void add(@NotNull MappedRegion region) {
+        REGIONS.put(region.address(), region);
+        CloseableUtils.add(region);
+    }
+
+    @Nullable
+    static MappedRegion remove(long address) {
+        final MappedRegion region = REGIONS.remove(address);
+        if (region != null)
+            region.unmapped();
+        return region;
+    }
+
+    /**
+     * @param address of the start of a mapping
+     * @return the live mapping starting at this address, or null if there isn't one
+     */
+    @Nullable
+    public static MappedRegion region(long address) {
+        return REGIONS.get(address);
+    }
+
+    /**
+     * @return a snapshot of the live mappings, ordered by address
+     */
+    @NotNull
+    public static List<MappedRegion> regions() {
+        final List<MappedRegion> regions = new ArrayList<>(REGIONS.values());
+        regions.sort(Comparator.comparingLong(MappedRegion::address));
+        return regions;
+    }
+
+    /**
+     * @return the bytes mapped by file, for files with live mappings
+     */
+    @NotNull
+    public static Map<String, Long> mappedBytesByFile() {
+        return mappedBytesBy(region -> String.valueOf(region.file()));
+    }
+
+    /**
+     * @return the bytes mapped by the class which called OS.map, all "unknown" unless resource tracing is enabled
+     */
+    @NotNull
+    public static Map<String, Long> mappedBytesByOwner() {
+        return mappedBytesBy(MappedRegion::owner);
+    }
+
+    private static Map<String, Long> mappedBytesBy(Function<MappedRegion, String> key) {
+        final Map<String, Long> map = new TreeMap<>();
+        for (MappedRegion region : REGIONS.values())
+            map.merge(key.apply(region), region.size(), Long::sum);
+        return map;
+    }
+
+    /**
+     * Registers the registry with the platform MBean server if it hasn't been already
+     */
+    public static synchronized void registerMBean() {
+        try {
+            final ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName))
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), objectName);
+        } catch (JMException e) {
+            Jvm.warn().on(MappedRegions.class, "Unable to register " + OBJECT_NAME, e);
+        }
+    }
+
+    static final class Bean implements MappedRegionsMXBean {
+        @Override
+        public int getCount() {
+            return REGIONS.size();
+        }
+
+        @Override
+        public long getMappedBytes() {
+            long total = 0;
+            for (MappedRegion region : REGIONS.values())
+                total += region.size();
+            return total;
+        }
+
+        @Override
+        public Map<String, Long> getMappedBytesByFile() {
+            return mappedBytesByFile();
+        }
+
+        @Override
+        public Map<String, Long> getMappedBytesByOwner() {
+            return mappedBytesByOwner();
+        }
+
+        @Override
+        public String[] getRegions() {
+            return regions().stream().map(MappedRegion::toString).toArray(String[]::new);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core;
+
+import java.util.Map;
+
+/**
+ * JMX view of the live memory mappings recorded by {@link MappedRegions}
+ */
+public interface MappedRegionsMXBean {
+    /**
+     * @return the number of live mappings
+     */
+    int getCount();
+
+    /**
+     * @return the bytes mapped by all live mappings
+     */
+    long getMappedBytes();
+
+    /**
+     * @return the bytes mapped by file
+     */
+    Map<String, Long> getMappedBytesByFile();
+
+    /**
+     * @return the bytes mapped by the class which called OS.map
+     */
+    Map<String, Long> getMappedBytesByOwner();
+
+    /**
+     * @return a description of each live mapping
+     */
+    String[] getRegions();
+}
@@ -408,6 +408,58 @@ public interface Memory {
      */
     void copyMemory(long fromAddress, Object obj2, long offset2, int length);
 
+    /**
+     * Copies a range of memory from one address to another where the source and destination may overlap.
+     * <p>
+     * Large ranges are copied in chunks, in the direction which never overwrites source bytes not yet copied,
+     * so the copying thread can reach a safepoint between chunks.
+     *
+     * @param fromAddress the source memory address
+     * @param address     the destination memory address
+     * @param length      the number of bytes to copy
+     */
+    void moveMemory(long fromAddress, long address, long length);
+
+    /**
+     * Fills a range of memory with a repeating 8-byte pattern, written in native byte order.
+     * If the length is not a multiple of 8, the trailing bytes are taken from the start of the pattern.
+     *
+     * @param address the starting memory address
+     * @param length  the number of bytes to fill
+     * @param pattern the 8-byte pattern to repeat
+     */
+    void fillMemory(long address, long length, long pattern);
+
+    /**
+     * Returns the offset of the first byte which differs between two ranges of memory.
+     *
+     * @param address1 the first memory address
+     * @param address2 the second memory address
+     * @param length   the number of bytes to compare
+     * @return the offset of the first mismatching byte, or -1 if the ranges are equal
+     */
+    long mismatch(long address1, long address2, long length);
+
+    /**
+     * Compares two ranges of memory lexicographically, treating each byte as unsigned.
+     *
+     * @param address1 the first memory address
+     * @param address2 the second memory address
+     * @param length   the number of bytes to compare
+     * @return a negative value, zero or a positive value if the first range is less than, equal to or greater than the second
+     */
+    int compareMemory(long address1, long address2, long length);
+
+    /**
+     * Checks whether two ranges of memory contain the same bytes.
+     *
+     * @param address1 the first memory address
+     * @param address2 the second memory address
+     * @param length   the number of bytes to compare
+     * @return {@code true} if the ranges are equal, {@code false} otherwise
+     */
+    boolean isEqual(long address1, long address2, long length);
+
     /**
      * Returns the length in bytes required to encode an integer using stop-bit encoding.
      *
@@ -491,6 +543,36 @@ public interface Memory {
      */
     boolean is7Bit(long address, int length);
 
+    /**
+     * Finds the first byte in the specified byte array which is not a 7-bit ASCII character, so the
+     * 7-bit prefix can be copied in bulk.
+     *
+     * @param bytes  the byte array
+     * @param offset the starting index in the byte array
+     * @param length the number of bytes to check
+     * @return the index relative to offset of the first byte which is not 7-bit, or {@code length} if they all are
+     */
+    int firstNon7Bit(byte[] bytes, int offset, int length);
+
+    /**
+     * Finds the first character in the specified char array which is not a 7-bit ASCII character.
+     *
+     * @param chars  the char array
+     * @param offset the starting index in the char array
+     * @param length the number of characters to check
+     * @return the index relative to offset of the first character which is not 7-bit, or {@code length} if they all are
+     */
+    int firstNon7Bit(char[] chars, int offset, int length);
+
+    /**
+     * Finds the first byte in the memory at the given address which is not a 7-bit ASCII character.
+     *
+     * @param address the memory address
+     * @param length  the number of bytes to check
+     * @return the index relative to address of the first byte which is not 7-bit, or {@code length} if they all are
+     */
+    int firstNon7Bit(long address, int length);
+
     /**
      * Writes a long value to memory at the given address with ordered store semantics.
      *
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core;
+
+import net.openhft.chronicle.core.io.AbstractCloseable;
+import net.openhft.chronicle.core.io.ClosedIllegalStateException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+
+/**
+ * A slab allocator for small blocks of native memory which can be released together by closing the arena.
+ * <p>
+ * Requests are rounded up to a power of two size class, from {@link #MIN_BLOCK_SIZE} up to the arena's maximum block
+ * size, and carved out of slabs obtained from {@link Memory#allocate(long)}. Freed blocks are kept on a free list per
+ * thread and size class, so a thread which repeatedly allocates and frees blocks of a similar size doesn't contend
+ * with other threads or call malloc. A thread's free lists are held on the heap, and only the shared free list is
+ * linked through the blocks under the arena's lock, so a free racing with close never writes to released memory.
+ * Blocks larger than the maximum block size are allocated individually.
+ * <p>
+ * The slabs are accounted for by {@link Memory#nativeMemoryUsed()} and so {@link Jvm#usedNativeMemory()}. An arena
+ * which is never closed shows up as a leaked resource, and its statistics show which arena holds the memory.
+ * <p>
+ * Blocks are aligned to {@link #MIN_BLOCK_SIZE} bytes. Blocks cached by a thread which later dies are only reclaimed
+ * when the arena is closed.
+ */
+public class NativeArena extends AbstractCloseable {
+    /**
+     * The smallest size class, large enough to hold the free list link.
+     */
+    public static final int MIN_BLOCK_SIZE = 16;
+    public static final int DEFAULT_MAX_BLOCK_SIZE = 64 << 10;
+    public static final long DEFAULT_SLAB_SIZE = 1 << 20;
+    // the number of free blocks per size class a thread holds before returning them to the shared free list
+    private static final int THREAD_CACHE_LIMIT = Jvm.getInteger("native.arena.thread.cache", 64);
+    private static final Set<NativeArena> ARENAS = ConcurrentHashMap.newKeySet();
+
+    private final String name;
+    private final long slabSize;
+    private final int maxBlockSize;
+    private final ThreadLocal<ThreadCache> threadCache;
+    private final LongAdder usedBytes = new LongAdder();
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder frees = new LongAdder();
+
+    // guarded by this
+    private final long[] sharedFree;
+    private final Map<Long, Long> largeBlocks = new HashMap<>();
+    private long[] slabs = new long[16];
+    private int slabCount = 0;
+    private long slabPosition = 0;
+    private long slabLimit = 0;
+    private volatile long reservedBytes = 0;
+
+    /**
+     * Creates an arena with the default slab and maximum block sizes.
+     *
+     * @param name to identify the arena in statistics
+     */
+    public NativeArena(@NotNull String name) {
+        this(name, DEFAULT_SLAB_SIZE, DEFAULT_MAX_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates an arena.
+     *
+     * @param name         to identify the arena in statistics
+     * @param slabSize     the number of bytes to obtain from {@link Memory#allocate(long)} at a time
+     * @param maxBlockSize the largest size class, larger blocks are allocated individually
+     * @throws IllegalArgumentException if the maxBlockSize is not a power of two between MIN_BLOCK_SIZE and slabSize
+     */
+    public NativeArena(@NotNull String name, long slabSize, int maxBlockSize) throws IllegalArgumentException {
+        // validated before the super constructor registers this as a Closeable
+        this(name, slabSize, validMaxBlockSize(slabSize, maxBlockSize), sizeClass(maxBlockSize) + 1);
+    }
+
+    private NativeArena(@NotNull String name, long slabSize, int maxBlockSize, int sizeClasses) {
+        this.name = name;
+        this.slabSize = slabSize;
+        this.maxBlockSize = maxBlockSize;
+        this.sharedFree = new long[sizeClasses];
+        this.threadCache = ThreadLocal.withInitial(() -> new ThreadCache(sizeClasses));
+        singleThreadedCheckDisabled(true);
+        ARENAS.add(this);
+    }
+
+    private static int validMaxBlockSize(long slabSize, int maxBlockSize) throws IllegalArgumentException {
+        if (maxBlockSize < MIN_BLOCK_SIZE || !Maths.isPowerOf2(maxBlockSize) || maxBlockSize > slabSize)
+            throw new IllegalArgumentException("maxBlockSize: " + maxBlockSize + " must be a power of 2 between " + MIN_BLOCK_SIZE + " and slabSize: " + slabSize);
+        return maxBlockSize;
+    }
+
+    /**
+     * @return a snapshot of the arenas which have not been closed.
+     */
+    @NotNull
+    public static Collection<NativeArena> arenas() {
+        return new ArrayList<>(ARENAS);
+    }
+
+    static int sizeClass(long size) {
+        return Math.max(0, 64 - Long.numberOfLeadingZeros(size - 1) - 4);
+    }
+
+    static int blockSize(int sizeClass) {
+        return MIN_BLOCK_SIZE << sizeClass;
+    }
+
+    /**
+     * Allocates a block of at least {@code size} bytes.
+     *
+     * @param size the number of bytes required
+     * @return the address of the block
+     * @throws IllegalArgumentException    if the size is not positive
+     * @throws ClosedIllegalStateException if the arena has been closed
+     * @throws OutOfMemoryError            if a new slab could not be allocated
+     */
+    public long allocate(long size) throws IllegalArgumentException, ClosedIllegalStateException {
+        throwExceptionIfClosed();
+        if (size <= 0)
+            throw new IllegalArgumentException("Invalid size: " + size);
+        allocations.increment();
+        if (size > maxBlockSize)
+            return allocateLarge(size);
+
+        final int sizeClass = sizeClass(size);
+        usedBytes.add(blockSize(sizeClass));
+        final ThreadCache cache = threadCache.get();
+        final int count = cache.counts[sizeClass];
+        if (count > 0) {
+            cache.counts[sizeClass] = count - 1;
+            return cache.blocks[sizeClass][count - 1];
+        }
+        return allocateShared(sizeClass);
+    }
+
+    private synchronized long allocateShared(int sizeClass) {
+        throwExceptionIfClosed();
+        long address = sharedFree[sizeClass];
+        if (address != 0) {
+            sharedFree[sizeClass] = MEMORY.readLong(address);
+            return address;
+        }
+        final int blockSize = blockSize(sizeClass);
+        if (slabPosition + blockSize > slabLimit)
+            addSlab();
+        address = slabPosition;
+        slabPosition += blockSize;
+        return address;
+    }
+
+    private void addSlab() {
+        final long slab = MEMORY.allocate(slabSize);
+        if (slabCount == slabs.length)
+            slabs = Arrays.copyOf(slabs, slabCount * 2);
+        slabs[slabCount++] = slab;
+        slabPosition = slab;
+        slabLimit = slab + slabSize;
+        reservedBytes += slabSize;
+    }
+
+    private synchronized long allocateLarge(long size) {
+        final long address = MEMORY.allocate(size);
+        largeBlocks.put(address, size);
+        reservedBytes += size;
+        usedBytes.add(size);
+        return address;
+    }
+
+    /**
+     * Returns a block to the arena. Freeing a block while or after the arena is closed is ignored as the memory has
+     * been, or is being, released.
+     *
+     * @param address of the block returned by {@link #allocate(long)}
+     * @param size    the size passed to {@link #allocate(long)}
+     */
+    public void free(long address, long size) {
+        if (address == 0)
+            return;
+        frees.increment();
+        if (size > maxBlockSize) {
+            freeLarge(address);
+            return;
+        }
+        final int sizeClass = sizeClass(size);
+        usedBytes.add(-blockSize(sizeClass));
+        final ThreadCache cache = threadCache.get();
+        final int count = cache.counts[sizeClass];
+        if (count < THREAD_CACHE_LIMIT) {
+            long[] blocks = cache.blocks[sizeClass];
+            if (blocks == null)
+                blocks = cache.blocks[sizeClass] = new long[THREAD_CACHE_LIMIT];
+            blocks[count] = address;
+            cache.counts[sizeClass] = count + 1;
+            return;
+        }
+        // return this block and half the thread's blocks so it doesn't take the lock on every free
+        final int keep = count / 2;
+        freeShared(sizeClass, address, cache.blocks[sizeClass], keep, count);
+        cache.counts[sizeClass] = keep;
+    }
+
+    private synchronized void freeShared(int sizeClass, long address, long[] blocks, int from, int to) {
+        // checked under the lock performClose holds while releasing the slabs
+        if (isClosing())
+            return;
+        MEMORY.writeLong(address, sharedFree[sizeClass]);
+        sharedFree[sizeClass] = address;
+        for (int i = from; i < to; i++) {
+            MEMORY.writeLong(blocks[i], sharedFree[sizeClass]);
+            sharedFree[sizeClass] = blocks[i];
+        }
+    }
+
+    private synchronized void freeLarge(long address) {
+        final Long size = largeBlocks.remove(address);
+        if (size == null)
+            return;
+        MEMORY.freeMemory(address, size);
+        reservedBytes -= size;
+        usedBytes.add(-size);
+    }
+
+    /**
+     * @return the name of this arena
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the bytes of native memory this arena has obtained, including free space in its slabs
+     */
+    public long reservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * @return the bytes in blocks which have been allocated and not freed, rounded up to their size class
+     */
+    public long usedBytes() {
+        return usedBytes.sum();
+    }
+
+    /**
+     * @return the number of calls to allocate
+     */
+    public long allocations() {
+        return allocations.sum();
+    }
+
+    /**
+     * @return the number of calls to free
+     */
+    public long frees() {
+        return frees.sum();
+    }
+
+    @Override
+    protected synchronized void performClose() {
+        ARENAS.remove(this);
+        for (int i = 0; i < slabCount; i++)
+            MEMORY.freeMemory(slabs[i], slabSize);
+        slabCount = 0;
+        slabPosition = slabLimit = 0;
+        for (Map.Entry<Long, Long> entry : largeBlocks.entrySet())
+            MEMORY.freeMemory(entry.getKey(), entry.getValue());
+        largeBlocks.clear();
+        Arrays.fill(sharedFree, 0);
+        reservedBytes = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "NativeArena{" +
+                "name='" + name + '\'' +
+                ", reservedBytes=" + reservedBytes() +
+                ", usedBytes=" + usedBytes() +
+                ", allocations=" + allocations() +
+                ", frees=" + frees() +
+                ", closed=" + isClosed() +
+                '}';
+    }
+
+    static final class ThreadCache {
+        // allocated on first use of a size class
+        final long[][] blocks;
+        final int[] counts;
+
+        ThreadCache(int sizeClasses) {
+            blocks = new long[sizeClasses][];
+            counts = new int[sizeClasses];
+        }
+    }
+}
@@ -18,9 +18,12 @@
 
 package net.openhft.chronicle.core;
 
+import net.openhft.affinity.Affinity;
 import net.openhft.chronicle.core.internal.Bootstrap;
 import net.openhft.chronicle.core.util.ClassLocal;
 import net.openhft.chronicle.core.util.ThrowingFunction;
+import net.openhft.posix.MAdviseFlag;
+import net.openhft.posix.PosixAPI;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import sun.nio.ch.FileChannelImpl;
@@ -37,8 +40,13 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.SecureRandom;
-import java.util.Scanner;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -76,6 +84,8 @@ public final class OS {
         }
     });
     private static final Field FD_FIELD = Jvm.getField(FileChannelImpl.class, "fd");
+    @Nullable
+    private static final Field PATH_FIELD = Jvm.getFieldOrNull(FileChannelImpl.class, "path");
     private static final String TARGET = findTarget();
     private static final String USER_NAME = Jvm.getProperty("user.name");
     private static final int MAP_RO = 0;
@@ -84,6 +94,7 @@ public final class OS {
     private static final boolean IS64BIT = is64Bit0();
     private static final AtomicInteger PROCESS_ID = new AtomicInteger();
     private static final AtomicLong memoryMapped = new AtomicLong();
+    private static final AtomicLong[] memoryMappedByOption = new AtomicLong[MapOption.values().length];
     private static final MethodHandle UNMAPP0_MH;
     private static final MethodHandle READ0_MH;
     private static final MethodHandle WRITE0_MH;
@@ -96,6 +107,8 @@ public final class OS {
     static {
         // make sure it is initialised first.
         Jvm.debug();
+        for (int i = 0; i < memoryMappedByOption.length; i++)
+            memoryMappedByOption[i] = new AtomicLong();
         try {
             Method unmap0;
             if (Jvm.isJava20Plus()) {
@@ -515,22 +528,202 @@ public final class OS {
             throws IOException, IllegalArgumentException {
         if (isWindows() && size > 4L << 30)
             throw new IllegalArgumentException("Mapping more than 4096 MiB is unusable on Windows, size = " + (size >> 20) + " MiB");
-        final long address = map0(fileChannel, imodeFor(mode), mapAlign(start, pageSize), pageAlign(size, pageSize));
+        final long start2 = mapAlign(start, pageSize);
+        final long size2 = pageAlign(size, pageSize);
+        final long address = map0(fileChannel, imodeFor(mode), start2, size2);
+        MappedRegions.add(new MappedRegion(address, start2, size2, pageSize, pathOf(fileChannel), String.valueOf(mode)));
         final long threshold = Math.min(64 * size, 32L << 40);
         if (isLinux() && (address > 0 && address < threshold) && Jvm.is64bit()) {
             double ratio = (double) threshold / address;
             final long durationMs = Math.max(5000, (long) (250 * ratio * ratio * ratio));
-            System.err.println("Running low on virtual memory, pausing " + durationMs + " ms, address: " + Long.toUnsignedString(address, 16));
+            System.err.println("Running low on virtual memory, pausing " + durationMs + " ms, address: " + Long.toUnsignedString(address, 16) + ", mapped by file: " + MappedRegions.mappedBytesByFile());
             Jvm.pause(durationMs);
         }
         return address;
     }
 
+    @Nullable
+    private static String pathOf(@NotNull FileChannel fileChannel) {
+        if (PATH_FIELD == null || !(fileChannel instanceof FileChannelImpl))
+            return null;
+        try {
+            return (String) PATH_FIELD.get(fileChannel);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
     public static long map(@NotNull FileChannel fileChannel, FileChannel.MapMode mode, long start, long size)
             throws IOException, IllegalArgumentException {
         return map(fileChannel, mode, start, size, (int) mapAlignment());
     }
 
+    /**
+     * Map a region of a file into memory, requesting the OS treat it as the options describe.
+     * <p>
+     * The options which took effect can be obtained with {@link #mapOptionsApplied(long)}, and are included in
+     * {@link #memoryMappedByOption()} until the region is unmapped.
+     *
+     * @param fileChannel to map
+     * @param mode        of access
+     * @param start       offset within a file
+     * @param size        of region to map.
+     * @param pageSize    to align the start and size to
+     * @param options     for the mapping
+     * @return the address of the memory mapping.
+     * @throws IOException              if the mapping fails
+     * @throws IllegalArgumentException if the arguments are not valid
+     */
+    public static long map(@NotNull FileChannel fileChannel, FileChannel.MapMode mode, long start, long size, int pageSize, @NotNull MapOptions options)
+            throws IOException, IllegalArgumentException {
+        if (options.advice() == MapOption.DONT_NEED && (options.populate() || options.numaNode() >= 0))
+            throw new IllegalArgumentException("DONT_NEED advice would discard the pages populated, " + options);
+        final long address = map(fileChannel, mode, start, size, pageSize);
+        final long size2 = pageAlign(size, pageSize);
+        final Set<MapOption> applied = EnumSet.noneOf(MapOption.class);
+
+        // advice on huge pages and read ahead needs to be given before the pages are faulted in
+        if (options.hugePages() && madvise(address, size2, MAdviseFlag.MADV_HUGEPAGE))
+            applied.add(MapOption.HUGE_PAGES);
+        final MapOption advice = options.advice();
+        if (advice != null && madvise(address, size2, adviceFlag(advice)))
+            applied.add(advice);
+
+        // only touch pages within the file, touching beyond the end would cause a SIGBUS
+        final long populateSize = Math.min(size2, fileChannel.size() - mapAlign(start, pageSize));
+        if (options.numaNode() >= 0 && populateSize > 0 && touchPagesOnNode(address, populateSize, options.numaNode()))
+            applied.add(MapOption.NUMA_NODE);
+        if (options.populate() && populateSize > 0) {
+            if (!applied.contains(MapOption.NUMA_NODE))
+                touchPages(address, populateSize);
+            applied.add(MapOption.POPULATE);
+        }
+
+        if (!applied.isEmpty()) {
+            final MappedRegion region = MappedRegions.region(address);
+            if (region != null)
+                region.optionsApplied(applied);
+            for (MapOption option : applied)
+                memoryMappedByOption[option.ordinal()].addAndGet(size2);
+        }
+        return address;
+    }
+
+    /**
+     * Returns the options which took effect for a mapping made with
+     * {@link #map(FileChannel, FileChannel.MapMode, long, long, int, MapOptions)}.
+     *
+     * @param address of the start of the mapping
+     * @return the options which took effect, empty if none did or the address is not mapped
+     */
+    @NotNull
+    public static Set<MapOption> mapOptionsApplied(long address) {
+        final MappedRegion region = MappedRegions.region(address);
+        return region == null ? Collections.emptySet() : region.optionsApplied();
+    }
+
+    @NotNull
+    private static MAdviseFlag adviceFlag(@NotNull MapOption advice) {
+        switch (advice) {
+            case SEQUENTIAL:
+                return MAdviseFlag.MADV_SEQUENTIAL;
+            case RANDOM:
+                return MAdviseFlag.MADV_RANDOM;
+            case WILL_NEED:
+                return MAdviseFlag.MADV_WILLNEED;
+            case DONT_NEED:
+                return MAdviseFlag.MADV_DONTNEED;
+            default:
+                throw new IllegalArgumentException(advice + " is not advice");
+        }
+    }
+
+    private static boolean madvise(long address, long size, MAdviseFlag flag) {
+        if (!isLinux())
+            return false;
+        try {
+            final int ret = PosixAPI.posix().madvise(address, size, flag);
+            if (ret != 0)
+                Jvm.debug().on(OS.class, "madvise " + flag + " returned " + ret);
+            return ret == 0;
+        } catch (Exception | LinkageError e) {
+            Jvm.debug().on(OS.class, "Unable to madvise " + flag, e);
+            return false;
+        }
+    }
+
+    private static void touchPages(long address, long size) {
+        final int pageSize = pageSize();
+        for (long offset = 0; offset < size; offset += pageSize)
+            memory().readVolatileByte(address + offset);
+    }
+
+    private static boolean touchPagesOnNode(long address, long size, int numaNode) {
+        final BitSet cpus = numaNodeCpus(numaNode);
+        if (cpus == null || cpus.isEmpty())
+            return false;
+        final AtomicBoolean bound = new AtomicBoolean();
+        final Thread thread = new Thread(() -> {
+            try {
+                Affinity.setAffinity(cpus);
+            } catch (Exception | LinkageError e) {
+                Jvm.debug().on(OS.class, "Unable to bind to NUMA node " + numaNode, e);
+                return;
+            }
+            touchPages(address, size);
+            bound.set(true);
+        }, "map-numa-node-" + numaNode);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return bound.get();
+    }
+
+    /**
+     * @param numaNode to find the CPUs of
+     * @return the CPUs of a NUMA node, or null if not known
+     */
+    @Nullable
+    static BitSet numaNodeCpus(int numaNode) {
+        if (!isLinux())
+            return null;
+        final Path cpulist = Paths.get("/sys/devices/system/node/node" + numaNode + "/cpulist");
+        try {
+            return parseCpuList(new String(Files.readAllBytes(cpulist), StandardCharsets.ISO_8859_1));
+        } catch (IOException | NumberFormatException e) {
+            Jvm.debug().on(OS.class, "Unable to read " + cpulist, e);
+            return null;
+        }
+    }
+
+    /**
+     * Parses a Linux CPU list such as {@code 0-3,8-11}
+     *
+     * @param cpuList to parse
+     * @return the CPUs in the list
+     * @throws NumberFormatException if the list is not valid
+     */
+    @NotNull
+    static BitSet parseCpuList(@NotNull String cpuList) throws NumberFormatException {
+        final BitSet cpus = new BitSet();
+        for (String range : cpuList.trim().split(",")) {
+            if (range.isEmpty())
+                continue;
+            final int dash = range.indexOf('-');
+            if (dash < 0) {
+                cpus.set(Integer.parseInt(range));
+            } else {
+                cpus.set(Integer.parseInt(range.substring(0, dash)), Integer.parseInt(range.substring(dash + 1)) + 1);
+            }
+        }
+        return cpus;
+    }
+
 
     private static long invokeFileChannelMap0(@NotNull MethodHandle map0, @NotNull FileChannel fileChannel, int imode, long start, long size,
                                               @NotNull ThrowingFunction<OutOfMemoryError, Long, IOException> errorHandler) throws IOException {
@@ -585,6 +778,10 @@ public final class OS {
             // n must be used here
             final int n = (int) UNMAPP0_MH.invokeExact(address, size2);
             memoryMapped.addAndGet(-size2);
+            final MappedRegion region = MappedRegions.remove(address);
+            if (region != null)
+                for (MapOption option : region.optionsApplied())
+                    memoryMappedByOption[option.ordinal()].addAndGet(-size2);
         } catch (Throwable e) {
             throw asAnIOException(e);
         }
@@ -603,6 +800,21 @@ public final class OS {
         return memoryMapped.get();
     }
 
+    /**
+     * Returns the number of bytes memory mapped for which each option took effect. A mapping with several options is
+     * counted against each of them, and memory mapped with the default policy is only included in
+     * {@link #memoryMapped()}.
+     *
+     * @return bytes memory mapped by option
+     */
+    @NotNull
+    public static Map<MapOption, Long> memoryMappedByOption() {
+        final Map<MapOption, Long> map = new EnumMap<>(MapOption.class);
+        for (MapOption option : MapOption.values())
+            map.put(option, memoryMappedByOption[option.ordinal()].get());
+        return map;
+    }
+
     @NotNull
     private static IOException asAnIOException(Throwable e) {
         if (e instanceof InvocationTargetException)
@@ -19,6 +19,7 @@
 package net.openhft.chronicle.core;
 
 import net.openhft.chronicle.core.internal.Bootstrap;
+import net.openhft.chronicle.core.internal.ClassUtil;
 import net.openhft.chronicle.core.internal.util.DirectBufferUtil;
 import net.openhft.chronicle.core.util.Ints;
 import net.openhft.chronicle.core.util.Longs;
@@ -27,10 +28,17 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import sun.misc.Unsafe;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 
 import static java.util.Objects.nonNull;
 import static net.openhft.chronicle.assertions.AssertUtil.SKIP_ASSERTIONS;
@@ -78,6 +86,12 @@ public class UnsafeMemory implements Memory {
     // copyMemory method. A limit is imposed to allow for safepoint polling
     // during a large copy
     static final long UNSAFE_COPY_THRESHOLD = 1024L * 1024L;
+    // below this many bytes, comparing a long at a time is cheaper than calling vectorizedMismatch
+    static final long VECTORIZED_MISMATCH_THRESHOLD = 64;
+    // below this many bytes, the unrolled loop is cheaper than calling countPositives
+    static final int COUNT_POSITIVES_THRESHOLD = 32;
+    private static final long HIGH_BITS_8 = 0x8080808080808080L;
+    private static final long HIGH_BITS_16 = 0xFF80FF80FF80FF80L;
     // TODO support big endian
     public static final boolean IS_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
 
@@ -88,6 +102,15 @@ public class UnsafeMemory implements Memory {
     private static final String CANNOT_CHANGE_AT = "Cannot change at ";
     private static final String WAS = " was ";
     private static final String EXPECTED = " expected ";
+    // jdk.internal.util.ArraysSupport.vectorizedMismatch on Java 9+, otherwise null
+    @Nullable
+    private static final MethodHandle VECTORIZED_MISMATCH_MH;
+    // java.lang.StringCoding.countPositives on Java 19+, otherwise null
+    @Nullable
+    private static final MethodHandle COUNT_POSITIVES_MH;
+    // java.lang.StringCoding.hasNegatives on Java 9 to 18, otherwise null
+    @Nullable
+    private static final MethodHandle HAS_NEGATIVES_MH;
 
     static {
         try {
@@ -100,9 +123,18 @@ public class UnsafeMemory implements Memory {
         }
         INSTANCE = Bootstrap.isArm0() ? new ARMMemory() : new UnsafeMemory();
         MEMORY = INSTANCE;
-    }
-
-    private final AtomicLong nativeMemoryUsed = new AtomicLong();
+        VECTORIZED_MISMATCH_MH = vectorizedMismatchMH();
+        COUNT_POSITIVES_MH = stringCodingMH("countPositives");
+        HAS_NEGATIVES_MH = COUNT_POSITIVES_MH == null ? stringCodingMH("hasNegatives") : null;
+    }
+
+    // striped so threads allocating concurrently don't contend on one cache line
+    private final LongAdder nativeMemoryUsed = new LongAdder();
+    // address -> sampled allocation, only populated while tracking by caller
+    private final Map<Long, CallerSample> callerByAddress = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> nativeMemoryUsedByCaller = new ConcurrentHashMap<>();
+    private volatile boolean trackNativeMemoryByCaller = Boolean.getBoolean("jvm.memory.by.caller");
+    private volatile int callerSampleInterval = Math.max(1, Integer.getInteger("jvm.memory.by.caller.sample", 64));
     private final ObjectToAddress copyMemoryObjectToAddress;
 
     /**
@@ -114,6 +146,53 @@ public class UnsafeMemory implements Memory {
                 (src, srcOffset, dest, length) -> copyMemory0(src, srcOffset, null, dest, length);
     }
 
+    /**
+     * Looks up the JDK's intrinsified {@code ArraysSupport.vectorizedMismatch}, which is available from Java 9.
+     * This can be turned off with {@code -Djvm.memory.vectorized=false}
+     *
+     * @return a handle to vectorizedMismatch or {@code null} if it is not available.
+     */
+    @Nullable
+    private static MethodHandle vectorizedMismatchMH() {
+        if (!Bootstrap.isJava9Plus() || !Boolean.parseBoolean(System.getProperty("jvm.memory.vectorized", "true")))
+            return null;
+        try {
+            final Class<?> arraysSupport = Class.forName("jdk.internal.util.ArraysSupport");
+            final Method method = ClassUtil.getMethod0(arraysSupport, "vectorizedMismatch",
+                    new Class[]{Object.class, long.class, Object.class, long.class, int.class, int.class}, true);
+            // public, but in a package which isn't exported
+            ClassUtil.setAccessible(method);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ClassNotFoundException | IllegalAccessException | LinkageError | AssertionError e) {
+            // not accessible, fall back to comparing a long at a time
+            return null;
+        }
+    }
+
+    /**
+     * Looks up one of the JDK's intrinsified {@code StringCoding} methods used to check byte[] for 7-bit characters,
+     * {@code countPositives} from Java 19 or {@code hasNegatives} before that.
+     * This can be turned off with {@code -Djvm.memory.vectorized=false}
+     *
+     * @param name of the method
+     * @return a handle to the method or {@code null} if it is not available.
+     */
+    @Nullable
+    private static MethodHandle stringCodingMH(String name) {
+        if (!Bootstrap.isJava9Plus() || !Boolean.parseBoolean(System.getProperty("jvm.memory.vectorized", "true")))
+            return null;
+        try {
+            final Class<?> stringCoding = Class.forName("java.lang.StringCoding");
+            final Method method = ClassUtil.getMethod0(stringCoding, name,
+                    new Class[]{byte[].class, int.class, int.class}, true);
+            ClassUtil.setAccessible(method);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ClassNotFoundException | IllegalAccessException | LinkageError | AssertionError e) {
+            // not available in this version or not accessible, fall back to the unrolled loop
+            return null;
+        }
+    }
+
     /**
      * Retry the operation to read a volatile integer at a memory address until a consistent value is read.
      *
@@ -643,9 +722,12 @@ public class UnsafeMemory implements Memory {
     public void freeMemory(long address, long size) {
         assert SKIP_ASSERTIONS || address != 0;
         assert SKIP_ASSERTIONS || assertIfEnabled(Longs.nonNegative(), size);
+        // before freeing, as once freed the address can be allocated and tracked by another thread
+        if (trackNativeMemoryByCaller && !callerByAddress.isEmpty())
+            untrackCaller(address);
         if (address != 0)
             UNSAFE.freeMemory(address);
-        nativeMemoryUsed.addAndGet(-size);
+        nativeMemoryUsed.add(-size);
     }
 
     /**
@@ -664,11 +746,52 @@ public class UnsafeMemory implements Memory {
         if (address == 0)
             throw new OutOfMemoryError("Not enough free native memory, capacity attempted: " + capacity / 1024 + " KiB");
 
-        nativeMemoryUsed.addAndGet(capacity);
+        nativeMemoryUsed.add(capacity);
+        if (trackNativeMemoryByCaller)
+            trackCaller(address, capacity);
 
         return address;
     }
 
+    private void trackCaller(long address, long capacity) {
+        final int interval = callerSampleInterval;
+        if (interval > 1 && ThreadLocalRandom.current().nextInt(interval) != 0)
+            return;
+        // each sampled allocation stands for the unsampled ones around it
+        final CallerSample sample = new CallerSample(callerOf(new Throwable().getStackTrace()), capacity * interval);
+        callerByAddress.put(address, sample);
+        nativeMemoryUsedByCaller.computeIfAbsent(sample.caller, k -> new LongAdder()).add(sample.bytes);
+    }
+
+    private void untrackCaller(long address) {
+        // memory allocated before tracking was turned on, or not sampled, isn't attributed to anyone
+        final CallerSample sample = callerByAddress.remove(address);
+        if (sample == null)
+            return;
+        final LongAdder used = nativeMemoryUsedByCaller.get(sample.caller);
+        if (used != null)
+            used.add(-sample.bytes);
+    }
+
+    static final class CallerSample {
+        final String caller;
+        final long bytes;
+
+        CallerSample(String caller, long bytes) {
+            this.caller = caller;
+            this.bytes = bytes;
+        }
+    }
+
+    static String callerOf(StackTraceElement[] stackTrace) {
+        for (StackTraceElement element : stackTrace) {
+            final String className = element.getClassName();
+            if (!className.equals(UnsafeMemory.class.getName()) && !className.equals(ARMMemory.class.getName()))
+                return className;
+        }
+        return "unknown";
+    }
+
     /**
      * Retrieves the total amount of native memory used by the application.
      *
@@ -676,7 +799,72 @@ public class UnsafeMemory implements Memory {
      */
     @Override
     public long nativeMemoryUsed() {
-        return nativeMemoryUsed.get();
+        return nativeMemoryUsed.sum();
+    }
+
+    /**
+     * Turns on or off the attribution of native memory to the class calling {@link #allocate(long)}.
+     * <p>
+     * While on, one allocation in {@link #callerSampleInterval()} at random is sampled, and counts for that many
+     * times its size, so the breakdown is an estimate unless the interval is 1. Each sampled allocation captures a
+     * stack trace to find its caller, which costs several microseconds, and adds a map entry until it is freed. The
+     * other allocations cost a random number, and each free a map lookup, so with the default interval of 64 this can
+     * be left on in production. Only memory allocated while this is on is attributed, and turning it off discards the
+     * breakdown. This can also be turned on at startup with {@code -Djvm.memory.by.caller=true} and the interval set
+     * with {@code -Djvm.memory.by.caller.sample}
+     *
+     * @param trackNativeMemoryByCaller whether to attribute native memory to the caller
+     */
+    public void trackNativeMemoryByCaller(boolean trackNativeMemoryByCaller) {
+        this.trackNativeMemoryByCaller = trackNativeMemoryByCaller;
+        if (!trackNativeMemoryByCaller) {
+            callerByAddress.clear();
+            nativeMemoryUsedByCaller.clear();
+        }
+    }
+
+    /**
+     * Sets how many allocations there are for each one sampled while tracking by caller. 1 samples every allocation,
+     * which gives an exact breakdown for the cost of a stack trace per allocation.
+     *
+     * @param callerSampleInterval the allocations per sample, at least 1
+     * @throws IllegalArgumentException if the interval is less than 1
+     */
+    public void callerSampleInterval(int callerSampleInterval) throws IllegalArgumentException {
+        if (callerSampleInterval < 1)
+            throw new IllegalArgumentException("callerSampleInterval: " + callerSampleInterval);
+        this.callerSampleInterval = callerSampleInterval;
+    }
+
+    /**
+     * @return how many allocations there are for each one sampled while tracking by caller
+     */
+    public int callerSampleInterval() {
+        return callerSampleInterval;
+    }
+
+    /**
+     * @return whether native memory is being attributed to the class calling {@link #allocate(long)}
+     */
+    public boolean trackNativeMemoryByCaller() {
+        return trackNativeMemoryByCaller;
+    }
+
+    /**
+     * Retrieves the native memory still allocated by each caller, while tracking by caller is on.
+     *
+     * @return a snapshot of the bytes allocated and not yet freed by class name, sorted by class name
+     * @see #trackNativeMemoryByCaller(boolean)
+     */
+    @NotNull
+    public Map<String, Long> nativeMemoryUsedByCaller() {
+        final Map<String, Long> map = new TreeMap<>();
+        nativeMemoryUsedByCaller.forEach((caller, used) -> {
+            final long sum = used.sum();
+            if (sum != 0)
+                map.put(caller, sum);
+        });
+        return map;
     }
 
     /**
@@ -1256,6 +1444,136 @@ public class UnsafeMemory implements Memory {
         }
     }
 
+    /**
+     * Copies memory between two addresses, where the ranges may overlap.
+     * When the destination is after an overlapping source, the chunks are copied from the end backwards.
+     *
+     * @param srcAddress  source memory address.
+     * @param destAddress destination memory address.
+     * @param length      the length of memory to copy.
+     */
+    @Override
+    public void moveMemory(long srcAddress, long destAddress, long length) {
+        assert SKIP_ASSERTIONS || srcAddress != 0;
+        assert SKIP_ASSERTIONS || destAddress != 0;
+        assert SKIP_ASSERTIONS || assertIfEnabled(Longs.nonNegative(), length);
+        if (destAddress <= srcAddress || destAddress >= srcAddress + length) {
+            copyMemory(srcAddress, destAddress, length);
+            return;
+        }
+        // use a loop to ensure there is a safe point every so often.
+        while (length > 0) {
+            long size = Math.min(length, UNSAFE_COPY_THRESHOLD);
+            length -= size;
+            UNSAFE.copyMemory(srcAddress + length, destAddress + length, size);
+        }
+    }
+
+    /**
+     * Fills memory with a repeating 8-byte pattern.
+     * A pattern of eight identical bytes is delegated to {@link #setMemory(long, long, byte)}
+     *
+     * @param address the starting address.
+     * @param length  the amount of memory to fill.
+     * @param pattern the 8-byte pattern in native byte order.
+     */
+    @Override
+    public void fillMemory(long address, long length, long pattern) {
+        assert SKIP_ASSERTIONS || address != 0;
+        assert SKIP_ASSERTIONS || assertIfEnabled(Longs.nonNegative(), length);
+        if (pattern == (pattern & 0xFF) * 0x0101010101010101L) {
+            // use a loop to ensure there is a safe point every so often.
+            for (long i = 0; i < length; i += UNSAFE_COPY_THRESHOLD)
+                UNSAFE.setMemory(address + i, Math.min(length - i, UNSAFE_COPY_THRESHOLD), (byte) pattern);
+            return;
+        }
+        long i = 0;
+        for (; i < length - 7; i += 8)
+            UNSAFE.putLong(address + i, pattern);
+        for (int shift = 0; i < length; i++, shift += 8)
+            UNSAFE.putByte(address + i, (byte) (IS_LITTLE_ENDIAN ? pattern >>> shift : pattern >>> (56 - shift)));
+    }
+
+    /**
+     * Finds the first byte which differs between two ranges of memory.
+     * Large ranges use the JDK's vectorized comparison where available, otherwise a long is compared at a time.
+     *
+     * @param address1 the first memory address.
+     * @param address2 the second memory address.
+     * @param length   the number of bytes to compare.
+     * @return the offset of the first mismatch, or -1 if there is none.
+     */
+    @Override
+    public long mismatch(long address1, long address2, long length) {
+        assert SKIP_ASSERTIONS || address1 != 0;
+        assert SKIP_ASSERTIONS || address2 != 0;
+        assert SKIP_ASSERTIONS || assertIfEnabled(Longs.nonNegative(), length);
+        if (address1 == address2)
+            return -1;
+        long i = 0;
+        if (VECTORIZED_MISMATCH_MH != null && length >= VECTORIZED_MISMATCH_THRESHOLD) {
+            // use a loop to ensure there is a safe point every so often.
+            while (i < length) {
+                int size = (int) Math.min(length - i, UNSAFE_COPY_THRESHOLD);
+                int result = vectorizedMismatch(address1 + i, address2 + i, size);
+                if (result >= 0)
+                    return i + result;
+                // the remaining bytes weren't checked
+                i += size - ~result;
+                for (long end = i + ~result; i < end; i++)
+                    if (UNSAFE.getByte(address1 + i) != UNSAFE.getByte(address2 + i))
+                        return i;
+            }
+            return -1;
+        }
+        for (; i < length - 7; i += 8) {
+            long diff = UNSAFE.getLong(address1 + i) ^ UNSAFE.getLong(address2 + i);
+            if (diff != 0)
+                return i + ((IS_LITTLE_ENDIAN ? Long.numberOfTrailingZeros(diff) : Long.numberOfLeadingZeros(diff)) >>> 3);
+        }
+        for (; i < length; i++)
+            if (UNSAFE.getByte(address1 + i) != UNSAFE.getByte(address2 + i))
+                return i;
+        return -1;
+    }
+
+    private static int vectorizedMismatch(long address1, long address2, int length) {
+        try {
+            return (int) VECTORIZED_MISMATCH_MH.invokeExact((Object) null, address1, (Object) null, address2, length, 0);
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+    }
+
+    /**
+     * Compares two ranges of memory as unsigned bytes.
+     *
+     * @param address1 the first memory address.
+     * @param address2 the second memory address.
+     * @param length   the number of bytes to compare.
+     * @return the comparison of the first differing bytes, or 0 if the ranges are equal.
+     */
+    @Override
+    public int compareMemory(long address1, long address2, long length) {
+        final long i = mismatch(address1, address2, length);
+        if (i < 0)
+            return 0;
+        return Integer.compare(UNSAFE.getByte(address1 + i) & 0xFF, UNSAFE.getByte(address2 + i) & 0xFF);
+    }
+
+    /**
+     * Checks if two ranges of memory are the same.
+     *
+     * @param address1 the first memory address.
+     * @param address2 the second memory address.
+     * @param length   the number of bytes to compare.
+     * @return true if all the bytes match, false otherwise.
+     */
+    @Override
+    public boolean isEqual(long address1, long address2, long length) {
+        return mismatch(address1, address2, length) < 0;
+    }
+
     /**
      * Calculates the stop bit length of an integer value.
      * The stop bit length is defined as the number of 7-bit groups needed to represent the given integer.
@@ -1520,8 +1838,21 @@ public class UnsafeMemory implements Memory {
         assert SKIP_ASSERTIONS || nonNull(bytes);
         assert SKIP_ASSERTIONS || assertIfEnabled(Ints.nonNegative(), offset);
         assert SKIP_ASSERTIONS || assertIfEnabled(Ints.nonNegative(), length);
+        if (length >= COUNT_POSITIVES_THRESHOLD) {
+            if (COUNT_POSITIVES_MH != null)
+                return countPositives(bytes, offset, length) == length;
+            if (HAS_NEGATIVES_MH != null)
+                return !hasNegatives(bytes, offset, length);
+        }
         final long offset2 = offset + ARRAY_BYTE_BASE_OFFSET;
         int i = 0;
+        // 32 bytes per iteration, checking the high bits of all four longs at once
+        for (; i < length - 31; i += 32)
+            if (((UNSAFE.getLong(bytes, offset2 + i)
+                    | UNSAFE.getLong(bytes, offset2 + i + 8)
+                    | UNSAFE.getLong(bytes, offset2 + i + 16)
+                    | UNSAFE.getLong(bytes, offset2 + i + 24)) & HIGH_BITS_8) != 0)
+                return false;
         for (; i < length - 7; i += 8)
             if ((UnsafeMemory.UNSAFE.getLong(bytes, offset2 + i) & 0x8080808080808080L) != 0)
                 return false;
@@ -1557,6 +1888,13 @@ public class UnsafeMemory implements Memory {
         assert SKIP_ASSERTIONS || assertIfEnabled(Ints.nonNegative(), length);
         final long offset2 = offset * 2L + ARRAY_CHAR_BASE_OFFSET;
         int i = 0;
+        // 16 chars per iteration, checking the high bits of all four longs at once
+        for (; i < length - 15; i += 16)
+            if (((UNSAFE.getLong(chars, offset2 + i + i)
+                    | UNSAFE.getLong(chars, offset2 + i + i + 8)
+                    | UNSAFE.getLong(chars, offset2 + i + i + 16)
+                    | UNSAFE.getLong(chars, offset2 + i + i + 24)) & HIGH_BITS_16) != 0)
+                return false;
         for (; i < length - 3; i += 4)
             if ((UnsafeMemory.UNSAFE.getLong(chars, offset2 + i + i) & 0xFF80FF80FF80FF80L) != 0)
                 return false;
@@ -1582,6 +1920,13 @@ public class UnsafeMemory implements Memory {
         assert SKIP_ASSERTIONS || address != 0;
         assert SKIP_ASSERTIONS || assertIfEnabled(Ints.nonNegative(), length);
         int i = 0;
+        // 32 bytes per iteration, checking the high bits of all four longs at once
+        for (; i < length - 31; i += 32)
+            if (((UNSAFE.getLong(address + i)
+                    | UNSAFE.getLong(address + i + 8)
+                    | UNSAFE.getLong(address + i + 16)
+                    | UNSAFE.getLong(address + i + 24)) & HIGH_BITS_8) != 0)
+                return false;
         for (; i < length - 7; i += 8)
             if ((UnsafeMemory.UNSAFE.getLong(address + i) & 0x8080808080808080L) != 0)
                 return false;
@@ -1600,6 +1945,126 @@ public class UnsafeMemory implements Memory {
         return true;
     }
 
+    /**
+     * Finds the first byte in the range of the byte array which is not a 7-bit ASCII character.
+     *
+     * @param bytes  the byte array to check.
+     * @param offset the starting index of the range to check.
+     * @param length the number of bytes to check.
+     * @return the index relative to offset of the first byte which is not 7-bit, or length if they all are.
+     */
+    @Override
+    public int firstNon7Bit(byte[] bytes, int offset, int length) {
+        assert SKIP_ASSERTIONS || nonNull(bytes);
+        assert SKIP_ASSERTIONS || assertIfEnabled(Ints.nonNegative(), offset);
+        assert SKIP_ASSERTIONS || assertIfEnabled(Ints.nonNegative(), length);
+        int i = 0;
+        // countPositives can stop short of the first negative byte, so continue from where it stopped
+        if (length >= COUNT_POSITIVES_THRESHOLD && COUNT_POSITIVES_MH != null) {
+            i = countPositives(bytes, offset, length);
+            if (i == length)
+                return length;
+        }
+        final long offset2 = offset + ARRAY_BYTE_BASE_OFFSET;
+        for (; i < length - 31; i += 32)
+            if (((UNSAFE.getLong(bytes, offset2 + i)
+                    | UNSAFE.getLong(bytes, offset2 + i + 8)
+                    | UNSAFE.getLong(bytes, offset2 + i + 16)
+                    | UNSAFE.getLong(bytes, offset2 + i + 24)) & HIGH_BITS_8) != 0)
+                break;
+        for (; i < length - 7; i += 8) {
+            final long high = UNSAFE.getLong(bytes, offset2 + i) & HIGH_BITS_8;
+            if (high != 0)
+                return i + firstSetByte(high);
+        }
+        for (; i < length; i++)
+            if (UNSAFE.getByte(bytes, offset2 + i) < 0)
+                return i;
+        return length;
+    }
+
+    /**
+     * Finds the first character in the range of the char array which is not a 7-bit ASCII character.
+     *
+     * @param chars  the character array to check.
+     * @param offset the starting index of the range to check.
+     * @param length the number of characters to check.
+     * @return the index relative to offset of the first character which is not 7-bit, or length if they all are.
+     */
+    @Override
+    public int firstNon7Bit(char[] chars, int offset, int length) {
+        assert SKIP_ASSERTIONS || nonNull(chars);
+        assert SKIP_ASSERTIONS || assertIfEnabled(Ints.nonNegative(), offset);
+        assert SKIP_ASSERTIONS || assertIfEnabled(Ints.nonNegative(), length);
+        final long offset2 = offset * 2L + ARRAY_CHAR_BASE_OFFSET;
+        int i = 0;
+        for (; i < length - 15; i += 16)
+            if (((UNSAFE.getLong(chars, offset2 + i + i)
+                    | UNSAFE.getLong(chars, offset2 + i + i + 8)
+                    | UNSAFE.getLong(chars, offset2 + i + i + 16)
+                    | UNSAFE.getLong(chars, offset2 + i + i + 24)) & HIGH_BITS_16) != 0)
+                break;
+        for (; i < length - 3; i += 4) {
+            final long high = UNSAFE.getLong(chars, offset2 + i + i) & HIGH_BITS_16;
+            if (high != 0)
+                return i + (firstSetByte(high) >>> 1);
+        }
+        for (; i < length; i++)
+            if (UNSAFE.getChar(chars, offset2 + i + i) > 0x7F)
+                return i;
+        return length;
+    }
+
+    /**
+     * Finds the first byte in the memory starting from the provided address which is not a 7-bit ASCII character.
+     *
+     * @param address the starting address of the range to check.
+     * @param length  the number of bytes to check.
+     * @return the index relative to address of the first byte which is not 7-bit, or length if they all are.
+     */
+    @Override
+    public int firstNon7Bit(long address, int length) {
+        assert SKIP_ASSERTIONS || address != 0;
+        assert SKIP_ASSERTIONS || assertIfEnabled(Ints.nonNegative(), length);
+        int i = 0;
+        for (; i < length - 31; i += 32)
+            if (((UNSAFE.getLong(address + i)
+                    | UNSAFE.getLong(address + i + 8)
+                    | UNSAFE.getLong(address + i + 16)
+                    | UNSAFE.getLong(address + i + 24)) & HIGH_BITS_8) != 0)
+                break;
+        for (; i < length - 7; i += 8) {
+            final long high = UNSAFE.getLong(address + i) & HIGH_BITS_8;
+            if (high != 0)
+                return i + firstSetByte(high);
+        }
+        for (; i < length; i++)
+            if (UNSAFE.getByte(address + i) < 0)
+                return i;
+        return length;
+    }
+
+    // the index of the first byte in memory order with any bit set
+    private static int firstSetByte(long value) {
+        return (IS_LITTLE_ENDIAN ? Long.numberOfTrailingZeros(value) : Long.numberOfLeadingZeros(value)) >>> 3;
+    }
+
+    private static int countPositives(byte[] bytes, int offset, int length) {
+        try {
+            return (int) COUNT_POSITIVES_MH.invokeExact(bytes, offset, length);
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+    }
+
+    private static boolean hasNegatives(byte[] bytes, int offset, int length) {
+        try {
+            return (boolean) HAS_NEGATIVES_MH.invokeExact(bytes, offset, length);
+        } catch (Throwable t) {
+            throw new AssertionError(t);
+        }
+    }
+
     /**
      * Writes a long value to the memory location specified by the address, in a way that is
      * guaranteed to be ordered with respect to other memory operations.
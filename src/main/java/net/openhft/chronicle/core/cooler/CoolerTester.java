@@ -49,6 +49,11 @@ public class CoolerTester {
      */
     private final List<Histogram> histograms = new ArrayList<>();
 
+    /**
+     * List of Histogram objects to record the test results corrected for coordinated omission, if enabled.
+     */
+    private final List<Histogram> correctedHistograms = new ArrayList<>();
+
     /**
      * List of test names.
      */
@@ -62,6 +67,7 @@ public class CoolerTester {
     private int runTimeMS = 5_000;
     private int minCount = 20;
     private int maxCount = 20_000;
+    private long expectedIntervalNanos = 0;
 
     /**
      * Constructor with Callable and array of CpuCoolers. The Callable is the task to be executed
@@ -96,30 +102,32 @@ public class CoolerTester {
         Collections.addAll(this.tests, tests);
     }
 
-    static void innerloop0(Callable<?> tested, Histogram histogram, long start, int count, int minCount, int runTimeMS, int maxCount) throws Exception {
+    static void innerloop0(Callable<?> tested, Histogram histogram, Histogram corrected, long start, int count, int minCount, int runTimeMS, int maxCount) throws Exception {
         do {
-            innerLoop2(tested, histogram);
+            innerLoop2(tested, histogram, corrected);
             count++;
         }
         while (count < minCount || (System.currentTimeMillis() - start <= runTimeMS && count < maxCount * 10));
     }
 
-    static void innerloop1(Callable<?> tested, CpuCooler disturber, Histogram histogram, long start, int count, int minCount, int runTimeMS, int maxCount) throws Exception {
+    static void innerloop1(Callable<?> tested, CpuCooler disturber, Histogram histogram, Histogram corrected, long start, int count, int minCount, int runTimeMS, int maxCount) throws Exception {
         do {
             disturber.disturb();
-            innerLoop2(tested, histogram);
+            innerLoop2(tested, histogram, corrected);
             count++;
         }
         while (count < minCount || (System.currentTimeMillis() - start <= runTimeMS && count < maxCount));
     }
 
-    private static void innerLoop2(Callable<?> tested, Histogram histogram) throws Exception {
+    private static void innerLoop2(Callable<?> tested, Histogram histogram, Histogram corrected) throws Exception {
         UNSAFE.fullFence();
         long start0 = System.nanoTime();
         blackhole = tested.call();
 //            UNSAFE.fullFence();
         long time0 = System.nanoTime() - start0;
         histogram.sample(time0);
+        if (corrected != null)
+            corrected.sampleNanos(time0);
     }
 
     /**
@@ -207,6 +215,26 @@ public class CoolerTester {
         return this;
     }
 
+    /**
+     * @return the interval at which each test is expected to be run, or 0 if results are not corrected for coordinated omission.
+     */
+    public long expectedIntervalNanos() {
+        return expectedIntervalNanos;
+    }
+
+    /**
+     * Sets the interval at which each test is expected to be run. When set, each result is also reported corrected for
+     * coordinated omission, as if a test which took longer than this delayed the ones which should have started
+     * meanwhile. See {@link Histogram#expectedIntervalNanos(long)}
+     *
+     * @param expectedIntervalNanos the interval at which each test is expected to be run, or 0 to only report raw results
+     * @return this object
+     */
+    public CoolerTester expectedIntervalNanos(long expectedIntervalNanos) {
+        this.expectedIntervalNanos = expectedIntervalNanos;
+        return this;
+    }
+
     /**
      * This method runs the tests and outputs the results. Each test is run with each cooler multiple times,
      * and the execution times are recorded.
@@ -217,6 +245,8 @@ public class CoolerTester {
             for (int j = 0; j < tests.size(); j++) {
                 for (int i = 0; i < disturbers.size(); i++) {
                     histograms.add(new Histogram(32, 7));
+                    if (expectedIntervalNanos > 0)
+                        correctedHistograms.add(new Histogram(32, 7).expectedIntervalNanos(expectedIntervalNanos));
                 }
             }
             for (int t = 0; t <= repeat; t++) {
@@ -238,26 +268,40 @@ public class CoolerTester {
         for (int i = 0; i < disturbers.size(); i++) {
             CpuCooler disturber = disturbers.get(i);
             Histogram histogram = histograms.get(j * disturbers.size() + i);
+            Histogram corrected = correctedHistograms.isEmpty() ? null : correctedHistograms.get(j * disturbers.size() + i);
 
             long start = System.currentTimeMillis();
             int count = 0;
             if (t > 0)
-                innerloop1(tested, disturber, histogram, start, count, minCount, runTimeMS, maxCount);
+                innerloop1(tested, disturber, histogram, corrected, start, count, minCount, runTimeMS, maxCount);
             else
-                innerloop0(tested, histogram, start, count, minCount, runTimeMS, maxCount);
+                innerloop0(tested, histogram, corrected, start, count, minCount, runTimeMS, maxCount);
             if (tests.size() > 1)
                 System.out.print(testNames.get(j) + " ");
             System.out.print(disturber);
-            System.out.println(",band,<0.1,<1,<10,<100, "
-                    + histogram.percentageLessThan(0.1e3) + ", "
-                    + histogram.percentageLessThan(1e3) + ", "
-                    + histogram.percentageLessThan(10e3) + ", "
-                    + histogram.percentageLessThan(100e3) + ",%iles,"
-                    + histogram.toLongMicrosFormat());
-            if (t == 0)
+            printResult(histogram);
+            if (corrected != null) {
+                if (tests.size() > 1)
+                    System.out.print(testNames.get(j) + " ");
+                System.out.print(disturber + ",corrected");
+                printResult(corrected);
+            }
+            if (t == 0) {
                 histogram.reset();
+                if (corrected != null)
+                    corrected.reset();
+            }
         }
         if (t == 0)
             Jvm.pause(500);
     }
+
+    private static void printResult(Histogram histogram) {
+        System.out.println(",band,<0.1,<1,<10,<100, "
+                + histogram.percentageLessThan(0.1e3) + ", "
+                + histogram.percentageLessThan(1e3) + ", "
+                + histogram.percentageLessThan(10e3) + ", "
+                + histogram.percentageLessThan(100e3) + ",%iles,"
+                + histogram.toLongMicrosFormat());
+    }
 }
@@ -20,6 +20,7 @@ package net.openhft.chronicle.core.io;
 
 import net.openhft.chronicle.core.Jvm;
 import net.openhft.chronicle.core.shutdown.PriorityHook;
+import net.openhft.chronicle.core.threads.VirtualThreads;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -47,6 +48,10 @@ public final class BackgroundResourceReleaser {
      * Turn off the background thread if you want to manage the releasing in your own thread
      */
     private static final boolean BG_RELEASER_THREAD = BG_RELEASER && Jvm.getBoolean("background.releaser.thread", true);
+    /**
+     * Run the background thread as a virtual thread on Java 21+, so blocking releases don't need a platform thread
+     */
+    private static final boolean BG_RELEASER_VIRTUAL = Jvm.getBoolean("background.releaser.virtual");
     private static final BlockingQueue<Object> RESOURCES = new ArrayBlockingQueue<>(128);
     private static final AtomicLong COUNTER = new AtomicLong();
     private static final Object POISON_PILL = new Object();
@@ -58,8 +63,14 @@ public final class BackgroundResourceReleaser {
     }
 
     private static Thread runBackgroundReleaserThread() {
-        Thread thread = new Thread(BackgroundResourceReleaser::runReleaseResources, BACKGROUND_RESOURCE_RELEASER);
-        thread.setDaemon(true);
+        final Thread thread;
+        if (BG_RELEASER_VIRTUAL && VirtualThreads.isSupported()) {
+            VirtualThreads.monitorPinning();
+            thread = VirtualThreads.newThread(BACKGROUND_RESOURCE_RELEASER, BackgroundResourceReleaser::runReleaseResources);
+        } else {
+            thread = new Thread(BackgroundResourceReleaser::runReleaseResources, BACKGROUND_RESOURCE_RELEASER);
+            thread.setDaemon(true);
+        }
         thread.start();
 
         return thread;
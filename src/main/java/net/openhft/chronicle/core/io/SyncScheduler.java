@@ -0,0 +1,337 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.io;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.threads.InterruptedRuntimeException;
+import net.openhft.posix.MSyncFlag;
+import net.openhft.posix.PosixAPI;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flushes {@link Syncable} resources and dirty ranges of memory mapped files on a dedicated thread, so writers don't
+ * pay for durability inline.
+ * <p>
+ * Requests are coalesced until a batch is due. A {@code Syncable} requested many times is synced once per batch, and
+ * dirty ranges are rounded out to whole pages and merged so one msync covers each contiguous range. A batch is due when
+ * <ul>
+ *     <li>the oldest request has waited {@code maxDelayMs}, if this is positive</li>
+ *     <li>at least {@code maxDirtyBytes} of ranges are dirty, if this is positive</li>
+ *     <li>{@link #barrier()} is called, which waits for everything requested before it to be flushed</li>
+ * </ul>
+ * Anything outstanding is flushed when the scheduler is closed.
+ */
+public class SyncScheduler extends AbstractCloseable {
+    private static final long IDLE_WAIT_MS = 100;
+
+    private final String name;
+    private final long maxDelayNanos;
+    private final long maxDirtyBytes;
+    private final RangeSyncer rangeSyncer;
+    private final int pageSize;
+    private final Thread thread;
+
+    // guarded by lock
+    private final Object lock = new Object();
+    private final Set<Syncable> pendingSyncables = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final TreeMap<Long, Long> dirtyRanges = new TreeMap<>();
+    private long dirtyBytes;
+    private long firstRequestNanos;
+    private long requestedSeq;
+    private long completedSeq;
+    private boolean barrierRequested;
+
+    // only written by the scheduler thread
+    private volatile long batches;
+    private volatile long syncs;
+    private volatile long msyncs;
+    private volatile long bytesSynced;
+
+    /**
+     * Creates and starts a scheduler which uses msync(MS_SYNC) to flush dirty ranges.
+     *
+     * @param name          of the thread
+     * @param maxDelayMs    the longest a request waits before being flushed, or 0 to not flush on time
+     * @param maxDirtyBytes the dirty bytes which trigger a flush, or 0 to not flush on bytes dirty
+     */
+    public SyncScheduler(@NotNull String name, long maxDelayMs, long maxDirtyBytes) {
+        this(name, maxDelayMs, maxDirtyBytes, SyncScheduler::msync);
+    }
+
+    SyncScheduler(@NotNull String name, long maxDelayMs, long maxDirtyBytes, @NotNull RangeSyncer rangeSyncer) {
+        this.name = name;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.maxDirtyBytes = maxDirtyBytes;
+        this.rangeSyncer = rangeSyncer;
+        this.pageSize = OS.pageSize();
+        singleThreadedCheckDisabled(true);
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void msync(long address, long length) {
+        final int ret = PosixAPI.posix().msync(address, length, MSyncFlag.MS_SYNC);
+        if (ret != 0)
+            throw new IORuntimeException("msync of " + length + " bytes at " + Long.toUnsignedString(address, 16) + " returned " + ret);
+    }
+
+    /**
+     * Requests the resource is synced in the next batch.
+     *
+     * @param syncable to sync
+     * @throws ClosedIllegalStateException if the scheduler has been closed
+     */
+    public void sync(@NotNull Syncable syncable) throws ClosedIllegalStateException {
+        throwExceptionIfClosed();
+        synchronized (lock) {
+            pendingSyncables.add(syncable);
+            requested();
+        }
+    }
+
+    /**
+     * Requests a range of a memory mapping is flushed with msync in the next batch.
+     *
+     * @param address of the start of the range written to
+     * @param length  of the range written to
+     * @throws ClosedIllegalStateException if the scheduler has been closed
+     */
+    public void markDirty(long address, long length) throws ClosedIllegalStateException {
+        throwExceptionIfClosed();
+        if (length <= 0)
+            return;
+        long start = address & -pageSize;
+        long end = OS.pageAlign(address + length, pageSize);
+        synchronized (lock) {
+            // merge with any range which overlaps or touches this one
+            final Map.Entry<Long, Long> before = dirtyRanges.floorEntry(start);
+            if (before != null && before.getValue() >= start) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+                dirtyRanges.remove(start);
+                dirtyBytes -= before.getValue() - start;
+            }
+            for (Map.Entry<Long, Long> after; (after = dirtyRanges.ceilingEntry(start)) != null && after.getKey() <= end; ) {
+                end = Math.max(end, after.getValue());
+                dirtyRanges.remove(after.getKey());
+                dirtyBytes -= after.getValue() - after.getKey();
+            }
+            dirtyRanges.put(start, end);
+            dirtyBytes += end - start;
+            requested();
+            if (maxDirtyBytes > 0 && dirtyBytes >= maxDirtyBytes)
+                lock.notifyAll();
+        }
+    }
+
+    private void requested() {
+        if (firstRequestNanos == 0)
+            firstRequestNanos = System.nanoTime();
+        requestedSeq++;
+    }
+
+    /**
+     * Flushes everything requested so far and waits for it to complete.
+     *
+     * @throws ClosedIllegalStateException if the scheduler has been closed
+     * @throws InterruptedRuntimeException if interrupted while waiting
+     */
+    public void barrier() throws ClosedIllegalStateException {
+        throwExceptionIfClosed();
+        synchronized (lock) {
+            final long seq = ++requestedSeq;
+            barrierRequested = true;
+            lock.notifyAll();
+            try {
+                while (completedSeq < seq) {
+                    if (!thread.isAlive())
+                        throw new ClosedIllegalStateException(name + " stopped");
+                    lock.wait(IDLE_WAIT_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedRuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the bytes in dirty ranges waiting to be flushed
+     */
+    public long dirtyBytes() {
+        synchronized (lock) {
+            return dirtyBytes;
+        }
+    }
+
+    /**
+     * @return a snapshot of the dirty ranges waiting to be flushed as start address to end address
+     */
+    @NotNull
+    public SortedMap<Long, Long> dirtyRanges() {
+        synchronized (lock) {
+            return new TreeMap<>(dirtyRanges);
+        }
+    }
+
+    /**
+     * @return the number of batches flushed
+     */
+    public long batches() {
+        return batches;
+    }
+
+    /**
+     * @return the number of calls to Syncable.sync()
+     */
+    public long syncs() {
+        return syncs;
+    }
+
+    /**
+     * @return the number of ranges flushed with msync
+     */
+    public long msyncs() {
+        return msyncs;
+    }
+
+    /**
+     * @return the bytes flushed with msync
+     */
+    public long bytesSynced() {
+        return bytesSynced;
+    }
+
+    private void run() {
+        final List<Syncable> syncables = new ArrayList<>();
+        final List<long[]> ranges = new ArrayList<>();
+        try {
+            while (!isClosing()) {
+                final long seq;
+                synchronized (lock) {
+                    final long wait = nanosUntilDue();
+                    if (wait > 0) {
+                        lock.wait(Math.min(IDLE_WAIT_MS, TimeUnit.NANOSECONDS.toMillis(wait) + 1));
+                        continue;
+                    }
+                    seq = takeBatch(syncables, ranges);
+                }
+                flush(syncables, ranges, seq);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Jvm.warn().on(SyncScheduler.class, name + " interrupted, flushing outstanding requests");
+        }
+        final long seq;
+        synchronized (lock) {
+            seq = takeBatch(syncables, ranges);
+        }
+        flush(syncables, ranges, seq);
+    }
+
+    private long nanosUntilDue() {
+        if (barrierRequested)
+            return 0;
+        if (pendingSyncables.isEmpty() && dirtyRanges.isEmpty())
+            return Long.MAX_VALUE;
+        if (maxDirtyBytes > 0 && dirtyBytes >= maxDirtyBytes)
+            return 0;
+        if (maxDelayNanos > 0)
+            return firstRequestNanos + maxDelayNanos - System.nanoTime();
+        return Long.MAX_VALUE;
+    }
+
+    private long takeBatch(List<Syncable> syncables, List<long[]> ranges) {
+        syncables.addAll(pendingSyncables);
+        pendingSyncables.clear();
+        for (Map.Entry<Long, Long> entry : dirtyRanges.entrySet())
+            ranges.add(new long[]{entry.getKey(), entry.getValue()});
+        dirtyRanges.clear();
+        dirtyBytes = 0;
+        firstRequestNanos = 0;
+        barrierRequested = false;
+        return requestedSeq;
+    }
+
+    private void flush(List<Syncable> syncables, List<long[]> ranges, long seq) {
+        try {
+            for (long[] range : ranges) {
+                try {
+                    rangeSyncer.sync(range[0], range[1] - range[0]);
+                    msyncs++;
+                    bytesSynced += range[1] - range[0];
+                } catch (Exception | LinkageError e) {
+                    Jvm.warn().on(SyncScheduler.class, "Unable to msync " + (range[1] - range[0]) + " bytes", e);
+                }
+            }
+            for (Syncable syncable : syncables) {
+                try {
+                    syncable.sync();
+                    syncs++;
+                } catch (Exception e) {
+                    Jvm.warn().on(SyncScheduler.class, "Unable to sync " + syncable, e);
+                }
+            }
+            batches++;
+        } finally {
+            syncables.clear();
+            ranges.clear();
+            synchronized (lock) {
+                completedSeq = seq;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    protected void performClose() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        // closed by a Syncable on the scheduler's thread, which flushes what is outstanding as it exits
+        if (thread == Thread.currentThread())
+            return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SyncScheduler{" +
+                "name='" + name + '\'' +
+                ", batches=" + batches +
+                ", syncs=" + syncs +
+                ", msyncs=" + msyncs +
+                ", bytesSynced=" + bytesSynced +
+                '}';
+    }
+
+    @FunctionalInterface
+    interface RangeSyncer {
+        void sync(long address, long length);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.metrics;
+
+/**
+ * The kinds of value held by a {@link MetricsRegistry}.
+ */
+public enum MetricType {
+    /**
+     * A count which only goes up, e.g. messages processed.
+     */
+    COUNTER,
+    /**
+     * A value which is set, e.g. a queue depth, or a percentile of a histogram.
+     */
+    GAUGE,
+    /**
+     * An array of counters, e.g. one per partition.
+     */
+    COUNTER_ARRAY,
+    /**
+     * An array of gauges, e.g. one per partition.
+     */
+    GAUGE_ARRAY;
+
+    // values() copies the array on each call
+    private static final MetricType[] VALUES = values();
+
+    /**
+     * @param code as stored in a registry's directory, the ordinal plus one
+     * @return the type with that code
+     */
+    static MetricType forCode(int code) {
+        return VALUES[code - 1];
+    }
+
+    /**
+     * @return whether the values are a {@link net.openhft.chronicle.core.values.LongArrayValues}
+     */
+    public boolean isArray() {
+        return this == COUNTER_ARRAY || this == GAUGE_ARRAY;
+    }
+}
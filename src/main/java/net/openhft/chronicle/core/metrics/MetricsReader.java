@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.metrics;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.io.AbstractCloseable;
+import net.openhft.chronicle.core.values.MemoryLongArrayValues;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+import static net.openhft.chronicle.core.metrics.MetricsRegistry.*;
+
+/**
+ * Reads the counters and gauges of a {@link MetricsRegistry} from its file, typically in a sidecar process which
+ * polls them without involving the JVM being monitored.
+ * <p>
+ * The file is mapped read only. Metrics registered after the reader is opened become visible as {@link #size()}
+ * increases. Reading a value by index doesn't allocate; looking one up by name allocates only when new metrics have
+ * been registered. {@link MetricsReaderMain} prints the metrics in a file from the command line.
+ */
+public class MetricsReader extends AbstractCloseable {
+    private final RandomAccessFile raf;
+    private final long address;
+    private final long size;
+    private final int capacity;
+    private final Map<String, Integer> indexByName = new HashMap<>();
+    private int namesRead;
+
+    private MetricsReader(RandomAccessFile raf, long address, long size, int capacity) {
+        this.raf = raf;
+        this.address = address;
+        this.size = size;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Maps the file of a {@link MetricsRegistry}.
+     *
+     * @param file written by {@link MetricsRegistry#map(File, int)}
+     * @return the reader, which unmaps the file when closed
+     * @throws IOException if the file could not be mapped or doesn't hold a registry
+     */
+    @NotNull
+    public static MetricsReader map(@NotNull File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        long address = 0;
+        long size = 0;
+        try {
+            if (raf.length() < HEADER_SIZE)
+                throw new IOException("Not a MetricsRegistry: " + file + ", length: " + raf.length());
+            address = OS.map(raf.getChannel(), FileChannel.MapMode.READ_ONLY, 0, size = HEADER_SIZE);
+            final long magic = MEMORY.readVolatileLong(address + MAGIC_OFFSET);
+            final int version = MEMORY.readInt(address + VERSION_OFFSET);
+            final int capacity = MEMORY.readInt(address + CAPACITY_OFFSET);
+            OS.unmap(address, size);
+            address = 0;
+            if (magic != MAGIC || version != VERSION || capacity <= 0 || raf.length() < sizeFor(capacity))
+                throw new IOException("Not a MetricsRegistry: " + file + ", magic: " + Long.toHexString(magic) + ", version: " + version);
+            address = OS.map(raf.getChannel(), FileChannel.MapMode.READ_ONLY, 0, size = sizeFor(capacity));
+            return new MetricsReader(raf, address, size, capacity);
+        } catch (IOException | RuntimeException e) {
+            if (address != 0)
+                OS.unmap(address, size);
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the most metrics the registry can hold
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of metrics registered so far
+     */
+    public int size() {
+        throwExceptionIfClosed();
+        return MEMORY.readVolatileInt(address + COUNT_OFFSET);
+    }
+
+    /**
+     * @param index of a metric, less than {@link #size()}
+     * @return its name
+     */
+    @NotNull
+    public String name(int index) {
+        checkIndex(index);
+        final long entry = address + directoryOffset(index);
+        final int length = MEMORY.readByte(entry + ENTRY_NAME_LENGTH) & 0xFF;
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = (char) (MEMORY.readByte(entry + ENTRY_NAME + i) & 0xFF);
+        return new String(chars);
+    }
+
+    /**
+     * @param index of a metric, less than {@link #size()}
+     * @return its type
+     */
+    @NotNull
+    public MetricType type(int index) {
+        checkIndex(index);
+        return MetricType.forCode(MEMORY.readByte(address + directoryOffset(index) + ENTRY_TYPE));
+    }
+
+    /**
+     * @param index of a metric, less than {@link #size()}
+     * @return the number of values, 1 unless it is an array
+     */
+    public int length(int index) {
+        return type(index).isArray() ? (int) MEMORY.readLong(slotAddress(index) + MemoryLongArrayValues.CAPACITY_OFFSET) : 1;
+    }
+
+    private long slotAddress(int index) {
+        return address + slotOffset(capacity, MEMORY.readInt(address + directoryOffset(index) + ENTRY_SLOT));
+    }
+
+    /**
+     * @param index of a metric, less than {@link #size()}
+     * @return its latest value, or the first value of an array
+     */
+    public long value(int index) {
+        return value(index, 0);
+    }
+
+    /**
+     * @param index   of a metric, less than {@link #size()}
+     * @param element of the array, or 0 if it is not an array
+     * @return its latest value
+     */
+    public long value(int index, int element) {
+        final int length = length(index);
+        if (element < 0 || element >= length)
+            throw new IndexOutOfBoundsException("element: " + element + ", length: " + length);
+        final long slotAddress = slotAddress(index);
+        return type(index).isArray()
+                ? MEMORY.readVolatileLong(slotAddress + MemoryLongArrayValues.VALUES_OFFSET + element * 8L)
+                : MEMORY.readVolatileLong(slotAddress);
+    }
+
+    /**
+     * @param name     of a metric
+     * @param notFound the value to return if it is not registered
+     * @return its latest value, or the first value of an array, or notFound
+     */
+    public long value(@NotNull String name, long notFound) {
+        final int index = indexOf(name);
+        return index < 0 ? notFound : value(index);
+    }
+
+    /**
+     * @param name of a metric
+     * @return its index, or -1 if it is not registered
+     */
+    public int indexOf(@NotNull String name) {
+        final int size = size();
+        // the directory is append only so only new entries need to be read
+        for (; namesRead < size; namesRead++)
+            indexByName.put(name(namesRead), namesRead);
+        final Integer index = indexByName.get(name);
+        return index == null ? -1 : index;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + size());
+    }
+
+    @Override
+    protected void performClose() {
+        try {
+            OS.unmap(address, size);
+        } catch (IOException e) {
+            Jvm.warn().on(MetricsReader.class, "Unable to unmap", e);
+        }
+        try {
+            raf.close();
+        } catch (IOException e) {
+            Jvm.warn().on(MetricsReader.class, "Unable to close the file", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsReader{" +
+                "capacity=" + capacity +
+                ", size=" + (isClosed() ? 0 : size()) +
+                '}';
+    }
+}
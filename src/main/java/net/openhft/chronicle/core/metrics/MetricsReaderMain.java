@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.metrics;
+
+import net.openhft.chronicle.core.Jvm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Prints the metrics in the file of a {@link MetricsRegistry}, one per line as {@code name value}, with elements of
+ * arrays named {@code name[index]}.
+ * <p>
+ * Set the system property {@code interval} to a number of seconds to print them repeatedly.
+ */
+public final class MetricsReaderMain {
+    private MetricsReaderMain() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: MetricsReaderMain {file}");
+            return;
+        }
+        final int interval = Integer.getInteger("interval", 0);
+        try (MetricsReader reader = MetricsReader.map(new File(args[0]))) {
+            print(reader, System.out);
+            while (interval > 0) {
+                Jvm.pause(interval * 1000L);
+                System.out.println("---");
+                print(reader, System.out);
+            }
+        }
+    }
+
+    static void print(MetricsReader reader, PrintStream out) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0, size = reader.size(); i < size; i++) {
+            final String name = reader.name(i);
+            if (reader.type(i).isArray()) {
+                for (int j = 0, length = reader.length(i); j < length; j++)
+                    sb.append(name).append('[').append(j).append("] ").append(reader.value(i, j)).append('\n');
+            } else {
+                sb.append(name).append(' ').append(reader.value(i)).append('\n');
+            }
+        }
+        out.print(sb);
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.metrics;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.io.AbstractCloseable;
+import net.openhft.chronicle.core.io.ClosedIllegalStateException;
+import net.openhft.chronicle.core.util.ConcurrentHistogram;
+import net.openhft.chronicle.core.util.Histogram;
+import net.openhft.chronicle.core.values.LongArrayValues;
+import net.openhft.chronicle.core.values.LongValue;
+import net.openhft.chronicle.core.values.MemoryLongArrayValues;
+import net.openhft.chronicle.core.values.MemoryLongValue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+
+/**
+ * A registry of named counters, gauges and histograms for instrumenting latency sensitive code.
+ * <p>
+ * Counters and gauges are {@link LongValue}s, each on its own 64 byte cache line so threads updating different metrics
+ * don't contend, and updating them doesn't allocate. Arrays of counters or gauges, e.g. one per partition, are
+ * {@link LongArrayValues} packed onto as many lines as they need. Look a metric up once and keep it; registration takes
+ * a lock.
+ * <p>
+ * The values are held either in a {@code long[]} on heap or in a memory mapped file, in the same layout, so a
+ * {@link MetricsReader} in another process can poll them from the file:
+ * <pre>
+ * header    64 bytes: magic (8), version (4), capacity (4), count (4, ordered write), slots used (4)
+ * directory capacity * 64 bytes: type (1), name length (1), unused (2), first slot (4), name in ISO-8859-1 (up to 56)
+ * slots     capacity * 64 bytes: a value (8), or part of an array as laid out by {@link MemoryLongArrayValues}
+ * </pre>
+ * All numbers are in native byte order. Writers update values with ordered writes or atomic adds, so a reader sees each
+ * value with a volatile load.
+ * A {@link ConcurrentHistogram} registered with {@link #histogram(String)} is published as gauges of its count and
+ * percentiles in nanoseconds each time {@link #updateHistograms()} is called, e.g. by a monitoring thread.
+ */
+public class MetricsRegistry extends AbstractCloseable {
+    static final long MAGIC = 0x4D65747269637321L; // Metrics!
+    static final int VERSION = 1;
+    static final int LINE = 64;
+    static final int HEADER_SIZE = LINE;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 8;
+    static final int CAPACITY_OFFSET = 12;
+    static final int COUNT_OFFSET = 16;
+    static final int SLOTS_USED_OFFSET = 20;
+    static final int ENTRY_TYPE = 0;
+    static final int ENTRY_NAME_LENGTH = 1;
+    static final int ENTRY_SLOT = 4;
+    static final int ENTRY_NAME = 8;
+    static final int MAX_NAME_LENGTH = LINE - ENTRY_NAME;
+    static final String[] HISTOGRAM_SUFFIXES = {".count", ".p50", ".p90", ".p99", ".p99.9", ".max"};
+    private static final double[] HISTOGRAM_FRACTIONS = {0.5, 0.9, 0.99, 0.999, 1};
+
+    private final int capacity;
+    @Nullable
+    private final Object base;
+    private final long offset;
+    private final long size;
+    @Nullable
+    private final RandomAccessFile raf;
+    // guarded by this
+    private final Map<String, Integer> indexByName = new HashMap<>();
+    private final List<Object> values = new ArrayList<>();
+    private final Map<String, HistogramGauges> histograms = new HashMap<>();
+    private final List<HistogramGauges> histogramList = new ArrayList<>();
+    private int count;
+    private int slotsUsed;
+
+    /**
+     * Creates a registry on heap.
+     *
+     * @param capacity the number of 64 byte slots for values, one per counter or gauge, six per histogram
+     */
+    public MetricsRegistry(int capacity) {
+        // validated before the super constructor registers this as a Closeable
+        this(validCapacity(capacity), new long[(int) (sizeFor(validCapacity(capacity)) / 8)], MEMORY.arrayBaseOffset(long[].class), null);
+    }
+
+    private MetricsRegistry(int capacity, @Nullable Object base, long offset, @Nullable RandomAccessFile raf) {
+        this.capacity = capacity;
+        this.base = base;
+        this.offset = offset;
+        this.size = sizeFor(capacity);
+        this.raf = raf;
+        if (raf == null)
+            initialise(base, offset, capacity);
+        this.count = MEMORY.readVolatileInt(base, offset + COUNT_OFFSET);
+        this.slotsUsed = MEMORY.readInt(base, offset + SLOTS_USED_OFFSET);
+        for (int i = 0; i < count; i++) {
+            indexByName.put(readName(i), i);
+            values.add(bind(typeAt(i), slotOffset(slotAt(i))));
+        }
+        singleThreadedCheckDisabled(true);
+    }
+
+    /**
+     * Creates a registry in a memory mapped file which a {@link MetricsReader} in another process can read, or reopens
+     * the one in the file, keeping the values registered so far.
+     *
+     * @param file     to map
+     * @param capacity the number of 64 byte slots for values, one per counter or gauge, six per histogram
+     * @return the registry, which unmaps the file when closed
+     * @throws IOException if the file could not be mapped, or holds a registry of a different capacity
+     */
+    @NotNull
+    public static MetricsRegistry map(@NotNull File file, int capacity) throws IOException {
+        validCapacity(capacity);
+        final long size = sizeFor(capacity);
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        long address = 0;
+        try {
+            if (raf.length() < size)
+                raf.setLength(size);
+            address = OS.map(raf.getChannel(), FileChannel.MapMode.READ_WRITE, 0, size);
+            final long magic = MEMORY.readVolatileLong(address + MAGIC_OFFSET);
+            if (magic == 0) {
+                initialise(null, address, capacity);
+            } else if (magic != MAGIC || MEMORY.readInt(address + VERSION_OFFSET) != VERSION || MEMORY.readInt(address + CAPACITY_OFFSET) != capacity) {
+                throw new IOException("Expected a MetricsRegistry of capacity " + capacity + " in " + file +
+                        ", magic: " + Long.toHexString(magic) + ", capacity: " + MEMORY.readInt(address + CAPACITY_OFFSET));
+            }
+            return new MetricsRegistry(capacity, null, address, raf);
+        } catch (IOException | RuntimeException e) {
+            if (address != 0)
+                OS.unmap(address, size);
+            raf.close();
+            throw e;
+        }
+    }
+
+    private static int validCapacity(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity: " + capacity);
+        return capacity;
+    }
+
+    /**
+     * @param capacity the number of slots for values
+     * @return the bytes needed for a registry of this capacity
+     */
+    public static long sizeFor(int capacity) {
+        return HEADER_SIZE + 2L * capacity * LINE;
+    }
+
+    private static void initialise(@Nullable Object base, long offset, int capacity) {
+        if (MEMORY.readVolatileLong(base, offset + MAGIC_OFFSET) == MAGIC)
+            return;
+        MEMORY.writeInt(base, offset + VERSION_OFFSET, VERSION);
+        MEMORY.writeInt(base, offset + CAPACITY_OFFSET, capacity);
+        // written last so a reader doesn't use it before it's ready
+        MEMORY.writeOrderedLong(base, offset + MAGIC_OFFSET, MAGIC);
+    }
+
+    static long directoryOffset(int index) {
+        return HEADER_SIZE + (long) index * LINE;
+    }
+
+    static long slotOffset(int capacity, int slot) {
+        return HEADER_SIZE + (long) (capacity + slot) * LINE;
+    }
+
+    static int slotsFor(int length) {
+        return (int) ((MemoryLongArrayValues.sizeFor(length) + LINE - 1) / LINE);
+    }
+
+    private long slotOffset(int slot) {
+        return offset + slotOffset(capacity, slot);
+    }
+
+    private String readName(int index) {
+        final long entry = offset + directoryOffset(index);
+        final int length = MEMORY.readByte(base, entry + ENTRY_NAME_LENGTH) & 0xFF;
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = (char) (MEMORY.readByte(base, entry + ENTRY_NAME + i) & 0xFF);
+        return new String(chars);
+    }
+
+    private MetricType typeAt(int index) {
+        return MetricType.forCode(MEMORY.readByte(base, offset + directoryOffset(index) + ENTRY_TYPE));
+    }
+
+    private int slotAt(int index) {
+        return MEMORY.readInt(base, offset + directoryOffset(index) + ENTRY_SLOT);
+    }
+
+    private Object bind(MetricType type, long slotOffset) {
+        return type.isArray()
+                ? new MemoryLongArrayValues(base, slotOffset, this)
+                : new MemoryLongValue(base, slotOffset, this);
+    }
+
+    /**
+     * @return the number of 64 byte slots for values
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of metrics registered
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Gets or registers a counter.
+     *
+     * @param name of the counter, up to 56 ISO-8859-1 characters
+     * @return the counter
+     * @throws IllegalArgumentException    if the name is too long, or registered as a gauge
+     * @throws IllegalStateException       if the registry is full
+     * @throws ClosedIllegalStateException if the registry has been closed
+     */
+    @NotNull
+    public LongValue counter(@NotNull String name) throws IllegalArgumentException, IllegalStateException {
+        return (LongValue) register(name, MetricType.COUNTER, 1);
+    }
+
+    /**
+     * Gets or registers a gauge.
+     *
+     * @param name of the gauge, up to 56 ISO-8859-1 characters
+     * @return the gauge
+     * @throws IllegalArgumentException    if the name is too long, or registered as a counter
+     * @throws IllegalStateException       if the registry is full
+     * @throws ClosedIllegalStateException if the registry has been closed
+     */
+    @NotNull
+    public LongValue gauge(@NotNull String name) throws IllegalArgumentException, IllegalStateException {
+        return (LongValue) register(name, MetricType.GAUGE, 1);
+    }
+
+    /**
+     * Gets or registers an array of counters, e.g. one per partition.
+     *
+     * @param name   of the counters, up to 56 ISO-8859-1 characters
+     * @param length of the array
+     * @return the counters
+     * @throws IllegalArgumentException    if the name is too long, or registered as another type or length
+     * @throws IllegalStateException       if the registry doesn't have enough free slots
+     * @throws ClosedIllegalStateException if the registry has been closed
+     */
+    @NotNull
+    public MemoryLongArrayValues counters(@NotNull String name, int length) throws IllegalArgumentException, IllegalStateException {
+        return (MemoryLongArrayValues) register(name, MetricType.COUNTER_ARRAY, length);
+    }
+
+    /**
+     * Gets or registers an array of gauges, e.g. one per partition.
+     *
+     * @param name   of the gauges, up to 56 ISO-8859-1 characters
+     * @param length of the array
+     * @return the gauges
+     * @throws IllegalArgumentException    if the name is too long, or registered as another type or length
+     * @throws IllegalStateException       if the registry doesn't have enough free slots
+     * @throws ClosedIllegalStateException if the registry has been closed
+     */
+    @NotNull
+    public MemoryLongArrayValues gauges(@NotNull String name, int length) throws IllegalArgumentException, IllegalStateException {
+        return (MemoryLongArrayValues) register(name, MetricType.GAUGE_ARRAY, length);
+    }
+
+    /**
+     * @param name of a metric
+     * @return its type, or null if it is not registered
+     */
+    @Nullable
+    public synchronized MetricType type(@NotNull String name) {
+        final Integer index = indexByName.get(name);
+        return index == null ? null : typeAt(index);
+    }
+
+    private synchronized Object register(@NotNull String name, @NotNull MetricType type, int length) {
+        throwExceptionIfClosed();
+        final Integer index = indexByName.get(name);
+        if (index != null) {
+            final Object existing = values.get(index);
+            if (typeAt(index) != type || (type.isArray() && ((LongArrayValues) existing).getCapacity() != length))
+                throw new IllegalArgumentException(name + " is not a " + type + (type.isArray() ? " of length " + length : ""));
+            return existing;
+        }
+        if (name.length() > MAX_NAME_LENGTH)
+            throw new IllegalArgumentException("name: " + name + " is longer than " + MAX_NAME_LENGTH);
+        if (length <= 0)
+            throw new IllegalArgumentException("length: " + length);
+        final int slots = type.isArray() ? slotsFor(length) : 1;
+        if (slotsUsed + slots > capacity)
+            throw new IllegalStateException("Cannot register " + name + ", " + slots + " slots needed, " + (capacity - slotsUsed) + " free");
+        final long slotOffset = slotOffset(slotsUsed);
+        if (type.isArray())
+            MemoryLongArrayValues.initialise(base, slotOffset, length);
+        final long entry = offset + directoryOffset(count);
+        MEMORY.writeByte(base, entry + ENTRY_TYPE, (byte) (type.ordinal() + 1));
+        MEMORY.writeByte(base, entry + ENTRY_NAME_LENGTH, (byte) name.length());
+        MEMORY.writeInt(base, entry + ENTRY_SLOT, slotsUsed);
+        for (int i = 0; i < name.length(); i++)
+            MEMORY.writeByte(base, entry + ENTRY_NAME + i, (byte) name.charAt(i));
+        final Object value = bind(type, slotOffset);
+        indexByName.put(name, count);
+        values.add(value);
+        slotsUsed += slots;
+        MEMORY.writeInt(base, offset + SLOTS_USED_OFFSET, slotsUsed);
+        // publishes the directory entry to readers
+        MEMORY.writeOrderedInt(base, offset + COUNT_OFFSET, ++count);
+        return value;
+    }
+
+    /**
+     * Gets or registers a histogram, published as the gauges name.count, name.p50, name.p90, name.p99, name.p99.9 and
+     * name.max by {@link #updateHistograms()}.
+     *
+     * @param name of the histogram, up to 50 ISO-8859-1 characters
+     * @return the histogram to record samples to
+     * @throws IllegalArgumentException    if the name is too long, or a gauge name is in use as a counter
+     * @throws IllegalStateException       if the registry doesn't have space for the gauges
+     * @throws ClosedIllegalStateException if the registry has been closed
+     */
+    @NotNull
+    public synchronized ConcurrentHistogram histogram(@NotNull String name) throws IllegalArgumentException, IllegalStateException {
+        HistogramGauges hg = histograms.get(name);
+        if (hg == null) {
+            throwExceptionIfClosed();
+            // check all the gauges can be registered first so a failure doesn't leave some of them behind
+            int slots = 0;
+            for (String suffix : HISTOGRAM_SUFFIXES) {
+                final String gaugeName = name + suffix;
+                final Integer index = indexByName.get(gaugeName);
+                if (index == null) {
+                    if (gaugeName.length() > MAX_NAME_LENGTH)
+                        throw new IllegalArgumentException("name: " + gaugeName + " is longer than " + MAX_NAME_LENGTH);
+                    slots++;
+                } else if (typeAt(index) != MetricType.GAUGE) {
+                    throw new IllegalArgumentException(gaugeName + " is not a " + MetricType.GAUGE);
+                }
+            }
+            if (slotsUsed + slots > capacity)
+                throw new IllegalStateException("Cannot register " + name + ", " + slots + " slots needed, " + (capacity - slotsUsed) + " free");
+            final LongValue[] gauges = new LongValue[HISTOGRAM_SUFFIXES.length];
+            for (int i = 0; i < gauges.length; i++)
+                gauges[i] = gauge(name + HISTOGRAM_SUFFIXES[i]);
+            hg = new HistogramGauges(gauges);
+            histograms.put(name, hg);
+            histogramList.add(hg);
+        }
+        return hg.histogram;
+    }
+
+    /**
+     * Publishes the count and percentiles of each histogram to its gauges, without allocating.
+     */
+    public synchronized void updateHistograms() {
+        throwExceptionIfClosed();
+        for (int i = 0; i < histogramList.size(); i++)
+            histogramList.get(i).update();
+    }
+
+    /**
+     * @return a snapshot of the values by name in the order registered, with elements of arrays named name[index]
+     */
+    @NotNull
+    public synchronized Map<String, Long> snapshot() {
+        final Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            final Object value = values.get(i);
+            if (value instanceof LongValue) {
+                map.put(readName(i), ((LongValue) value).getVolatileValue());
+            } else {
+                final LongArrayValues array = (LongArrayValues) value;
+                for (int j = 0; j < array.getCapacity(); j++)
+                    map.put(readName(i) + "[" + j + "]", array.getVolatileValueAt(j));
+            }
+        }
+        return map;
+    }
+
+    @Override
+    protected void performClose() {
+        if (raf == null)
+            return;
+        try {
+            OS.unmap(offset, size);
+        } catch (IOException e) {
+            Jvm.warn().on(MetricsRegistry.class, "Unable to unmap", e);
+        }
+        try {
+            raf.close();
+        } catch (IOException e) {
+            Jvm.warn().on(MetricsRegistry.class, "Unable to close the file", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsRegistry{" +
+                "capacity=" + capacity +
+                ", size=" + size() +
+                ", mapped=" + (raf != null) +
+                '}';
+    }
+
+    static final class HistogramGauges {
+        final ConcurrentHistogram histogram = new ConcurrentHistogram();
+        final Histogram snapshot = new Histogram();
+        final double[] percentiles = new double[HISTOGRAM_FRACTIONS.length];
+        final LongValue[] gauges;
+
+        HistogramGauges(LongValue[] gauges) {
+            this.gauges = gauges;
+        }
+
+        void update() {
+            histogram.snapshot(snapshot);
+            gauges[0].setOrderedValue(snapshot.totalCount());
+            if (snapshot.totalCount() == 0)
+                return;
+            snapshot.getPercentiles(HISTOGRAM_FRACTIONS, HISTOGRAM_FRACTIONS.length, percentiles);
+            for (int i = 0; i < percentiles.length; i++)
+                gauges[i + 1].setOrderedValue((long) Math.min(Long.MAX_VALUE, percentiles[i]));
+        }
+    }
+}
@@ -0,0 +1,15 @@
+/**
+ * Provides a registry of named counters, gauges and histograms cheap enough to update on a latency sensitive path.
+ *
+ * <p>The {@link net.openhft.chronicle.core.metrics.MetricsRegistry} holds each counter and gauge as a
+ * {@link net.openhft.chronicle.core.values.LongValue} on its own cache line, and arrays of them as
+ * {@link net.openhft.chronicle.core.values.LongArrayValues}, either on heap or in a memory mapped file.
+ * The {@link net.openhft.chronicle.core.metrics.MetricsReader} reads the values by name from the same memory, so a
+ * sidecar process can poll a mapped registry without involving the JVM which updates it, and
+ * {@link net.openhft.chronicle.core.metrics.MetricsReaderMain} prints them from the command line.
+ *
+ * @see net.openhft.chronicle.core.metrics.MetricsRegistry
+ * @see net.openhft.chronicle.core.metrics.MetricsReader
+ * @see net.openhft.chronicle.core.metrics.MetricType
+ */
+package net.openhft.chronicle.core.metrics;
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link Pauser} which backs off the longer the loop is idle, in the same steps as the
+ * {@link net.openhft.chronicle.core.cooler.CpuCoolers}: it spins, then yields, then parks for a time which doubles up to
+ * a maximum. The spin and yield phases are bounded by time rather than a number of pauses, so they don't depend on how
+ * long the loop's handlers take to find they have no work.
+ * <p>
+ * The time spent in each {@link Pauser.Phase} is recorded when the loop leaves that phase, by moving to the next or by
+ * finding work, so a pauser which is still parking hasn't added its current wait yet.
+ * <p>
+ * This is not thread safe apart from {@link #unpause()} and the statistics, and is intended for one loop thread.
+ */
+public class BackoffPauser implements Pauser {
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long spinNanos;
+    private final long yieldNanos;
+    private final long minParkNanos;
+    private final long maxParkNanos;
+    private final LongSupplier nanoTime;
+    // only written by the loop thread
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(PHASES.length);
+    private final AtomicLongArray phaseCounts = new AtomicLongArray(PHASES.length);
+    // set once, so an unpause just before a park leaves a permit rather than being missed
+    @Nullable
+    private volatile Thread loopThread;
+    // only accessed by the loop thread
+    private boolean idle;
+    private long idleStartNS;
+    private Phase phase;
+    private long phaseStartNS;
+    private long parkNanos;
+
+    /**
+     * Creates a pauser which spins for 20 us, yields for 200 us, then parks from 20 us up to 20 ms.
+     */
+    public BackoffPauser() {
+        this(TimeUnit.MICROSECONDS.toNanos(20), TimeUnit.MICROSECONDS.toNanos(200), TimeUnit.MICROSECONDS.toNanos(20), TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    /**
+     * @param spinNanos    how long to spin for once idle
+     * @param yieldNanos   how long to yield for after spinning
+     * @param minParkNanos the time to park for once done yielding
+     * @param maxParkNanos the longest time to park for, as each park is twice as long as the last
+     */
+    public BackoffPauser(long spinNanos, long yieldNanos, long minParkNanos, long maxParkNanos) {
+        this(spinNanos, yieldNanos, minParkNanos, maxParkNanos, System::nanoTime);
+    }
+
+    BackoffPauser(long spinNanos, long yieldNanos, long minParkNanos, long maxParkNanos, @NotNull LongSupplier nanoTime) {
+        if (spinNanos < 0 || yieldNanos < 0 || minParkNanos <= 0 || maxParkNanos < minParkNanos)
+            throw new IllegalArgumentException("spinNanos: " + spinNanos + ", yieldNanos: " + yieldNanos + ", minParkNanos: " + minParkNanos + ", maxParkNanos: " + maxParkNanos);
+        this.spinNanos = spinNanos;
+        this.yieldNanos = yieldNanos;
+        this.minParkNanos = minParkNanos;
+        this.maxParkNanos = maxParkNanos;
+        this.nanoTime = nanoTime;
+        this.parkNanos = minParkNanos;
+    }
+
+    @Override
+    public void reset() {
+        recordLoopThread();
+        if (!idle)
+            return;
+        endPhase(nanoTime.getAsLong());
+        idle = false;
+        parkNanos = minParkNanos;
+    }
+
+    @Override
+    public void pause() {
+        recordLoopThread();
+        final long now = nanoTime.getAsLong();
+        if (!idle) {
+            idle = true;
+            idleStartNS = now;
+            phase = Phase.SPIN;
+            phaseStartNS = now;
+        }
+        final Phase next = phaseAt(now - idleStartNS);
+        if (next != phase) {
+            endPhase(now);
+            phase = next;
+            phaseStartNS = now;
+        }
+        phaseCounts.lazySet(next.ordinal(), phaseCounts.get(next.ordinal()) + 1);
+        switch (next) {
+            case SPIN:
+                BusyPauser.INSTANCE.pause();
+                break;
+            case YIELD:
+                Thread.yield();
+                break;
+            default:
+                LockSupport.parkNanos(this, parkNanos);
+                parkNanos = Math.min(maxParkNanos, parkNanos * 2);
+                break;
+        }
+    }
+
+    private void recordLoopThread() {
+        if (loopThread == null)
+            loopThread = Thread.currentThread();
+    }
+
+    private Phase phaseAt(long idleNanos) {
+        if (idleNanos < spinNanos)
+            return Phase.SPIN;
+        if (idleNanos < spinNanos + yieldNanos)
+            return Phase.YIELD;
+        return Phase.PARK;
+    }
+
+    private void endPhase(long now) {
+        final int index = phase.ordinal();
+        phaseNanos.lazySet(index, phaseNanos.get(index) + now - phaseStartNS);
+    }
+
+    @Override
+    public void unpause() {
+        final Thread thread = loopThread;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return the time the next pause would park for, or 0 if it would spin or yield
+     */
+    public long parkNanos() {
+        return idle && phaseAt(nanoTime.getAsLong() - idleStartNS) == Phase.PARK ? parkNanos : 0;
+    }
+
+    @Override
+    public long timeNanos(@NotNull Phase phase) {
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    @Override
+    public long count(@NotNull Phase phase) {
+        return phaseCounts.get(phase.ordinal());
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("BackoffPauser{")
+                .append("spinNanos=").append(spinNanos)
+                .append(", yieldNanos=").append(yieldNanos)
+                .append(", minParkNanos=").append(minParkNanos)
+                .append(", maxParkNanos=").append(maxParkNanos);
+        for (Phase p : PHASES)
+            sb.append(", ").append(p).append("=").append(count(p)).append('/').append(timeNanos(p)).append("ns");
+        return sb.append('}').toString();
+    }
+}
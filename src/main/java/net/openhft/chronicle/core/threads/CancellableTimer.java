@@ -26,10 +26,17 @@ import net.openhft.chronicle.core.time.TimeProvider;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Closeable;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A timer that can schedule tasks to be executed periodically or after a delay.
  * The timer can be used to perform tasks in a non-blocking manner using an event loop.
+ * <p>
+ * By default each task is added to the event loop as its own handler, which polls the time on every iteration. When
+ * constructed with a tick, tasks are held in a {@link TimingWheel} per priority instead, so thousands of timers cost
+ * the event loop one handler each iteration.
  */
 public class CancellableTimer {
 
@@ -37,6 +44,9 @@ public class CancellableTimer {
     private final EventLoop eventLoop;
     @NotNull
     private final TimeProvider timeProvider;
+    private final long tickNanos;
+    // guarded by wheels
+    private final Map<HandlerPriority, TimingWheel> wheels = new EnumMap<>(HandlerPriority.class);
 
     /**
      * Constructs a CancellableTimer with the given event loop and system time provider.
@@ -54,13 +64,45 @@ public class CancellableTimer {
      * @param timeProvider the custom time provider to use for scheduling.
      */
     public CancellableTimer(@NotNull EventLoop eventLoop, @NotNull TimeProvider timeProvider) {
+        this(eventLoop, timeProvider, 0);
+    }
+
+    /**
+     * Constructs a CancellableTimer which schedules tasks in a {@link TimingWheel} per priority.
+     *
+     * @param eventLoop    the event loop that the timer tasks will run on.
+     * @param timeProvider the custom time provider to use for scheduling.
+     * @param tickNanos    the resolution of the timing wheels, or 0 to add a handler per task. A period shorter than
+     *                     a tick, e.g. 0 to be called on every iteration, is called every tick instead.
+     */
+    public CancellableTimer(@NotNull EventLoop eventLoop, @NotNull TimeProvider timeProvider, long tickNanos) {
+        if (tickNanos < 0)
+            throw new IllegalArgumentException("tickNanos: " + tickNanos);
         this.eventLoop = eventLoop;
         this.timeProvider = timeProvider;
+        this.tickNanos = tickNanos;
+    }
+
+    @NotNull
+    private TimingWheel wheel(@NotNull HandlerPriority priority) {
+        synchronized (wheels) {
+            TimingWheel wheel = wheels.get(priority);
+            if (wheel == null) {
+                wheel = new TimingWheel(timeProvider, tickNanos, priority);
+                wheels.put(priority, wheel);
+                eventLoop.addHandler(wheel);
+            }
+            return wheel;
+        }
     }
 
     /**
      * uses the event loop thread to call the event handler periodically, the time that the event is
      * called back is best-effort, but if the thread is busy that call back maybe delayed
+     * <p>
+     * Each period is measured from when the previous call started, so a call which takes less than the period doesn't
+     * delay the next, but missed calls are not made up as they are by
+     * {@link #scheduleAtFixedRate(VanillaEventHandler, long, long, TimeUnit)}.
      *
      * @param eventHandler   the handler to be called back
      * @param initialDelayMs how long in milliseconds to wait before being called back
@@ -70,15 +112,16 @@ public class CancellableTimer {
     public Closeable scheduleAtFixedRate(@NotNull VanillaEventHandler eventHandler,
                                          long initialDelayMs,
                                          long periodMs) {
-        final ScheduledEventHandler handler =
-                new ScheduledEventHandler(timeProvider, eventHandler, initialDelayMs, periodMs, HandlerPriority.TIMER);
-        eventLoop.addHandler(handler);
-        return handler;
+        return scheduleAtFixedRate(eventHandler, initialDelayMs, periodMs, HandlerPriority.TIMER);
     }
 
     /**
      * uses the event loop thread to call the event handler periodically, the time that the event is
      * called back is best-effort, but if the thread is busy that call back maybe delayed
+     * <p>
+     * Each period is measured from when the previous call started, so a call which takes less than the period doesn't
+     * delay the next, but missed calls are not made up as they are by
+     * {@link #scheduleAtFixedRate(VanillaEventHandler, long, long, TimeUnit)}.
      *
      * @param eventHandler   the handler to be called back
      * @param initialDelayMs how long in milliseconds to wait before being called back
@@ -90,10 +133,83 @@ public class CancellableTimer {
                                          long initialDelayMs,
                                          long periodMs,
                                          HandlerPriority priority) {
-        final ScheduledEventHandler handler =
-                new ScheduledEventHandler(timeProvider, eventHandler, initialDelayMs, periodMs, priority);
-        eventLoop.addHandler(handler);
-        return handler;
+        return schedule0(eventHandler, TimeUnit.MILLISECONDS.toNanos(initialDelayMs), TimeUnit.MILLISECONDS.toNanos(periodMs), TimingWheel.Cadence.FROM_START, priority);
+    }
+
+    /**
+     * Calls the event handler at a fixed rate on the event loop thread. The n-th call is due at
+     * {@code initialDelay + n * period} after scheduling, by {@link TimeProvider#currentTimeNanos()}, so a late call
+     * doesn't delay the ones after it. If the event loop falls behind by several periods, the missed calls are made
+     * back to back, one per iteration, until it has caught up.
+     *
+     * @param eventHandler the handler to be called back
+     * @param initialDelay how long to wait before the first call
+     * @param period       the interval between the times calls are due
+     * @param unit         of the initialDelay and period
+     * @return a {@link Closeable} that when closed will abort any remaining scheduled calls
+     */
+    public Closeable scheduleAtFixedRate(@NotNull VanillaEventHandler eventHandler,
+                                         long initialDelay,
+                                         long period,
+                                         @NotNull TimeUnit unit) {
+        return scheduleAtFixedRate(eventHandler, initialDelay, period, unit, HandlerPriority.TIMER);
+    }
+
+    /**
+     * Calls the event handler at a fixed rate on the event loop thread, catching up on missed calls.
+     *
+     * @param eventHandler the handler to be called back
+     * @param initialDelay how long to wait before the first call
+     * @param period       the interval between the times calls are due
+     * @param unit         of the initialDelay and period
+     * @param priority     the priority of the event handler
+     * @return a {@link Closeable} that when closed will abort any remaining scheduled calls
+     * @see #scheduleAtFixedRate(VanillaEventHandler, long, long, TimeUnit)
+     */
+    public Closeable scheduleAtFixedRate(@NotNull VanillaEventHandler eventHandler,
+                                         long initialDelay,
+                                         long period,
+                                         @NotNull TimeUnit unit,
+                                         @NotNull HandlerPriority priority) {
+        if (period <= 0)
+            throw new IllegalArgumentException("period: " + period);
+        return schedule0(eventHandler, unit.toNanos(initialDelay), unit.toNanos(period), TimingWheel.Cadence.FIXED_RATE, priority);
+    }
+
+    /**
+     * Calls the event handler with a fixed delay between the end of one call and the start of the next, by
+     * {@link TimeProvider#currentTimeNanos()}. Missed calls are not made up.
+     *
+     * @param eventHandler the handler to be called back
+     * @param initialDelay how long to wait before the first call
+     * @param delay        how long to wait after each call before the next
+     * @param unit         of the initialDelay and delay
+     * @return a {@link Closeable} that when closed will abort any remaining scheduled calls
+     */
+    public Closeable scheduleWithFixedDelay(@NotNull VanillaEventHandler eventHandler,
+                                            long initialDelay,
+                                            long delay,
+                                            @NotNull TimeUnit unit) {
+        return scheduleWithFixedDelay(eventHandler, initialDelay, delay, unit, HandlerPriority.TIMER);
+    }
+
+    /**
+     * Calls the event handler with a fixed delay between the end of one call and the start of the next.
+     *
+     * @param eventHandler the handler to be called back
+     * @param initialDelay how long to wait before the first call
+     * @param delay        how long to wait after each call before the next
+     * @param unit         of the initialDelay and delay
+     * @param priority     the priority of the event handler
+     * @return a {@link Closeable} that when closed will abort any remaining scheduled calls
+     * @see #scheduleWithFixedDelay(VanillaEventHandler, long, long, TimeUnit)
+     */
+    public Closeable scheduleWithFixedDelay(@NotNull VanillaEventHandler eventHandler,
+                                            long initialDelay,
+                                            long delay,
+                                            @NotNull TimeUnit unit,
+                                            @NotNull HandlerPriority priority) {
+        return schedule0(eventHandler, unit.toNanos(initialDelay), unit.toNanos(delay), TimingWheel.Cadence.FIXED_DELAY, priority);
     }
 
     /**
@@ -104,10 +220,34 @@ public class CancellableTimer {
      * @return a {@link Closeable} that when closed will abort any remaining scheduled calls
      */
     public Closeable schedule(@NotNull Runnable eventHandler, long initialDelayMs) {
+        return schedule(eventHandler, initialDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedule a handler to run once after a delay
+     *
+     * @param eventHandler the handler to be called back
+     * @param delay        how long to wait before being called back
+     * @param unit         of the delay
+     * @return a {@link Closeable} that when closed will abort any remaining scheduled calls
+     */
+    public Closeable schedule(@NotNull Runnable eventHandler, long delay, @NotNull TimeUnit unit) {
+        if (tickNanos > 0)
+            return wheel(HandlerPriority.TIMER).schedule(eventHandler, unit.toNanos(delay));
         final ScheduledEventHandler handler = new ScheduledEventHandler(timeProvider, () -> {
             eventHandler.run();
             throw new InvalidEventHandlerException("just runs once");
-        }, initialDelayMs, 0);
+        }, unit.toNanos(delay), 0, TimingWheel.Cadence.FIXED_DELAY, HandlerPriority.TIMER);
+        eventLoop.addHandler(handler);
+        return handler;
+    }
+
+    private Closeable schedule0(@NotNull VanillaEventHandler eventHandler, long initialDelayNanos, long periodNanos, @NotNull TimingWheel.Cadence cadence, @NotNull HandlerPriority priority) {
+        if (tickNanos > 0)
+            // a period of 0 is every iteration without a wheel, which the wheel can only do every tick
+            return wheel(priority).schedule(eventHandler, initialDelayNanos, Math.max(periodNanos, tickNanos), cadence);
+        final ScheduledEventHandler handler =
+                new ScheduledEventHandler(timeProvider, eventHandler, initialDelayNanos, periodNanos, cadence, priority);
         eventLoop.addHandler(handler);
         return handler;
     }
@@ -118,33 +258,26 @@ public class CancellableTimer {
         private final TimeProvider timeProvider;
         @NotNull
         private final VanillaEventHandler eventHandler;
-        private final long initialDelayMs;
-        private final long periodMs;
+        private final long periodNanos;
+        private final TimingWheel.Cadence cadence;
         private volatile boolean closed;
 
-        private boolean isFirstTime = true;
-        private long lastTimeRan;
+        private long nextRunNanos;
 
         private final HandlerPriority priority;
 
         private ScheduledEventHandler(@NotNull TimeProvider timeProvider,
                                       @NotNull VanillaEventHandler eventHandler,
-                                      long initialDelayMs,
-                                      long periodMs) {
-            this(timeProvider, eventHandler, initialDelayMs, periodMs, HandlerPriority.TIMER);
-        }
-
-        private ScheduledEventHandler(@NotNull TimeProvider timeProvider,
-                                      @NotNull VanillaEventHandler eventHandler,
-                                      long initialDelayMs,
-                                      long periodMs,
+                                      long initialDelayNanos,
+                                      long periodNanos,
+                                      TimingWheel.Cadence cadence,
                                       HandlerPriority priority) {
             this.timeProvider = timeProvider;
-            this.initialDelayMs = initialDelayMs;
-            this.periodMs = periodMs;
+            this.periodNanos = periodNanos;
+            this.cadence = cadence;
             this.eventHandler = eventHandler;
             this.priority = priority;
-            this.lastTimeRan = timeProvider.currentTimeMillis();
+            this.nextRunNanos = timeProvider.currentTimeNanos() + initialDelayNanos;
         }
 
         @Override
@@ -152,30 +285,28 @@ public class CancellableTimer {
             if (closed)
                 throw InvalidEventHandlerException.reusable();
 
-            long currentTime = timeProvider.currentTimeMillis();
-
-            if (lastTimeRan + waitTimeMs() > currentTime)
+            final long now = timeProvider.currentTimeNanos();
+            if (now < nextRunNanos)
                 return false;
 
-            isFirstTime = false;
-            lastTimeRan = currentTime;
+            if (cadence == TimingWheel.Cadence.FIXED_RATE)
+                // due times advance by whole periods so a late call doesn't delay the next
+                nextRunNanos += periodNanos;
+            else if (cadence == TimingWheel.Cadence.FROM_START)
+                nextRunNanos = now + periodNanos;
 
             try {
                 return eventHandler.action();
             } catch (RuntimeException e) {
                 Jvm.warn().on(getClass(), "Unexpected runtime exception", e);
+            } finally {
+                if (cadence == TimingWheel.Cadence.FIXED_DELAY)
+                    nextRunNanos = timeProvider.currentTimeNanos() + periodNanos;
             }
 
             return false;
         }
 
-        private long waitTimeMs() {
-            if (!isFirstTime)
-                return periodMs;
-
-            return initialDelayMs;
-        }
-
         @Override
         @NotNull
         public HandlerPriority priority() {
@@ -193,4 +324,3 @@ public class CancellableTimer {
         }
     }
 }
-
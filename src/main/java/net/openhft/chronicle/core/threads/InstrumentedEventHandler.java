@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.Maths;
+import net.openhft.chronicle.core.io.InvalidMarshallableException;
+import net.openhft.chronicle.core.util.ConcurrentHistogram;
+import net.openhft.chronicle.core.util.Histogram;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link EventHandler} which records how often, and for how long, the handler it wraps is called, to find which
+ * handler is starving an event loop.
+ * <p>
+ * Every call to {@link #action()} is counted, as are the calls which report being busy. The duration of every Nth call
+ * is recorded in a histogram, so the cost of measuring is two counter updates on most calls and a pair of
+ * {@link System#nanoTime()} calls on a sampled one. Nothing is allocated once the loop has started.
+ * <p>
+ * The statistics are written by the event loop thread and may be read from any thread, e.g. by a reporter.
+ *
+ * @see InstrumentedEventLoop
+ */
+public class InstrumentedEventHandler implements EventHandler, Closeable {
+    @NotNull
+    private final EventHandler handler;
+    @NotNull
+    private final String name;
+    private final int sampleMask;
+    private final ConcurrentHistogram actionNanos = new ConcurrentHistogram();
+    // single writer, the event loop thread
+    private final AtomicLong invocations = new AtomicLong();
+    private final AtomicLong busy = new AtomicLong();
+    private final AtomicLong sampledNanos = new AtomicLong();
+
+    /**
+     * @param handler        to instrument
+     * @param name           to report the handler as
+     * @param sampleInterval time one call in every sampleInterval, rounded up to a power of 2
+     */
+    public InstrumentedEventHandler(@NotNull EventHandler handler, @NotNull String name, int sampleInterval) {
+        this.handler = handler;
+        this.name = name;
+        this.sampleMask = Maths.nextPower2(sampleInterval, 1) - 1;
+    }
+
+    /**
+     * @return the handler being instrumented
+     */
+    @NotNull
+    public EventHandler handler() {
+        return handler;
+    }
+
+    /**
+     * @return the name the handler is reported as
+     */
+    @NotNull
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the interval between calls which are timed
+     */
+    public int sampleInterval() {
+        return sampleMask + 1;
+    }
+
+    @Override
+    public boolean action() throws InvalidEventHandlerException, InvalidMarshallableException {
+        final long count = invocations.get();
+        invocations.lazySet(count + 1);
+        final boolean result;
+        if ((count & sampleMask) == 0) {
+            final long start = System.nanoTime();
+            try {
+                result = handler.action();
+            } finally {
+                final long time = System.nanoTime() - start;
+                actionNanos.sampleNanos(time);
+                sampledNanos.lazySet(sampledNanos.get() + time);
+            }
+        } else {
+            result = handler.action();
+        }
+        if (result)
+            busy.lazySet(busy.get() + 1);
+        return result;
+    }
+
+    /**
+     * @return the number of calls to action()
+     */
+    public long invocations() {
+        return invocations.get();
+    }
+
+    /**
+     * @return the number of calls to action() which returned true
+     */
+    public long busy() {
+        return busy.get();
+    }
+
+    /**
+     * @return the fraction of calls to action() which returned true, or 0 if it hasn't been called
+     */
+    public double busyRatio() {
+        final long invocations = invocations();
+        return invocations == 0 ? 0 : (double) busy() / invocations;
+    }
+
+    /**
+     * @return an estimate of the total time spent in action(), from the calls sampled
+     */
+    public long actionNanosEstimate() {
+        return sampledNanos.get() * sampleInterval();
+    }
+
+    /**
+     * @param into to copy the durations of the sampled calls into, replacing what it held
+     * @return into
+     */
+    @NotNull
+    public Histogram actionNanos(@NotNull Histogram into) {
+        return actionNanos.snapshot(into);
+    }
+
+    @Override
+    public void eventLoop(EventLoop eventLoop) {
+        handler.eventLoop(eventLoop);
+    }
+
+    @Override
+    public void loopStarted() {
+        handler.loopStarted();
+    }
+
+    @Override
+    public void loopFinished() {
+        handler.loopFinished();
+    }
+
+    @NotNull
+    @Override
+    public HandlerPriority priority() {
+        return handler.priority();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (handler instanceof Closeable)
+            ((Closeable) handler).close();
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedEventHandler{" +
+                "name='" + name + '\'' +
+                ", invocations=" + invocations() +
+                ", busy=" + busy() +
+                ", actionNanosEstimate=" + actionNanosEstimate() +
+                '}';
+    }
+}
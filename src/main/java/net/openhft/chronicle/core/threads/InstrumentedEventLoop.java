@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.util.Histogram;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An {@link EventLoop} which wraps each handler added in an {@link InstrumentedEventHandler}, so the handlers which
+ * are busiest or slowest can be reported while the loop runs.
+ * <p>
+ * Instrumentation is opt in by wrapping the event loop, e.g.
+ * <pre>
+ * InstrumentedEventLoop loop = new InstrumentedEventLoop(eventLoop, 64);
+ * loop.addHandler(handler);
+ * ...
+ * System.out.println(loop.report());
+ * </pre>
+ */
+public class InstrumentedEventLoop extends DelegatingEventLoop {
+    private final int sampleInterval;
+    private final List<InstrumentedEventHandler> handlers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param eventLoop      to add the instrumented handlers to
+     * @param sampleInterval time one call to each handler in every sampleInterval, rounded up to a power of 2
+     */
+    public InstrumentedEventLoop(@NotNull EventLoop eventLoop, int sampleInterval) {
+        super(eventLoop);
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Adds a handler reported by the simple name of its class, or its toString() if that is empty.
+     *
+     * @param handler to instrument and add
+     */
+    @Override
+    public void addHandler(EventHandler handler) {
+        final String simpleName = handler.getClass().getSimpleName();
+        addHandler(simpleName.isEmpty() || simpleName.contains("$$Lambda") ? handler.toString() : simpleName, handler);
+    }
+
+    /**
+     * @param name    to report the handler as
+     * @param handler to instrument and add
+     */
+    public void addHandler(@NotNull String name, @NotNull EventHandler handler) {
+        final InstrumentedEventHandler instrumented = new RemovableHandler(handler, name);
+        handlers.add(instrumented);
+        super.addHandler(instrumented);
+    }
+
+    /**
+     * @return the handlers added, in the order added, which the loop hasn't finished with or closed
+     */
+    @NotNull
+    public List<InstrumentedEventHandler> handlers() {
+        return new ArrayList<>(handlers);
+    }
+
+    /**
+     * @return a table of the calls to each handler, the fraction which were busy, the estimated share of the time spent
+     * in all handlers, and percentiles of the duration of the sampled calls in microseconds
+     */
+    @NotNull
+    public String report() {
+        long totalNanos = 0;
+        for (InstrumentedEventHandler handler : handlers)
+            totalNanos += handler.actionNanosEstimate();
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-32s %12s %6s %6s %10s %10s %10s%n", "handler", "calls", "busy%", "time%", "50/us", "99/us", "max/us"));
+        final Histogram histogram = new Histogram();
+        for (InstrumentedEventHandler handler : handlers) {
+            handler.actionNanos(histogram);
+            final boolean sampled = histogram.totalCount() > 0;
+            sb.append(String.format("%-32s %12d %6.1f %6.1f %10.2f %10.2f %10.2f%n",
+                    handler.name(),
+                    handler.invocations(),
+                    handler.busyRatio() * 100,
+                    totalNanos == 0 ? 0.0 : handler.actionNanosEstimate() * 100.0 / totalNanos,
+                    sampled ? histogram.percentile(0.5) / 1e3 : 0.0,
+                    sampled ? histogram.percentile(0.99) / 1e3 : 0.0,
+                    sampled ? histogram.percentile(1) / 1e3 : 0.0));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Removed from the handlers reported once the loop has finished with it, e.g. after it threw
+     * {@link InvalidEventHandlerException}, so handlers added and removed over time don't accumulate.
+     */
+    private final class RemovableHandler extends InstrumentedEventHandler {
+        RemovableHandler(@NotNull EventHandler handler, @NotNull String name) {
+            super(handler, name, sampleInterval);
+        }
+
+        @Override
+        public void loopFinished() {
+            try {
+                super.loopFinished();
+            } finally {
+                handlers.remove(this);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            handlers.remove(this);
+            super.close();
+        }
+    }
+}
@@ -26,7 +26,8 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * This class can be used to take snapshots of a thread's stack trace at different stages
  * and measure how long the thread has been blocked.
- * 
+ * <p>
+ * Only one thread can be tracked at a time; {@link StallProfiler} monitors any number of threads.
  */
 @Deprecated(/* to be moved in x.26 */)
 public final class JitterSampler {
@@ -32,6 +32,7 @@ public class MonitorProfileAnalyserMain {
     private static final int MAX_LINES = Jvm.getInteger("st.maxlines", 8);
     private static final String PROFILE_OF_THE_THREAD = "profile of the thread";
     private static final String THREAD_HAS_BLOCKED_FOR = "thread has blocked for";
+    private static final String SAMPLES = ", samples ";
 
     /**
      * Reads one or more log files and looks for thread profiles to summarise
@@ -61,15 +62,17 @@ public class MonitorProfileAnalyserMain {
         for (String arg : args) {
             StringBuilder sb = new StringBuilder();
             int lineCount = -1;
+            int samples = 1;
             try (BufferedReader br = Files.newBufferedReader(Paths.get(arg))) {
                 // TODO: PrintGCApplicationStoppedTime
 
                 for (String line; (line = br.readLine()) != null; ) {
                     if (line.contains(PROFILE_OF_THE_THREAD) || line.contains(THREAD_HAS_BLOCKED_FOR)) {
                         if (sb.length() > 0) {
-                            addToStackCount(ignoreSubStrings, stackCount, sb);
+                            addToStackCount(ignoreSubStrings, stackCount, sb, samples);
                         }
                         lineCount = 0;
+                        samples = samplesOf(line);
                         sb.setLength(0);
 
                     } else if (partOfStackTrace(line) && lineCount >= 0) {
@@ -77,10 +80,12 @@ public class MonitorProfileAnalyserMain {
                             sb.append(line).append("\n");
                         }
                     } else if (sb.length() > 0) {
-                        addToStackCount(ignoreSubStrings, stackCount, sb);
+                        addToStackCount(ignoreSubStrings, stackCount, sb, samples);
                         sb.setLength(0);
                     }
                 }
+                if (sb.length() > 0)
+                    addToStackCount(ignoreSubStrings, stackCount, sb, samples);
             }
         }
         List<Map.Entry<String, Integer>> stackSortedByCount =
@@ -111,12 +116,26 @@ public class MonitorProfileAnalyserMain {
                 .forEach(e -> System.out.println(e.getValue() + e.getKey()));
     }
 
-    private static void addToStackCount(List<String> ignoreSubStrings, Map<String, Integer> stackCount, StringBuilder sb) {
+    private static void addToStackCount(List<String> ignoreSubStrings, Map<String, Integer> stackCount, StringBuilder sb, int samples) {
         String lines = sb.toString();
         for (String ss : ignoreSubStrings)
             if (lines.contains(ss))
                 return;
-        stackCount.compute(lines, (k, v) -> v == null ? 1 : v + 1);
+        stackCount.compute(lines, (k, v) -> v == null ? samples : v + samples);
+    }
+
+    /**
+     * A report from {@link StallProfiler} counts identical stacks together, other logs have one sample per stack.
+     */
+    static int samplesOf(String line) {
+        final int index = line.lastIndexOf(SAMPLES);
+        if (index < 0)
+            return 1;
+        try {
+            return Integer.parseInt(line.substring(index + SAMPLES.length()).trim());
+        } catch (NumberFormatException e) {
+            return 1;
+        }
     }
 
     private static boolean partOfStackTrace(String line) {
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+/**
+ * What a stall or pause is attributed to by {@link PauseMonitor}.
+ */
+public enum PauseCause {
+    /**
+     * A stop the world pause reported by a garbage collector.
+     */
+    GC,
+    /**
+     * A pause of every Java thread which wasn't a GC, e.g. a safepoint for deoptimization or biased lock revocation.
+     */
+    SAFEPOINT,
+    /**
+     * A delay seen by the JVM with no safepoint to account for it, e.g. the OS descheduling the process or a page
+     * fault.
+     */
+    OS,
+    /**
+     * No JVM or OS pause covers the stall, so the time was spent in the application.
+     */
+    APPLICATION
+}
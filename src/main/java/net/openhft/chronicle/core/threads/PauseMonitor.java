@@ -0,0 +1,354 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.io.AbstractCloseable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.management.RuntimeMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Builds a timeline of pauses induced by the JVM or the OS, so a stall observed by a thread can be attributed to a
+ * {@link PauseCause}.
+ * <p>
+ * Two sources are combined
+ * <ul>
+ *     <li>notifications from the {@link GarbageCollectorMXBean}s, giving the start and end of each stop the world GC</li>
+ *     <li>a hiccup thread which repeatedly parks for the resolution and records any overshoot above the threshold as a
+ *     pause. If the JVM's total safepoint time grew by most of the overshoot it is a safepoint, otherwise it is treated
+ *     as the OS</li>
+ * </ul>
+ * The safepoint time is read from HotSpot's internal runtime MBean, which needs
+ * {@code --add-exports java.management/sun.management=ALL-UNNAMED}. Without it, hiccups which aren't a GC are all
+ * attributed to the OS.
+ * <p>
+ * A {@link StallProfiler} given this monitor counts the causes of each stack it samples. Only the most recent
+ * {@code capacity} pauses are kept.
+ */
+public class PauseMonitor extends AbstractCloseable {
+    static final int DEFAULT_CAPACITY = 4096;
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+    private final String name;
+    private final long resolutionNanos;
+    private final long thresholdNanos;
+    @Nullable
+    private final SafepointTime safepointTime = SafepointTime.create();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener listener = this::onNotification;
+    private final Thread thread;
+
+    // guarded by this, a ring of the most recent pauses
+    private final long[] starts;
+    private final long[] ends;
+    private final PauseCause[] causes;
+    private long recorded;
+    private final long[] countByCause = new long[PauseCause.values().length];
+    private final long[] nanosByCause = new long[PauseCause.values().length];
+    // reused by classify
+    private final long[] overlap = new long[PauseCause.values().length];
+
+    /**
+     * Creates and starts a monitor which samples for hiccups every millisecond and records those over 1 ms.
+     *
+     * @param name of the hiccup thread
+     */
+    public PauseMonitor(@NotNull String name) {
+        this(name, TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(1), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates and starts a monitor.
+     *
+     * @param name            of the hiccup thread
+     * @param resolutionNanos how long the hiccup thread parks for each sample
+     * @param thresholdNanos  the overshoot of a park which is recorded as a pause
+     * @param capacity        the number of recent pauses to keep
+     */
+    public PauseMonitor(@NotNull String name, long resolutionNanos, long thresholdNanos, int capacity) {
+        if (resolutionNanos <= 0 || thresholdNanos <= 0 || capacity <= 0)
+            throw new IllegalArgumentException("resolutionNanos: " + resolutionNanos + ", thresholdNanos: " + thresholdNanos + ", capacity: " + capacity);
+        this.name = name;
+        this.resolutionNanos = resolutionNanos;
+        this.thresholdNanos = thresholdNanos;
+        this.starts = new long[capacity];
+        this.ends = new long[capacity];
+        this.causes = new PauseCause[capacity];
+        singleThreadedCheckDisabled(true);
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // ZGC and Shenandoah report their concurrent cycles on a separate bean to their pauses
+            if (bean instanceof NotificationEmitter && !bean.getName().contains("Cycles")) {
+                ((NotificationEmitter) bean).addNotificationListener(listener, null, null);
+                emitters.add((NotificationEmitter) bean);
+            }
+        }
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return whether hiccups can be told apart as safepoints or the OS
+     */
+    public boolean safepointTimeAvailable() {
+        return safepointTime != null;
+    }
+
+    private void onNotification(Notification notification, Object handback) {
+        if (!GC_NOTIFICATION.equals(notification.getType()) || !(notification.getUserData() instanceof CompositeData))
+            return;
+        try {
+            final CompositeData info = (CompositeData) notification.getUserData();
+            final String action = String.valueOf(info.get("gcAction"));
+            // G1 reports its concurrent cycle as a GC of the whole duration
+            if (action.contains("concurrent"))
+                return;
+            final CompositeData gcInfo = (CompositeData) info.get("gcInfo");
+            final long startMs = (Long) gcInfo.get("startTime");
+            final long endMs = (Long) gcInfo.get("endTime");
+            final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+            // the times are milliseconds since the JVM started
+            final long nanosAtStart = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(runtime.getUptime());
+            record(nanosAtStart + TimeUnit.MILLISECONDS.toNanos(startMs), nanosAtStart + TimeUnit.MILLISECONDS.toNanos(endMs), PauseCause.GC);
+        } catch (RuntimeException e) {
+            Jvm.debug().on(PauseMonitor.class, "Unable to read " + notification, e);
+        }
+    }
+
+    private void run() {
+        long safepointMs = safepointTime == null ? 0 : safepointTime.totalMillis();
+        while (!isClosing()) {
+            final long start = System.nanoTime();
+            LockSupport.parkNanos(resolutionNanos);
+            final long end = System.nanoTime();
+            final long overshoot = end - start - resolutionNanos;
+            if (safepointTime == null) {
+                if (overshoot >= thresholdNanos)
+                    hiccup(end - overshoot, end, 0);
+                continue;
+            }
+            final long safepointMs2 = safepointTime.totalMillis();
+            if (overshoot >= thresholdNanos)
+                hiccup(end - overshoot, end, TimeUnit.MILLISECONDS.toNanos(safepointMs2 - safepointMs));
+            safepointMs = safepointMs2;
+        }
+    }
+
+    void hiccup(long start, long end, long safepointNanos) {
+        // a GC is also a safepoint, but its notification may arrive later so GC pauses are preferred when classifying
+        record(start, end, safepointTime != null && safepointNanos * 2 >= end - start ? PauseCause.SAFEPOINT : PauseCause.OS);
+    }
+
+    synchronized void record(long start, long end, @NotNull PauseCause cause) {
+        final int index = (int) (recorded++ % starts.length);
+        starts[index] = start;
+        ends[index] = end;
+        causes[index] = cause;
+        countByCause[cause.ordinal()]++;
+        nanosByCause[cause.ordinal()] += end - start;
+    }
+
+    /**
+     * Attributes a stall to the cause of the pauses which overlap it the most, provided they cover at least half of
+     * it. A GC pause is also seen as a hiccup, so GC takes precedence.
+     *
+     * @param startNanos the {@link System#nanoTime()} the stall started
+     * @param endNanos   the {@link System#nanoTime()} the stall ended, or was observed
+     * @return the cause, APPLICATION if pauses don't account for the stall
+     */
+    @NotNull
+    public synchronized PauseCause classify(long startNanos, long endNanos) {
+        final long[] overlap = this.overlap;
+        Arrays.fill(overlap, 0);
+        final long kept = Math.min(recorded, starts.length);
+        // newest first. Hiccups are recorded in time order, but a GC is recorded when its notification arrives, after
+        // any hiccups before it ended, so stop at the first hiccup which ended before the stall started
+        for (long n = recorded - 1; n >= recorded - kept; n--) {
+            final int i = (int) (n % starts.length);
+            if (ends[i] <= startNanos) {
+                if (causes[i] != PauseCause.GC)
+                    break;
+                continue;
+            }
+            final long from = Math.max(startNanos, starts[i]);
+            final long to = Math.min(endNanos, ends[i]);
+            if (to > from)
+                overlap[causes[i].ordinal()] += to - from;
+        }
+        final long half = (endNanos - startNanos + 1) / 2;
+        if (overlap[PauseCause.GC.ordinal()] >= half)
+            return PauseCause.GC;
+        final long safepoint = overlap[PauseCause.SAFEPOINT.ordinal()];
+        final long os = overlap[PauseCause.OS.ordinal()];
+        if (Math.max(safepoint, os) + overlap[PauseCause.GC.ordinal()] < half)
+            return PauseCause.APPLICATION;
+        return safepoint >= os ? PauseCause.SAFEPOINT : PauseCause.OS;
+    }
+
+    /**
+     * @return the pauses kept, oldest first
+     */
+    @NotNull
+    public synchronized List<Pause> pauses() {
+        final int kept = (int) Math.min(recorded, starts.length);
+        final List<Pause> pauses = new ArrayList<>(kept);
+        for (long i = recorded - kept; i < recorded; i++) {
+            final int index = (int) (i % starts.length);
+            pauses.add(new Pause(starts[index], ends[index], causes[index]));
+        }
+        pauses.sort((a, b) -> Long.compare(a.startNanos(), b.startNanos()));
+        return pauses;
+    }
+
+    /**
+     * @param cause of the pauses
+     * @return the number of pauses recorded with this cause
+     */
+    public synchronized long count(@NotNull PauseCause cause) {
+        return countByCause[cause.ordinal()];
+    }
+
+    /**
+     * @param cause of the pauses
+     * @return the total duration of the pauses recorded with this cause
+     */
+    public synchronized long totalNanos(@NotNull PauseCause cause) {
+        return nanosByCause[cause.ordinal()];
+    }
+
+    @Override
+    protected void performClose() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (Exception e) {
+                Jvm.debug().on(PauseMonitor.class, "Unable to remove the listener", e);
+            }
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder("PauseMonitor{name='").append(name).append('\'');
+        for (PauseCause cause : PauseCause.values()) {
+            if (cause == PauseCause.APPLICATION)
+                continue;
+            sb.append(", ").append(cause).append('=').append(countByCause[cause.ordinal()])
+                    .append('/').append(nanosByCause[cause.ordinal()] / 1000).append("us");
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * A pause in the timeline.
+     */
+    public static final class Pause {
+        private final long startNanos;
+        private final long endNanos;
+        @NotNull
+        private final PauseCause cause;
+
+        Pause(long startNanos, long endNanos, @NotNull PauseCause cause) {
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.cause = cause;
+        }
+
+        /**
+         * @return the {@link System#nanoTime()} the pause started
+         */
+        public long startNanos() {
+            return startNanos;
+        }
+
+        /**
+         * @return the {@link System#nanoTime()} the pause ended
+         */
+        public long endNanos() {
+            return endNanos;
+        }
+
+        @NotNull
+        public PauseCause cause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return cause + " " + (endNanos - startNanos) / 1000 + " us";
+        }
+    }
+
+    /**
+     * Reads the total time spent in safepoints from HotSpot's internal runtime MBean.
+     */
+    static final class SafepointTime {
+        // bound to the bean so reading it doesn't box the result as Method.invoke does
+        private final MethodHandle totalSafepointTime;
+
+        private SafepointTime(MethodHandle totalSafepointTime) {
+            this.totalSafepointTime = totalSafepointTime;
+        }
+
+        @Nullable
+        static SafepointTime create() {
+            try {
+                final Class<?> helper = Class.forName("sun.management.ManagementFactoryHelper");
+                final Object bean = helper.getMethod("getHotspotRuntimeMBean").invoke(null);
+                final Method method = Class.forName("sun.management.HotspotRuntimeMBean").getMethod("getTotalSafepointTime");
+                final MethodHandle handle = MethodHandles.lookup().unreflect(method).bindTo(bean);
+                final SafepointTime safepointTime = new SafepointTime(handle);
+                safepointTime.totalMillis();
+                return safepointTime;
+            } catch (Exception | LinkageError e) {
+                Jvm.debug().on(PauseMonitor.class, "Safepoint time is not available, add --add-exports java.management/sun.management=ALL-UNNAMED", e);
+                return null;
+            }
+        }
+
+        long totalMillis() {
+            try {
+                return (long) totalSafepointTime.invokeExact();
+            } catch (Throwable t) {
+                throw Jvm.rethrow(t);
+            }
+        }
+    }
+}
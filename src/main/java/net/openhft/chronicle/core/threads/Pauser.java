@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how an event loop waits when an iteration found no work, trading latency for CPU.
+ * <p>
+ * The loop calls {@link #pause()} after each idle iteration, and {@link #reset()} as soon as it finds work again, so
+ * an implementation can back off the longer the loop stays idle. {@link #unpause()} may be called from any thread to
+ * wake the loop early, as {@link EventLoop#unpause()} does.
+ * <p>
+ * A pauser can be chosen without code changes with {@link #of(String)}, e.g. from a system property.
+ */
+public interface Pauser {
+
+    /**
+     * @return a pauser which never waits, for the lowest latency at the cost of a whole core
+     */
+    @NotNull
+    static Pauser busy() {
+        return BusyPauser.INSTANCE;
+    }
+
+    /**
+     * @return a pauser which spins for 20 us, yields for 200 us, then parks from 20 us up to 20 ms
+     */
+    @NotNull
+    static Pauser balanced() {
+        return new BackoffPauser();
+    }
+
+    /**
+     * @return a pauser which yields for 50 us, then parks from 500 us up to 100 ms, for loops which are mostly idle
+     */
+    @NotNull
+    static Pauser sleepy() {
+        return new BackoffPauser(0, TimeUnit.MICROSECONDS.toNanos(50), TimeUnit.MICROSECONDS.toNanos(500), TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    /**
+     * Creates a pauser from a description, which is one of
+     * <ul>
+     *     <li>{@code busy}, see {@link #busy()}</li>
+     *     <li>{@code balanced}, see {@link #balanced()}</li>
+     *     <li>{@code sleepy}, see {@link #sleepy()}</li>
+     *     <li>{@code spinUs,yieldUs,minParkUs,maxParkUs} for a {@link BackoffPauser} with those times in microseconds</li>
+     * </ul>
+     *
+     * @param description of the pauser
+     * @return a new pauser
+     * @throws IllegalArgumentException if the description is not recognised
+     */
+    @NotNull
+    static Pauser of(@NotNull String description) throws IllegalArgumentException {
+        final String trimmed = description.trim();
+        switch (trimmed) {
+            case "busy":
+                return busy();
+            case "balanced":
+                return balanced();
+            case "sleepy":
+                return sleepy();
+            default:
+                break;
+        }
+        final String[] times = trimmed.split(" *, *");
+        if (times.length == 4) {
+            try {
+                return new BackoffPauser(
+                        TimeUnit.MICROSECONDS.toNanos(Long.parseLong(times[0])),
+                        TimeUnit.MICROSECONDS.toNanos(Long.parseLong(times[1])),
+                        TimeUnit.MICROSECONDS.toNanos(Long.parseLong(times[2])),
+                        TimeUnit.MICROSECONDS.toNanos(Long.parseLong(times[3])));
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+        }
+        throw new IllegalArgumentException("Unknown pauser: " + description + ", expected busy, balanced, sleepy or spinUs,yieldUs,minParkUs,maxParkUs");
+    }
+
+    /**
+     * Called when the loop found work, so the next pause starts from the shortest wait.
+     */
+    void reset();
+
+    /**
+     * Called by the loop thread after an iteration found no work.
+     */
+    void pause();
+
+    /**
+     * Wakes the loop thread if it is waiting in {@link #pause()}. May be called from any thread.
+     */
+    void unpause();
+
+    /**
+     * @param phase of pausing
+     * @return the time spent idle in this phase in nanoseconds, or 0 if not recorded
+     */
+    default long timeNanos(@NotNull Phase phase) {
+        return 0;
+    }
+
+    /**
+     * @param phase of pausing
+     * @return the number of pauses made in this phase, or 0 if not recorded
+     */
+    default long count(@NotNull Phase phase) {
+        return 0;
+    }
+
+    /**
+     * The ways a pauser waits, from the lowest latency to the least CPU.
+     */
+    enum Phase {
+        SPIN, YIELD, PARK
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.affinity.AffinityLock;
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.io.AbstractCloseable;
+import net.openhft.chronicle.core.io.Closeable;
+import net.openhft.chronicle.core.io.ClosedIllegalStateException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A reference {@link EventLoop} which runs handlers according to their {@link HandlerPriority}, for users who don't
+ * need a separate event loop library.
+ * <p>
+ * The core thread runs
+ * <ul>
+ *     <li>{@link HandlerPriority#HIGH} handlers every iteration</li>
+ *     <li>{@link HandlerPriority#MEDIUM} handlers every fourth iteration, or whenever the HIGH handlers were idle</li>
+ *     <li>{@link HandlerPriority#TIMER} handlers with MEDIUM, at most every {@code event.loop.timer.interval.us}</li>
+ *     <li>{@link HandlerPriority#DAEMON} handlers with MEDIUM, only when no other handler was busy</li>
+ * </ul>
+ * An iteration in which no handler was busy calls the {@link Pauser}, which decides how much CPU an idle loop uses,
+ * and can be chosen per loop with a system property.
+ * {@link HandlerPriority#MONITOR} handlers run on a separate thread every {@code event.loop.monitor.interval.ms}, and
+ * each {@link HandlerPriority#BLOCKING} handler is called repeatedly on a thread of its own. Aliases such as
+ * REPLICATION run with the priority they alias. These extra threads are only started when needed.
+ * <p>
+ * On Java 21+ BLOCKING handlers can run on virtual threads instead, so they don't each need a platform thread. This is
+ * the default if {@code event.loop.virtual.threads} is true, and falls back to platform threads on older versions. The
+ * times they pin a carrier thread are counted by {@link VirtualThreads#monitorPinning()} if
+ * {@code virtual.thread.pinned.monitor} is true.
+ * <p>
+ * A handler which throws {@link InvalidEventHandlerException} is removed, and any other exception is logged. Removed
+ * handlers, and all the handlers when the loop stops, including those added but not yet started, have
+ * {@link EventHandler#loopFinished()} called and are closed if they are Closeable.
+ */
+public class PriorityEventLoop extends AbstractCloseable implements EventLoop {
+    private static final long TIMER_INTERVAL_NS = TimeUnit.MICROSECONDS.toNanos(Jvm.getLong("event.loop.timer.interval.us", 1000L));
+    private static final long MONITOR_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(Jvm.getLong("event.loop.monitor.interval.ms", 10L));
+    private static final long STOP_TIMEOUT_MS = 1000;
+    private static final boolean VIRTUAL_THREADS = Jvm.getBoolean("event.loop.virtual.threads");
+
+    private final String name;
+    private final Pauser pauser;
+    @Nullable
+    private final String affinity;
+    private final boolean virtualThreads;
+    private final Queue<EventHandler> newHandlers = new ConcurrentLinkedQueue<>();
+    private final Queue<EventHandler> newMonitors = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger blockingCount = new AtomicInteger();
+
+    // only accessed on the core thread, or after it has stopped
+    private final List<EventHandler> highHandlers = new ArrayList<>();
+    private final List<EventHandler> mediumHandlers = new ArrayList<>();
+    private final List<EventHandler> timerHandlers = new ArrayList<>();
+    private final List<EventHandler> daemonHandlers = new ArrayList<>();
+    // only accessed on the monitor thread, or after it has stopped
+    private final List<EventHandler> monitorHandlers = new ArrayList<>();
+
+    // guarded by lock
+    private final Object lock = new Object();
+    private final List<EventHandler> beforeStart = new ArrayList<>();
+    @Nullable
+    private ExecutorService blockingExecutor;
+
+    @Nullable
+    private volatile Thread coreThread;
+    @Nullable
+    private volatile Thread monitorThread;
+    private volatile boolean started;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a loop which isn't pinned to a CPU, with the pauser described by the system property
+     * {@code <name>.pauser}, or else {@code event.loop.pauser}, or else a {@link Pauser#balanced()} pauser. See
+     * {@link Pauser#of(String)} for the descriptions.
+     *
+     * @param name of the loop and its threads
+     * @throws IllegalArgumentException if the pauser description is not recognised
+     */
+    public PriorityEventLoop(@NotNull String name) throws IllegalArgumentException {
+        this(name, pauserFor(name), null);
+    }
+
+    /**
+     * @param name     of the loop and its threads
+     * @param pauser   to call when an iteration of the core thread finds no work, e.g. {@link Pauser#busy()}
+     * @param affinity to pass to AffinityLock.acquireLock(String) for the core thread, or null to not pin it
+     */
+    public PriorityEventLoop(@NotNull String name, @NotNull Pauser pauser, @Nullable String affinity) {
+        this(name, pauser, affinity, VIRTUAL_THREADS);
+    }
+
+    /**
+     * @param name           of the loop and its threads
+     * @param pauser         to call when an iteration of the core thread finds no work, e.g. {@link Pauser#busy()}
+     * @param affinity       to pass to AffinityLock.acquireLock(String) for the core thread, or null to not pin it
+     * @param virtualThreads to run BLOCKING handlers on virtual threads if {@link VirtualThreads#isSupported()}
+     */
+    public PriorityEventLoop(@NotNull String name, @NotNull Pauser pauser, @Nullable String affinity, boolean virtualThreads) {
+        this.name = name;
+        this.pauser = pauser;
+        this.affinity = affinity;
+        if (virtualThreads && !VirtualThreads.isSupported())
+            Jvm.warn().on(PriorityEventLoop.class, "Virtual threads are not supported on Java " + Jvm.majorVersion() + ", " + name + " will use platform threads for BLOCKING handlers");
+        this.virtualThreads = virtualThreads && VirtualThreads.isSupported();
+        singleThreadedCheckDisabled(true);
+    }
+
+    @NotNull
+    static Pauser pauserFor(@NotNull String name) throws IllegalArgumentException {
+        return Pauser.of(Jvm.getProperty(name + ".pauser", Jvm.getProperty("event.loop.pauser", "balanced")));
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the pauser the core thread calls when idle
+     */
+    @NotNull
+    public Pauser pauser() {
+        return pauser;
+    }
+
+    /**
+     * @return whether BLOCKING handlers run on virtual threads
+     */
+    public boolean virtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Adds a handler, which is run once the loop is started. May be called from any thread, including from a handler.
+     *
+     * @param handler to add
+     * @throws ClosedIllegalStateException if the loop has been closed
+     * @throws IllegalStateException       if the loop has been stopped
+     */
+    @Override
+    public void addHandler(@NotNull EventHandler handler) throws IllegalStateException {
+        throwExceptionIfClosed();
+        if (DEBUG_ADDING_HANDLERS)
+            Jvm.debug().on(PriorityEventLoop.class, "Adding " + handler.priority() + " " + handler + " to " + name);
+        handler.eventLoop(this);
+        synchronized (lock) {
+            if (stopped)
+                throw new IllegalStateException(name + " is stopped");
+            if (started)
+                dispatch(handler);
+            else
+                beforeStart.add(handler);
+        }
+    }
+
+    // called holding the lock once started
+    private void dispatch(@NotNull EventHandler handler) {
+        switch (handler.priority().alias()) {
+            case MONITOR:
+                newMonitors.add(handler);
+                if (monitorThread == null) {
+                    final Thread thread = new CleaningThread(this::runMonitors, name + "~monitor");
+                    thread.setDaemon(true);
+                    monitorThread = thread;
+                    thread.start();
+                } else {
+                    LockSupport.unpark(monitorThread);
+                }
+                break;
+            case BLOCKING:
+                if (blockingExecutor == null) {
+                    if (virtualThreads)
+                        VirtualThreads.monitorPinning();
+                    blockingExecutor = Executors.newCachedThreadPool(this::newBlockingThread);
+                }
+                blockingExecutor.execute(() -> runBlocking(handler));
+                break;
+            default:
+                newHandlers.add(handler);
+                pauser.unpause();
+                break;
+        }
+    }
+
+    @NotNull
+    private Thread newBlockingThread(@NotNull Runnable runnable) {
+        final String threadName = name + "~blocking-" + blockingCount.incrementAndGet();
+        if (virtualThreads)
+            return VirtualThreads.newThread(threadName, runnable);
+        final Thread thread = new CleaningThread(runnable, threadName);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @Override
+    public void start() {
+        throwExceptionIfClosed();
+        synchronized (lock) {
+            if (started || stopped)
+                return;
+            started = true;
+            final Thread thread = new CleaningThread(this::runCore, name, true);
+            thread.setDaemon(true);
+            coreThread = thread;
+            // so the handlers added before starting are all there on the first iteration
+            for (EventHandler handler : beforeStart)
+                dispatch(handler);
+            beforeStart.clear();
+            thread.start();
+        }
+    }
+
+    @Override
+    public void unpause() {
+        pauser.unpause();
+    }
+
+    /**
+     * Stops running handlers and waits for the core and monitor threads to finish their handlers. BLOCKING handlers
+     * are interrupted, and waited for up to a second. Handlers added before the loop was started are finished, as
+     * they will never run.
+     */
+    @Override
+    public void stop() {
+        final ExecutorService executor;
+        final List<EventHandler> neverStarted;
+        synchronized (lock) {
+            if (stopped)
+                return;
+            stopped = true;
+            executor = blockingExecutor;
+            neverStarted = new ArrayList<>(beforeStart);
+            beforeStart.clear();
+        }
+        for (EventHandler handler : neverStarted)
+            finish(handler);
+        if (executor != null)
+            executor.shutdownNow();
+        join(coreThread);
+        join(monitorThread);
+        if (executor != null) {
+            try {
+                if (!executor.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                    Jvm.warn().on(PriorityEventLoop.class, "BLOCKING handlers of " + name + " did not stop within " + STOP_TIMEOUT_MS + " ms");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void join(@Nullable Thread thread) {
+        boolean interrupted = false;
+        while (thread != null && thread.isAlive() && thread != Thread.currentThread()) {
+            pauser.unpause();
+            LockSupport.unpark(thread);
+            try {
+                thread.join(10);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    @Override
+    public boolean isAlive() {
+        final Thread thread = coreThread;
+        return thread != null && thread.isAlive();
+    }
+
+    @Override
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    @Override
+    public boolean runsInsideCoreLoop() {
+        return Thread.currentThread() == coreThread;
+    }
+
+    private void runCore() {
+        final AffinityLock affinityLock = affinity == null ? null : acquireLock(affinity);
+        try {
+            long loops = 0;
+            long lastTimerNS = System.nanoTime();
+            while (!stopped) {
+                if (!newHandlers.isEmpty())
+                    addNewHandlers();
+                boolean busy = runAll(highHandlers);
+                if (!busy || (++loops & 3) == 0) {
+                    busy |= runAll(mediumHandlers);
+                    final long now = System.nanoTime();
+                    if (now - lastTimerNS >= TIMER_INTERVAL_NS) {
+                        lastTimerNS = now;
+                        busy |= runAll(timerHandlers);
+                    }
+                    if (!busy)
+                        busy = runAll(daemonHandlers);
+                }
+                if (busy)
+                    pauser.reset();
+                else
+                    pauser.pause();
+            }
+        } finally {
+            finishAll(highHandlers);
+            finishAll(mediumHandlers);
+            finishAll(timerHandlers);
+            finishAll(daemonHandlers);
+            // added since the last iteration, and never started
+            finishAll(newHandlers);
+            if (affinityLock != null)
+                affinityLock.release();
+        }
+    }
+
+    private void addNewHandlers() {
+        for (EventHandler handler; (handler = newHandlers.poll()) != null; ) {
+            if (!start(handler))
+                continue;
+            switch (handler.priority().alias()) {
+                case HIGH:
+                    highHandlers.add(handler);
+                    break;
+                case TIMER:
+                    timerHandlers.add(handler);
+                    break;
+                case DAEMON:
+                    daemonHandlers.add(handler);
+                    break;
+                default:
+                    mediumHandlers.add(handler);
+                    break;
+            }
+        }
+    }
+
+    private void runMonitors() {
+        try {
+            while (!stopped) {
+                for (EventHandler handler; (handler = newMonitors.poll()) != null; )
+                    if (start(handler))
+                        monitorHandlers.add(handler);
+                runAll(monitorHandlers);
+                LockSupport.parkNanos(this, MONITOR_INTERVAL_NS);
+            }
+        } finally {
+            finishAll(monitorHandlers);
+            finishAll(newMonitors);
+        }
+    }
+
+    private void runBlocking(@NotNull EventHandler handler) {
+        if (!start(handler))
+            return;
+        try {
+            while (!stopped) {
+                try {
+                    handler.action();
+                } catch (InvalidEventHandlerException e) {
+                    break;
+                } catch (Throwable t) {
+                    if (stopped)
+                        break;
+                    Jvm.warn().on(PriorityEventLoop.class, "Handler " + handler + " in " + name + " threw", t);
+                }
+            }
+        } finally {
+            finish(handler);
+        }
+    }
+
+    private boolean start(@NotNull EventHandler handler) {
+        try {
+            handler.loopStarted();
+            return true;
+        } catch (Throwable t) {
+            Jvm.warn().on(PriorityEventLoop.class, "Handler " + handler + " in " + name + " failed to start", t);
+            finish(handler);
+            return false;
+        }
+    }
+
+    private boolean runAll(@NotNull List<EventHandler> handlers) {
+        boolean busy = false;
+        for (int i = 0; i < handlers.size(); i++) {
+            final EventHandler handler = handlers.get(i);
+            try {
+                busy |= handler.action();
+            } catch (InvalidEventHandlerException e) {
+                handlers.remove(i--);
+                finish(handler);
+            } catch (Throwable t) {
+                Jvm.warn().on(PriorityEventLoop.class, "Handler " + handler + " in " + name + " threw", t);
+            }
+        }
+        return busy;
+    }
+
+    private void finishAll(@NotNull List<EventHandler> handlers) {
+        for (EventHandler handler : handlers)
+            finish(handler);
+        handlers.clear();
+    }
+
+    private void finishAll(@NotNull Queue<EventHandler> handlers) {
+        for (EventHandler handler; (handler = handlers.poll()) != null; )
+            finish(handler);
+    }
+
+    private void finish(@NotNull EventHandler handler) {
+        try {
+            handler.loopFinished();
+        } catch (Throwable t) {
+            Jvm.warn().on(PriorityEventLoop.class, "Handler " + handler + " in " + name + " failed to finish", t);
+        }
+        Closeable.closeQuietly(handler);
+    }
+
+    @Nullable
+    private AffinityLock acquireLock(@NotNull String affinity) {
+        try {
+            return AffinityLock.acquireLock(affinity);
+        } catch (Exception | LinkageError e) {
+            Jvm.warn().on(PriorityEventLoop.class, "Unable to acquire affinity " + affinity + " for " + name, e);
+            return null;
+        }
+    }
+
+    @Override
+    protected void performClose() {
+        stop();
+    }
+
+    @Override
+    public String toString() {
+        return "PriorityEventLoop{" +
+                "name='" + name + '\'' +
+                ", pauser=" + pauser +
+                ", virtualThreads=" + virtualThreads +
+                ", started=" + started +
+                ", stopped=" + stopped +
+                '}';
+    }
+}
@@ -29,6 +29,9 @@ import java.util.concurrent.locks.LockSupport;
  * This class creates a background daemon thread which periodically
  * samples the stack trace of the specified thread and stores the
  * latest snapshot.
+ * <p>
+ * Only one thread can be sampled at a time; {@link StallProfiler} monitors any number of threads and only takes a
+ * stack trace when one stalls.
  */
 @Deprecated(/* to be moved in x.26 */)
 public class StackSampler {
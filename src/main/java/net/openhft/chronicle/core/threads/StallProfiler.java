@@ -0,0 +1,412 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.io.AbstractCloseable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Watches any number of threads for stalls, taking a stack trace of a thread only when it has been at the same stage
+ * for longer than a threshold, and counting identical stacks together.
+ * <p>
+ * A monitored thread marks its progress with {@link Monitor#atStage(String)}, which is two ordered writes and doesn't
+ * allocate, and {@link Monitor#finished()} when it is idle. A background thread checks each monitor every sample
+ * interval, so a long stall is sampled many times and the stacks it is most often in have the highest counts.
+ * <p>
+ * The report lists each distinct stack with the thread, stage, longest stall and number of samples, most sampled first,
+ * in the format of {@link MonitorProfileAnalyserMain}, which weights each stack by its samples. It is written to
+ * {@link #writeReport(Appendable)} on demand, and to a file every report interval if one is given, replacing the
+ * previous report.
+ * <p>
+ * Given a {@link PauseMonitor}, each sample is attributed to a {@link PauseCause} once the JVM has had time to report
+ * any GC which overlapped it, and the report shows how many samples of each stack were a GC, safepoint, OS or
+ * application stall.
+ * <p>
+ * This supersedes {@link JitterSampler} and {@link StackSampler}, which only monitor one thread.
+ */
+public class StallProfiler extends AbstractCloseable {
+    public static final String PROFILE_OF_THE_THREAD = "profile of the thread";
+    public static final String THREAD_HAS_BLOCKED_FOR = "thread has blocked for";
+    public static final String SAMPLES = ", samples ";
+    static final long DEFAULT_THRESHOLD_NS = TimeUnit.MILLISECONDS.toNanos(Jvm.getLong("chronicle.jitter.threshold", 10L));
+    private static final int MAX_DEPTH = Jvm.getInteger("stall.profiler.max.depth", 32);
+    private static final int MAX_STACKS = Jvm.getInteger("stall.profiler.max.stacks", 1000);
+    // GC notifications are delivered asynchronously, after the pause
+    private static final long CLASSIFY_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(Jvm.getLong("stall.profiler.classify.delay.ms", 100L));
+
+    private final String name;
+    private final long thresholdNanos;
+    private final long sampleIntervalNanos;
+    @Nullable
+    private final File reportFile;
+    private final long reportIntervalNanos;
+    private final List<Monitor> monitors = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+    @Nullable
+    private volatile PauseMonitor pauseMonitor;
+
+    // guarded by this
+    private final Map<String, Stall> stalls = new HashMap<>();
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    private long samples;
+    private long dropped;
+
+    /**
+     * Creates and starts a profiler with the threshold of chronicle.jitter.threshold ms, sampling every millisecond
+     * and not writing a report file.
+     *
+     * @param name of the background thread
+     */
+    public StallProfiler(@NotNull String name) {
+        this(name, DEFAULT_THRESHOLD_NS, TimeUnit.MILLISECONDS.toNanos(1), null, 0);
+    }
+
+    /**
+     * Creates and starts a profiler.
+     *
+     * @param name                of the background thread
+     * @param thresholdNanos      how long a thread must be at one stage before it is sampled
+     * @param sampleIntervalNanos how often to check the monitored threads
+     * @param reportFile          to write the report to, or null
+     * @param reportIntervalMs    how often to write the report file, it is also written on close
+     */
+    public StallProfiler(@NotNull String name, long thresholdNanos, long sampleIntervalNanos, @Nullable File reportFile, long reportIntervalMs) {
+        if (thresholdNanos <= 0 || sampleIntervalNanos <= 0 || (reportFile != null && reportIntervalMs <= 0))
+            throw new IllegalArgumentException("thresholdNanos: " + thresholdNanos + ", sampleIntervalNanos: " + sampleIntervalNanos + ", reportIntervalMs: " + reportIntervalMs);
+        this.name = name;
+        this.thresholdNanos = thresholdNanos;
+        this.sampleIntervalNanos = sampleIntervalNanos;
+        this.reportFile = reportFile;
+        this.reportIntervalNanos = TimeUnit.MILLISECONDS.toNanos(reportIntervalMs);
+        singleThreadedCheckDisabled(true);
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts monitoring a thread. The thread isn't sampled until it calls {@link Monitor#atStage(String)}.
+     *
+     * @param thread to monitor
+     * @return the monitor for the thread to mark its stages with
+     */
+    @NotNull
+    public Monitor monitor(@NotNull Thread thread) {
+        throwExceptionIfClosed();
+        final Monitor monitor = new Monitor(this, thread);
+        monitors.add(monitor);
+        return monitor;
+    }
+
+    /**
+     * @return a monitor for the current thread
+     */
+    @NotNull
+    public Monitor monitorCurrentThread() {
+        return monitor(Thread.currentThread());
+    }
+
+    /**
+     * Attributes samples taken from now on to the pauses seen by a monitor.
+     *
+     * @param pauseMonitor to classify samples with, or null to stop classifying them
+     * @return this
+     */
+    @NotNull
+    public StallProfiler pauseMonitor(@Nullable PauseMonitor pauseMonitor) {
+        this.pauseMonitor = pauseMonitor;
+        return this;
+    }
+
+    /**
+     * @return the number of threads monitored
+     */
+    public int monitored() {
+        return monitors.size();
+    }
+
+    /**
+     * @return the number of stack traces taken
+     */
+    public synchronized long samples() {
+        return samples;
+    }
+
+    /**
+     * @return the number of distinct stacks recorded
+     */
+    public synchronized int stacks() {
+        return stalls.size();
+    }
+
+    /**
+     * Discards the stacks recorded so far.
+     */
+    public synchronized void reset() {
+        stalls.clear();
+        pending.clear();
+        samples = 0;
+        dropped = 0;
+    }
+
+    private void run() {
+        long nextReport = System.nanoTime() + reportIntervalNanos;
+        while (!isClosing()) {
+            final long now = System.nanoTime();
+            for (Monitor monitor : monitors)
+                sample(monitor, now);
+            classifyPending(now, false);
+            if (reportFile != null && now - nextReport >= 0) {
+                writeReport(reportFile);
+                nextReport = now + reportIntervalNanos;
+            }
+            LockSupport.parkNanos(sampleIntervalNanos);
+        }
+    }
+
+    boolean sample(@NotNull Monitor monitor, long now) {
+        final long start = monitor.stageStart;
+        if (start == Long.MAX_VALUE || now - start < thresholdNanos)
+            return false;
+        final String stage = monitor.stage;
+        final StackTraceElement[] stack = monitor.thread.getStackTrace();
+        // the thread moved on while the stack was taken
+        if (monitor.stageStart != start || stack.length == 0)
+            return false;
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0, depth = Math.min(MAX_DEPTH, stack.length); i < depth; i++)
+            sb.append("\tat ").append(stack[i]).append('\n');
+        final String key = monitor.thread.getName() + ' ' + stage + '\n' + sb;
+        synchronized (this) {
+            samples++;
+            Stall stall = stalls.get(key);
+            if (stall == null) {
+                if (stalls.size() >= MAX_STACKS) {
+                    dropped++;
+                    return true;
+                }
+                stall = new Stall(monitor.thread.getName(), stage, sb.toString());
+                stalls.put(key, stall);
+            }
+            stall.samples++;
+            stall.maxNanos = Math.max(stall.maxNanos, now - start);
+            if (pauseMonitor != null)
+                pending.add(new Pending(stall, start, now));
+        }
+        return true;
+    }
+
+    synchronized void classifyPending(long now, boolean all) {
+        final PauseMonitor pauseMonitor = this.pauseMonitor;
+        for (Pending p; (p = pending.peek()) != null && (all || now - p.end >= CLASSIFY_DELAY_NS); ) {
+            pending.poll();
+            if (pauseMonitor != null && !pauseMonitor.isClosed())
+                p.stall.causes[pauseMonitor.classify(p.start, p.end).ordinal()]++;
+        }
+    }
+
+    /**
+     * Appends the stacks recorded, most sampled first.
+     *
+     * @param out to append to
+     * @throws IOException if the Appendable throws it
+     */
+    public void writeReport(@NotNull Appendable out) throws IOException {
+        final List<Stall> sorted;
+        final long samples;
+        final long dropped;
+        synchronized (this) {
+            sorted = new ArrayList<>(stalls.size());
+            for (Stall stall : stalls.values())
+                sorted.add(stall.copy());
+            samples = this.samples;
+            dropped = this.dropped;
+        }
+        sorted.sort(Comparator.comparingLong((Stall s) -> -s.samples).thenComparing(s -> s.stack));
+        out.append("# ").append(name).append(" samples: ").append(Long.toString(samples))
+                .append(", stacks: ").append(Integer.toString(sorted.size()))
+                .append(", dropped: ").append(Long.toString(dropped)).append('\n');
+        for (Stall stall : sorted) {
+            out.append(PROFILE_OF_THE_THREAD).append(' ').append(stall.threadName)
+                    .append(' ').append(stall.stage)
+                    .append(' ').append(THREAD_HAS_BLOCKED_FOR).append(' ')
+                    .append(Long.toString(stall.maxNanos / 1_000_000)).append(" ms");
+            for (PauseCause cause : PauseCause.values())
+                if (stall.causes[cause.ordinal()] > 0)
+                    out.append(", ").append(cause.name()).append(' ').append(Long.toString(stall.causes[cause.ordinal()]));
+            out.append(SAMPLES).append(Long.toString(stall.samples)).append('\n')
+                    .append(stall.stack)
+                    .append('\n');
+        }
+    }
+
+    /**
+     * Writes the report to a file, replacing it in one step so a reader never sees a partial report.
+     *
+     * @param file to write
+     */
+    public void writeReport(@NotNull File file) {
+        final File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                writeReport(writer);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Jvm.warn().on(StallProfiler.class, "Unable to write the report to " + file, e);
+        }
+    }
+
+    @Override
+    protected void performClose() {
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        classifyPending(System.nanoTime(), true);
+        if (reportFile != null)
+            writeReport(reportFile);
+        monitors.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "StallProfiler{" +
+                "name='" + name + '\'' +
+                ", monitored=" + monitored() +
+                ", samples=" + samples() +
+                ", stacks=" + stacks() +
+                '}';
+    }
+
+    /**
+     * Marks the stages of one monitored thread. Only that thread should call {@link #atStage(String)} and
+     * {@link #finished()}.
+     */
+    public static final class Monitor implements net.openhft.chronicle.core.io.Closeable {
+        private static final AtomicReferenceFieldUpdater<Monitor, String> STAGE =
+                AtomicReferenceFieldUpdater.newUpdater(Monitor.class, String.class, "stage");
+        private static final AtomicLongFieldUpdater<Monitor> STAGE_START =
+                AtomicLongFieldUpdater.newUpdater(Monitor.class, "stageStart");
+
+        private final StallProfiler profiler;
+        private final Thread thread;
+        volatile String stage = "started";
+        volatile long stageStart = Long.MAX_VALUE;
+        private volatile boolean closed;
+
+        Monitor(StallProfiler profiler, Thread thread) {
+            this.profiler = profiler;
+            this.thread = thread;
+        }
+
+        /**
+         * Marks the thread as starting a stage of work, which is sampled if it takes longer than the threshold.
+         *
+         * @param stage a description of the stage, typically a constant
+         */
+        public void atStage(@NotNull String stage) {
+            // the sampler reads the start, then the stage, then the start again, so clearing the start first means
+            // a sample which sees the new stage with the old start fails the recheck
+            STAGE_START.lazySet(this, Long.MAX_VALUE);
+            STAGE.lazySet(this, stage);
+            STAGE_START.lazySet(this, System.nanoTime());
+        }
+
+        /**
+         * Marks the thread as idle, so it isn't sampled until the next stage.
+         */
+        public void finished() {
+            STAGE_START.lazySet(this, Long.MAX_VALUE);
+        }
+
+        /**
+         * @return the thread monitored
+         */
+        @NotNull
+        public Thread thread() {
+            return thread;
+        }
+
+        /**
+         * Stops monitoring the thread.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            profiler.monitors.remove(this);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+
+    static final class Stall {
+        final String threadName;
+        final String stage;
+        final String stack;
+        final long[] causes = new long[PauseCause.values().length];
+        long samples;
+        long maxNanos;
+
+        Stall(String threadName, String stage, String stack) {
+            this.threadName = threadName;
+            this.stage = stage;
+            this.stack = stack;
+        }
+
+        Stall copy() {
+            final Stall copy = new Stall(threadName, stage, stack);
+            copy.samples = samples;
+            copy.maxNanos = maxNanos;
+            System.arraycopy(causes, 0, copy.causes, 0, causes.length);
+            return copy;
+        }
+    }
+
+    static final class Pending {
+        final Stall stall;
+        final long start;
+        final long end;
+
+        Pending(Stall stall, long start, long end) {
+            this.stall = stall;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -23,10 +23,15 @@ import net.openhft.chronicle.core.time.SystemTimeProvider;
 import net.openhft.chronicle.core.time.TimeProvider;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Timer class used to schedule tasks to be executed periodically or after a certain delay.
  * The scheduling is performed on the provided event loop, and the execution time is best-effort.
  * This means that if the event loop thread is busy, the execution of the scheduled task may be delayed.
+ * <p>
+ * Deadlines are kept in nanoseconds from {@link TimeProvider#currentTimeNanos()}, so a SetTimeProvider replays a
+ * schedule deterministically.
  */
 public class Timer {
 
@@ -91,5 +96,47 @@ public class Timer {
     public void schedule(@NotNull Runnable eventHandler, long initialDelayMs) {
         cancellableTimer.schedule(eventHandler, initialDelayMs);
     }
-}
 
+    /**
+     * Calls the event handler at a fixed rate, catching up on missed calls if the event loop falls behind.
+     *
+     * @param eventHandler the handler to be called back
+     * @param initialDelay how long to wait before the first call
+     * @param period       the interval between the times calls are due
+     * @param unit         of the initialDelay and period
+     * @see CancellableTimer#scheduleAtFixedRate(VanillaEventHandler, long, long, TimeUnit)
+     */
+    public void scheduleAtFixedRate(@NotNull VanillaEventHandler eventHandler,
+                                    long initialDelay,
+                                    long period,
+                                    @NotNull TimeUnit unit) {
+        cancellableTimer.scheduleAtFixedRate(eventHandler, initialDelay, period, unit);
+    }
+
+    /**
+     * Calls the event handler with a fixed delay between the end of one call and the start of the next.
+     *
+     * @param eventHandler the handler to be called back
+     * @param initialDelay how long to wait before the first call
+     * @param delay        how long to wait after each call before the next
+     * @param unit         of the initialDelay and delay
+     * @see CancellableTimer#scheduleWithFixedDelay(VanillaEventHandler, long, long, TimeUnit)
+     */
+    public void scheduleWithFixedDelay(@NotNull VanillaEventHandler eventHandler,
+                                       long initialDelay,
+                                       long delay,
+                                       @NotNull TimeUnit unit) {
+        cancellableTimer.scheduleWithFixedDelay(eventHandler, initialDelay, delay, unit);
+    }
+
+    /**
+     * Schedule a handler to run once after a delay
+     *
+     * @param eventHandler the handler to be called back
+     * @param delay        how long to wait before being called back
+     * @param unit         of the delay
+     */
+    public void schedule(@NotNull Runnable eventHandler, long delay, @NotNull TimeUnit unit) {
+        cancellableTimer.schedule(eventHandler, delay, unit);
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.io.InvalidMarshallableException;
+import net.openhft.chronicle.core.time.TimeProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A hierarchical timing wheel which runs any number of timed tasks from one {@link EventHandler}, so the cost of an
+ * event loop iteration doesn't grow with the number of timers.
+ * <p>
+ * Time is divided into ticks of {@code tickNanos}. There are {@link #LEVELS} wheels of {@link #SLOTS} slots, each
+ * slot of level {@code n} covering {@code SLOTS^n} ticks. A task is linked into the slot of the lowest level which
+ * can hold its deadline, and moved down a level when its slot comes round, so scheduling and cancelling on the event
+ * loop thread are O(1) and each tick visits one slot per level at most. Ticks are skipped while the lower levels are
+ * empty. Deadlines beyond the top level are revisited each time the top level turns.
+ * <p>
+ * A task is rounded up to the next tick, so it never runs early but may run up to a tick late, or later if the event
+ * loop is busy. A periodic task is rescheduled at a fixed rate or with a fixed delay, reusing its node, so rescheduling
+ * doesn't allocate. All times come from {@link TimeProvider#currentTimeNanos()}, so a SetTimeProvider replays a
+ * schedule deterministically.
+ * <p>
+ * Tasks may be scheduled and cancelled from any thread. Those scheduled from another thread are queued until the next
+ * {@link #action()}, and those cancelled from another thread are unlinked when their slot is reached.
+ */
+public class TimingWheel implements EventHandler, Closeable {
+    public static final int BITS = 6;
+    public static final int SLOTS = 1 << BITS;
+    public static final int LEVELS = 6;
+    private static final int MASK = SLOTS - 1;
+
+    @NotNull
+    private final TimeProvider timeProvider;
+    private final long tickNanos;
+    @NotNull
+    private final HandlerPriority priority;
+    private final Task[] heads = new Task[LEVELS * SLOTS];
+    private final int[] levelSizes = new int[LEVELS];
+    private final Queue<Task> incoming = new ConcurrentLinkedQueue<>();
+    @Nullable
+    private volatile Thread loopThread;
+    private volatile boolean closed;
+    // the next tick to process, only accessed on the event loop thread
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param timeProvider to read {@link TimeProvider#currentTimeNanos()} from
+     * @param tickNanos    the resolution of the wheel
+     * @param priority     of the handler in the event loop
+     */
+    public TimingWheel(@NotNull TimeProvider timeProvider, long tickNanos, @NotNull HandlerPriority priority) {
+        if (tickNanos <= 0)
+            throw new IllegalArgumentException("tickNanos: " + tickNanos);
+        this.timeProvider = timeProvider;
+        this.tickNanos = tickNanos;
+        this.priority = priority;
+        this.currentTick = Math.floorDiv(timeProvider.currentTimeNanos(), tickNanos);
+    }
+
+    /**
+     * Schedules a handler to be called after a delay, and then periodically with a fixed delay after each call if the
+     * period is positive. The handler can throw {@link InvalidEventHandlerException} to cancel itself.
+     *
+     * @param handler     to call
+     * @param delayNanos  the delay before the first call
+     * @param periodNanos the delay after each call before the next, or 0 to only call it once
+     * @return the task, which can be closed to cancel it
+     */
+    @NotNull
+    public Task schedule(@NotNull VanillaEventHandler handler, long delayNanos, long periodNanos) {
+        return schedule(handler, delayNanos, periodNanos, false);
+    }
+
+    /**
+     * Schedules a handler to be called after a delay, and then periodically if the period is positive. The handler
+     * can throw {@link InvalidEventHandlerException} to cancel itself.
+     *
+     * @param handler     to call
+     * @param delayNanos  the delay before the first call
+     * @param periodNanos the period, or 0 to only call it once
+     * @param fixedRate   if true, calls are due every period from the first, and missed calls are made one per tick
+     *                    until caught up. If false, the period is a delay from the end of each call
+     * @return the task, which can be closed to cancel it
+     */
+    @NotNull
+    public Task schedule(@NotNull VanillaEventHandler handler, long delayNanos, long periodNanos, boolean fixedRate) {
+        return schedule(handler, delayNanos, periodNanos, fixedRate ? Cadence.FIXED_RATE : Cadence.FIXED_DELAY);
+    }
+
+    @NotNull
+    Task schedule(@NotNull VanillaEventHandler handler, long delayNanos, long periodNanos, @NotNull Cadence cadence) {
+        if (closed)
+            throw new IllegalStateException("Closed");
+        final Task task = new Task(this, handler, periodNanos, cadence);
+        task.deadlineNanos = timeProvider.currentTimeNanos() + Math.max(0, delayNanos);
+        if (Thread.currentThread() == loopThread)
+            insert(task);
+        else
+            incoming.add(task);
+        return task;
+    }
+
+    /**
+     * Schedules a task to be run once after a delay.
+     *
+     * @param runnable   to run
+     * @param delayNanos the delay before it is run
+     * @return the task, which can be closed to cancel it
+     */
+    @NotNull
+    public Task schedule(@NotNull Runnable runnable, long delayNanos) {
+        return schedule(() -> {
+            runnable.run();
+            return false;
+        }, delayNanos, 0);
+    }
+
+    /**
+     * @return the number of tasks in the wheel, not counting those scheduled from other threads since the last action
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the resolution of the wheel
+     */
+    public long tickNanos() {
+        return tickNanos;
+    }
+
+    @Override
+    public void loopStarted() {
+        loopThread = Thread.currentThread();
+    }
+
+    @Override
+    public boolean action() throws InvalidEventHandlerException, InvalidMarshallableException {
+        if (closed)
+            throw InvalidEventHandlerException.reusable();
+        if (loopThread == null)
+            loopThread = Thread.currentThread();
+        final long nowTick = Math.floorDiv(timeProvider.currentTimeNanos(), tickNanos);
+        for (Task task; (task = incoming.poll()) != null; )
+            insert(task);
+        if (size == 0) {
+            currentTick = nowTick + 1;
+            return false;
+        }
+        boolean busy = false;
+        while (currentTick <= nowTick && size > 0) {
+            // nothing can happen before the next slot of the lowest level with tasks comes round
+            final int shift = BITS * lowestLevel();
+            final long next = ((currentTick + (1L << shift) - 1) >>> shift) << shift;
+            if (next > nowTick)
+                break;
+            currentTick = next;
+            busy |= tick();
+        }
+        if (currentTick <= nowTick)
+            currentTick = nowTick + 1;
+        return busy;
+    }
+
+    private int lowestLevel() {
+        int level = 0;
+        while (levelSizes[level] == 0 && level < LEVELS - 1)
+            level++;
+        return level;
+    }
+
+    private boolean tick() {
+        final long tick = currentTick;
+        // move tasks down from the highest level whose slot starts at this tick
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & ((1L << (BITS * level)) - 1)) == 0)
+                cascade(level * SLOTS + (int) ((tick >>> (BITS * level)) & MASK));
+        }
+        Task task = detach((int) (tick & MASK));
+        currentTick = tick + 1;
+        boolean busy = false;
+        while (task != null) {
+            final Task next = task.next;
+            task.prev = task.next = null;
+            // a handler can cancel a task later in this list, which only marks it as cancelled
+            if (!task.cancelled) {
+                if (deadlineTick(task) > tick)
+                    insert(task);
+                else
+                    busy |= run(task);
+            }
+            task = next;
+        }
+        return busy;
+    }
+
+    private void cascade(int index) {
+        Task task = detach(index);
+        while (task != null) {
+            final Task next = task.next;
+            task.prev = task.next = null;
+            if (!task.cancelled)
+                insert(task);
+            task = next;
+        }
+    }
+
+    /**
+     * Takes the list of tasks in a slot, and marks them as no longer in the wheel so cancelling one leaves the list as is.
+     */
+    private Task detach(int index) {
+        final Task head = heads[index];
+        heads[index] = null;
+        for (Task task = head; task != null; task = task.next)
+            removed(task);
+        return head;
+    }
+
+    private boolean run(Task task) {
+        final long startNanos = task.cadence == Cadence.FROM_START ? timeProvider.currentTimeNanos() : 0;
+        boolean busy = false;
+        try {
+            busy = task.handler.action();
+        } catch (InvalidEventHandlerException e) {
+            task.cancelled = true;
+        } catch (RuntimeException e) {
+            Jvm.warn().on(getClass(), "Unexpected runtime exception", e);
+        }
+        if (task.periodNanos > 0 && !task.cancelled) {
+            switch (task.cadence) {
+                case FIXED_RATE:
+                    task.deadlineNanos += task.periodNanos;
+                    break;
+                case FROM_START:
+                    task.deadlineNanos = startNanos + task.periodNanos;
+                    break;
+                default:
+                    task.deadlineNanos = timeProvider.currentTimeNanos() + task.periodNanos;
+                    break;
+            }
+            insert(task);
+        } else {
+            task.cancelled = true;
+        }
+        return busy;
+    }
+
+    private long deadlineTick(Task task) {
+        return -Math.floorDiv(-task.deadlineNanos, tickNanos);
+    }
+
+    private void insert(Task task) {
+        if (task.cancelled)
+            return;
+        final long deadlineTick = Math.max(deadlineTick(task), currentTick);
+        final long delta = deadlineTick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1)))
+            level++;
+        final int index = level * SLOTS + (int) ((deadlineTick >>> (BITS * level)) & MASK);
+        final Task head = heads[index];
+        task.next = head;
+        if (head != null)
+            head.prev = task;
+        heads[index] = task;
+        task.slot = index;
+        levelSizes[level]++;
+        size++;
+    }
+
+    void cancel(Task task) {
+        task.cancelled = true;
+        if (Thread.currentThread() != loopThread || task.slot < 0)
+            return;
+        // unlink now rather than when the slot is reached
+        if (task.prev == null)
+            heads[task.slot] = task.next;
+        else
+            task.prev.next = task.next;
+        if (task.next != null)
+            task.next.prev = task.prev;
+        task.prev = task.next = null;
+        removed(task);
+    }
+
+    private void removed(Task task) {
+        if (task.slot < 0)
+            return;
+        levelSizes[task.slot / SLOTS]--;
+        task.slot = -1;
+        size--;
+    }
+
+    @Override
+    @NotNull
+    public HandlerPriority priority() {
+        return priority;
+    }
+
+    /**
+     * Cancels every task and removes the wheel from its event loop on the next action.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        incoming.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "TimingWheel{" +
+                "tickNanos=" + tickNanos +
+                ", size=" + size +
+                ", priority=" + priority +
+                '}';
+    }
+
+    /**
+     * When the next call of a periodic task is due.
+     */
+    enum Cadence {
+        /**
+         * Every period from the first call, making up missed calls.
+         */
+        FIXED_RATE,
+        /**
+         * A period after the previous call started, as for the millisecond
+         * {@link CancellableTimer#scheduleAtFixedRate(VanillaEventHandler, long, long)}.
+         */
+        FROM_START,
+        /**
+         * A period after the previous call ended.
+         */
+        FIXED_DELAY
+    }
+
+    /**
+     * A task in a {@link TimingWheel}, closing it cancels any remaining calls.
+     */
+    public static final class Task implements Closeable {
+        private final TimingWheel wheel;
+        private final VanillaEventHandler handler;
+        private final long periodNanos;
+        private final Cadence cadence;
+        private long deadlineNanos;
+        private volatile boolean cancelled;
+        // only accessed on the event loop thread
+        private Task prev;
+        private Task next;
+        private int slot = -1;
+
+        Task(TimingWheel wheel, VanillaEventHandler handler, long periodNanos, Cadence cadence) {
+            this.wheel = wheel;
+            this.handler = handler;
+            this.periodNanos = periodNanos;
+            this.cadence = cadence;
+        }
+
+        /**
+         * @return whether the task has been cancelled, or has run for the last time
+         */
+        public boolean isCancelled() {
+            return cancelled || wheel.closed;
+        }
+
+        @Override
+        public void close() {
+            wheel.cancel(this);
+        }
+
+        @Override
+        public String toString() {
+            return "Task<" + handler + '>';
+        }
+    }
+}
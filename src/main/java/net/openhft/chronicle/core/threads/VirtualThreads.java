@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.Jvm;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Creates virtual threads on Java 21+, found reflectively so this builds and runs on Java 8.
+ * <p>
+ * Threads created here clean up their {@link CleaningThreadLocal}s when they finish, as a {@link CleaningThread} does.
+ * <p>
+ * A virtual thread which blocks while holding a monitor, or in native code, pins its carrier thread so no other
+ * virtual thread can use it. If {@code virtual.thread.pinned.monitor} is true, {@link #monitorPinning()} counts these
+ * pins using the JFR {@code jdk.VirtualThreadPinned} event, for those longer than
+ * {@code virtual.thread.pinned.threshold.us}. This is off by default as the JFR recording stream has a thread of its
+ * own which runs until the JVM exits.
+ */
+public final class VirtualThreads {
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final boolean PINNED_MONITOR = Jvm.getBoolean("virtual.thread.pinned.monitor");
+    private static final long PINNED_THRESHOLD_NS = TimeUnit.MICROSECONDS.toNanos(Jvm.getLong("virtual.thread.pinned.threshold.us", 20_000L));
+
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle NAME;
+    private static final MethodHandle UNSTARTED;
+    private static final MethodHandle IS_VIRTUAL;
+
+    private static final AtomicLong PINNED_COUNT = new AtomicLong();
+    private static final AtomicLong PINNED_NANOS = new AtomicLong();
+    private static final AtomicLong MAX_PINNED_NANOS = new AtomicLong();
+    // guarded by VirtualThreads.class
+    private static Object pinningStream;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle unstarted = null;
+        MethodHandle isVirtual = null;
+        if (Jvm.majorVersion() >= 21) {
+            try {
+                final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = lookup.findStatic(Thread.class, "ofVirtual", methodType(Class.forName("java.lang.Thread$Builder$OfVirtual")));
+                name = lookup.findVirtual(builder, "name", methodType(builder, String.class));
+                unstarted = lookup.findVirtual(builder, "unstarted", methodType(Thread.class, Runnable.class));
+                isVirtual = lookup.findVirtual(Thread.class, "isVirtual", methodType(boolean.class));
+            } catch (Exception e) {
+                Jvm.debug().on(VirtualThreads.class, "Virtual threads are not available", e);
+                ofVirtual = null;
+            }
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        UNSTARTED = unstarted;
+        IS_VIRTUAL = isVirtual;
+    }
+
+    // Suppresses default constructor, ensuring non-instantiability.
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return whether this JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates a virtual thread which is not started.
+     *
+     * @param name     of the thread
+     * @param runnable to run in the thread
+     * @return the thread
+     * @throws UnsupportedOperationException if virtual threads are not supported
+     */
+    @NotNull
+    public static Thread newThread(@NotNull String name, @NotNull Runnable runnable) throws UnsupportedOperationException {
+        if (!isSupported())
+            throw new UnsupportedOperationException("Virtual threads require Java 21+, this is Java " + Jvm.majorVersion());
+        final Runnable cleaning = () -> {
+            try {
+                runnable.run();
+            } finally {
+                CleaningThread.performCleanup(Thread.currentThread());
+            }
+        };
+        try {
+            return (Thread) UNSTARTED.invoke(NAME.invoke(OF_VIRTUAL.invoke(), name), cleaning);
+        } catch (Throwable t) {
+            throw Jvm.rethrow(t);
+        }
+    }
+
+    /**
+     * @param thread to check
+     * @return whether it is a virtual thread
+     */
+    public static boolean isVirtual(@NotNull Thread thread) {
+        if (IS_VIRTUAL == null)
+            return false;
+        try {
+            return (boolean) IS_VIRTUAL.invoke(thread);
+        } catch (Throwable t) {
+            throw Jvm.rethrow(t);
+        }
+    }
+
+    /**
+     * Starts counting the times virtual threads pin their carrier thread, if {@code virtual.thread.pinned.monitor} is
+     * true and it hasn't been started already. This uses a JFR recording stream, which has its own thread, and runs
+     * until the JVM exits.
+     *
+     * @return whether pinning is being counted
+     */
+    public static synchronized boolean monitorPinning() {
+        if (pinningStream != null)
+            return true;
+        if (!isSupported() || !PINNED_MONITOR)
+            return false;
+        try {
+            final Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            final Object stream = streamClass.getConstructor().newInstance();
+            final Object settings = streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+            Class.forName("jdk.jfr.EventSettings").getMethod("withThreshold", Duration.class)
+                    .invoke(settings, Duration.ofNanos(PINNED_THRESHOLD_NS));
+            final Method getDuration = Class.forName("jdk.jfr.consumer.RecordedEvent").getMethod("getDuration");
+            final Consumer<Object> onPinned = event -> {
+                try {
+                    pinned(((Duration) getDuration.invoke(event)).toNanos());
+                } catch (ReflectiveOperationException e) {
+                    Jvm.debug().on(VirtualThreads.class, "Unable to read " + PINNED_EVENT, e);
+                }
+            };
+            streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(stream, PINNED_EVENT, onPinned);
+            streamClass.getMethod("startAsync").invoke(stream);
+            pinningStream = stream;
+            return true;
+        } catch (Exception | LinkageError e) {
+            Jvm.warn().on(VirtualThreads.class, "Unable to monitor virtual thread pinning", e);
+            return false;
+        }
+    }
+
+    static void pinned(long nanos) {
+        PINNED_COUNT.incrementAndGet();
+        PINNED_NANOS.addAndGet(nanos);
+        MAX_PINNED_NANOS.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @return the number of times a virtual thread pinned its carrier thread, once {@link #monitorPinning()} is called
+     */
+    public static long pinnedCount() {
+        return PINNED_COUNT.get();
+    }
+
+    /**
+     * @return the total time virtual threads pinned their carrier threads in nanoseconds
+     */
+    public static long pinnedNanos() {
+        return PINNED_NANOS.get();
+    }
+
+    /**
+     * @return the longest time a virtual thread pinned its carrier thread in nanoseconds
+     */
+    public static long maxPinnedNanos() {
+        return MAX_PINNED_NANOS.get();
+    }
+}
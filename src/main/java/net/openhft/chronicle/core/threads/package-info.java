@@ -6,6 +6,9 @@
  *
  * <p>Key classes and interfaces:
  * <ul>
+ *     <li>{@link net.openhft.chronicle.core.threads.BackoffPauser}: A Pauser which spins, then yields,
+ *     then parks for longer the longer an event loop is idle.</li>
+ *
  *     <li>{@link net.openhft.chronicle.core.threads.CancellableTimer}: A timer that can
  *     schedule tasks for periodic execution or execution after a delay.</li>
  *
@@ -29,6 +32,12 @@
  *     <li>{@link net.openhft.chronicle.core.threads.HandlerPriority}: Enum representing
  *     different priority levels for event handlers in an event loop.</li>
  *
+ *     <li>{@link net.openhft.chronicle.core.threads.InstrumentedEventHandler}: Wraps an EventHandler
+ *     to count its calls and busy calls, and time a sample of them.</li>
+ *
+ *     <li>{@link net.openhft.chronicle.core.threads.InstrumentedEventLoop}: An EventLoop which
+ *     instruments each handler added and reports which are busiest or slowest.</li>
+ *
  *     <li>{@link net.openhft.chronicle.core.threads.InterruptedRuntimeException}: A runtime
  *     exception representing the interruption of a thread.</li>
  *
@@ -41,9 +50,21 @@
  *     <li>{@link net.openhft.chronicle.core.threads.OnDemandEventLoop}: A wrapper for an
  *     EventLoop, which is created on-demand when any of its methods are called.</li>
  *
+ *     <li>{@link net.openhft.chronicle.core.threads.Pauser}: Decides how an event loop waits when it
+ *     finds no work, trading latency for CPU.</li>
+ *
+ *     <li>{@link net.openhft.chronicle.core.threads.PauseMonitor}: Builds a timeline of GC, safepoint
+ *     and OS pauses to attribute stalls to a {@link net.openhft.chronicle.core.threads.PauseCause}.</li>
+ *
+ *     <li>{@link net.openhft.chronicle.core.threads.PriorityEventLoop}: A reference EventLoop which
+ *     runs handlers according to their HandlerPriority.</li>
+ *
  *     <li>{@link net.openhft.chronicle.core.threads.StackSampler}: Utility class for sampling
  *     the stack traces of a target thread.</li>
  *
+ *     <li>{@link net.openhft.chronicle.core.threads.StallProfiler}: Samples the stacks of any
+ *     number of threads when they stall and reports identical stacks with their counts.</li>
+ *
  *     <li>{@link net.openhft.chronicle.core.threads.ThreadDump}: Utility class for monitoring
  *     and managing threads.</li>
  *
@@ -53,8 +74,14 @@
  *     <li>{@link net.openhft.chronicle.core.threads.Timer}: A timer used to schedule tasks
  *     for periodic execution or execution after a delay.</li>
  *
+ *     <li>{@link net.openhft.chronicle.core.threads.TimingWheel}: A hierarchical timing wheel which
+ *     runs any number of timed tasks from one event handler.</li>
+ *
  *     <li>{@link net.openhft.chronicle.core.threads.VanillaEventHandler}: Represents an event
  *     handler that performs actions within an event loop.</li>
+ *
+ *     <li>{@link net.openhft.chronicle.core.threads.VirtualThreads}: Creates virtual threads on Java 21+
+ *     and counts the times they pin their carrier threads.</li>
  * </ul>
  *
  * @see java.lang.Thread
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.Maths;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.io.AbstractCloseable;
+import net.openhft.chronicle.core.io.ClosedIllegalStateException;
+import net.openhft.chronicle.core.io.IORuntimeException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+
+/**
+ * An open addressing hash table of long keys to long values held off heap, either in memory from
+ * {@link net.openhft.chronicle.core.Memory#allocate(long)} or in a memory mapped file so it persists across restarts.
+ * <p>
+ * Each entry is a key and value of 8 bytes each, probed linearly. An empty slot has a key of 0, with the value for
+ * the key 0 held in the header, and a value of {@link #NO_VALUE} means the entry is absent or removed.
+ * <p>
+ * Lookups and updates share a {@link StampedLock} which is only taken exclusively to rehash, and updates claim slots
+ * and set values with compare-and-swap. As no lookup can be reading a table once it has been replaced, it is released
+ * straight away.
+ * <p>
+ * Removed keys keep their slots until the table is rehashed, when more than 70% of the slots are used. The table is
+ * rehashed at the same capacity if less than half of that is live entries, so a map with a steady number of entries
+ * and keys which keep changing doesn't grow. A file is rehashed into a new file alongside it, which then replaces it,
+ * so a crash part way through leaves the old table intact.
+ */
+abstract class AbstractLongHashMap extends AbstractCloseable {
+    /**
+     * The value used for an entry which is absent
+     */
+    static final long NO_VALUE = Long.MIN_VALUE;
+    static final int ENTRY_SIZE = 16;
+    static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int ZERO_KEY_VALUE_OFFSET = 16;
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_LOAD_PERCENT = 70;
+    private static final boolean BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+    private final long magic;
+    private final StampedLock lock = new StampedLock();
+    private final AtomicLong usedSlots = new AtomicLong();
+    private final LongAdder size = new LongAdder();
+    @Nullable
+    private final File file;
+    // replaced when the file is rehashed, guarded by the write lock
+    @Nullable
+    private RandomAccessFile raf;
+    private volatile Table table;
+
+    AbstractLongHashMap(long magic, int initialCapacity) {
+        this.magic = magic;
+        this.file = null;
+        this.raf = null;
+        final int capacity = capacityFor(initialCapacity);
+        final Table t = new Table(MEMORY.allocate(Table.bytesFor(capacity)), capacity);
+        t.clear();
+        t.magic(magic);
+        table = t;
+        singleThreadedCheckDisabled(true);
+    }
+
+    AbstractLongHashMap(long magic, @NotNull File file, int initialCapacity) throws IOException {
+        this.magic = magic;
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        boolean mapped = false;
+        try {
+            // left by a crash part way through a rehash
+            Files.deleteIfExists(resizingFile(file).toPath());
+            final long fileMagic = raf.length() >= HEADER_SIZE ? readHeader(MAGIC_OFFSET) : 0;
+            if (fileMagic != 0 && fileMagic != magic)
+                throw new IOException("Cannot open " + file + " as a " + getClass().getSimpleName() + ", magic: " + Long.toHexString(fileMagic));
+            if (fileMagic == magic) {
+                final long capacity = readHeader(CAPACITY_OFFSET);
+                if (capacity < MIN_CAPACITY || !Maths.isPowerOf2(capacity) || raf.length() < Table.bytesFor((int) capacity))
+                    throw new IOException("Corrupt header in " + file + ", capacity: " + capacity);
+                table = map(raf, (int) capacity);
+                recount();
+            } else {
+                final int capacity = capacityFor(initialCapacity);
+                final Table t = map(raf, capacity);
+                t.clear();
+                t.magic(magic);
+                table = t;
+            }
+            mapped = true;
+        } finally {
+            // don't leave this registered as an open resource
+            if (!mapped)
+                close();
+        }
+        singleThreadedCheckDisabled(true);
+    }
+
+    private static File resizingFile(File file) {
+        return new File(file.getPath() + ".resizing");
+    }
+
+    private static int capacityFor(int entries) {
+        return Maths.nextPower2((int) Math.min(1 << 30, entries * 100L / MAX_LOAD_PERCENT + 1), MIN_CAPACITY);
+    }
+
+    private long readHeader(int offset) throws IOException {
+        raf.seek(offset);
+        // RandomAccessFile is big endian
+        return BIG_ENDIAN ? raf.readLong() : Long.reverseBytes(raf.readLong());
+    }
+
+    private static Table map(RandomAccessFile raf, int capacity) throws IOException {
+        final long bytes = Table.bytesFor(capacity);
+        if (raf.length() < bytes)
+            raf.setLength(bytes);
+        return new Table(OS.map(raf.getChannel(), FileChannel.MapMode.READ_WRITE, 0, bytes), capacity);
+    }
+
+    private void recount() {
+        final Table t = table;
+        long used = 0;
+        long entries = 0;
+        for (int i = 0; i < t.capacity; i++) {
+            final long entry = t.entry(i);
+            if (MEMORY.readLong(entry) == 0)
+                continue;
+            used++;
+            if (MEMORY.readLong(entry + 8) != NO_VALUE)
+                entries++;
+        }
+        if (MEMORY.readLong(t.address + ZERO_KEY_VALUE_OFFSET) != NO_VALUE)
+            entries++;
+        usedSlots.set(used);
+        size.add(entries);
+    }
+
+    static long hash(long key) {
+        return Maths.hash64(key);
+    }
+
+    long get0(long key) throws ClosedIllegalStateException {
+        throwExceptionIfClosed();
+        final long stamp = lock.readLock();
+        try {
+            return lookup(table, key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static long lookup(Table t, long key) {
+        if (key == 0)
+            return MEMORY.readVolatileLong(t.address + ZERO_KEY_VALUE_OFFSET);
+        final int mask = t.capacity - 1;
+        int index = (int) hash(key) & mask;
+        for (int n = 0; n < t.capacity; n++, index = (index + 1) & mask) {
+            final long entry = t.entry(index);
+            final long k = MEMORY.readVolatileLong(entry);
+            if (k == key)
+                return MEMORY.readVolatileLong(entry + 8);
+            if (k == 0)
+                break;
+        }
+        return NO_VALUE;
+    }
+
+    long put0(long key, long value) throws ClosedIllegalStateException {
+        for (; ; ) {
+            throwExceptionIfClosed();
+            final Table t;
+            final long entry;
+            final long previous;
+            final long stamp = lock.readLock();
+            try {
+                t = table;
+                // the value for key 0 is held in the header, 8 bytes after where its key would be
+                entry = key == 0
+                        ? t.address + ZERO_KEY_VALUE_OFFSET - 8
+                        : findOrClaim(t, key, value != NO_VALUE);
+                previous = entry == 0 ? NO_VALUE : getAndSet(entry + 8, value);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            if (entry == 0 && value != NO_VALUE) {
+                // other threads filled the table before it could be rehashed
+                resize(t);
+                continue;
+            }
+            if (previous == NO_VALUE && value != NO_VALUE)
+                size.increment();
+            else if (previous != NO_VALUE && value == NO_VALUE)
+                size.decrement();
+            if (usedSlots.get() * 100 > (long) t.capacity * MAX_LOAD_PERCENT)
+                resize(t);
+            return previous;
+        }
+    }
+
+    /**
+     * @return the address of the entry for the key, or 0 if absent and not claimed
+     */
+    private long findOrClaim(Table t, long key, boolean claim) {
+        final int mask = t.capacity - 1;
+        int index = (int) hash(key) & mask;
+        for (int n = 0; n < t.capacity; n++, index = (index + 1) & mask) {
+            final long entry = t.entry(index);
+            long k = MEMORY.readVolatileLong(entry);
+            if (k == 0) {
+                if (!claim)
+                    return 0;
+                if (MEMORY.compareAndSwapLong(entry, 0, key)) {
+                    usedSlots.incrementAndGet();
+                    return entry;
+                }
+                k = MEMORY.readVolatileLong(entry);
+            }
+            if (k == key)
+                return entry;
+        }
+        return 0;
+    }
+
+    private static long getAndSet(long address, long value) {
+        for (; ; ) {
+            final long previous = MEMORY.readVolatileLong(address);
+            if (MEMORY.compareAndSwapLong(address, previous, value))
+                return previous;
+        }
+    }
+
+    private void resize(Table old) {
+        final long stamp = lock.writeLock();
+        try {
+            if (table != old || isClosing())
+                return;
+            // removed keys use slots until rehashed, so only grow if the live entries need more room
+            final boolean grow = size.sum() * 200 > (long) old.capacity * MAX_LOAD_PERCENT;
+            final int capacity = grow ? old.capacity * 2 : old.capacity;
+            if (capacity <= 0)
+                throw new IllegalStateException("Cannot grow beyond " + old.capacity + " entries");
+            if (raf != null) {
+                rehashFile(old, capacity);
+                return;
+            }
+            final Table t = new Table(MEMORY.allocate(Table.bytesFor(capacity)), capacity);
+            t.clear();
+            copy(old, t);
+            t.magic(magic);
+            table = t;
+            release(old);
+        } catch (IOException e) {
+            throw new IORuntimeException(e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Rehashes into a new file which then replaces the old one, so a crash leaves one or the other.
+     */
+    private void rehashFile(Table old, int capacity) throws IOException {
+        final File resizing = resizingFile(file);
+        Files.deleteIfExists(resizing.toPath());
+        final RandomAccessFile newRaf = new RandomAccessFile(resizing, "rw");
+        final Table t;
+        try {
+            t = map(newRaf, capacity);
+        } catch (IOException e) {
+            newRaf.close();
+            Files.deleteIfExists(resizing.toPath());
+            throw e;
+        }
+        t.clear();
+        copy(old, t);
+        t.magic(magic);
+        final RandomAccessFile oldRaf = raf;
+        table = t;
+        raf = newRaf;
+        release(old);
+        oldRaf.close();
+        // the mapping stays valid as the file is renamed
+        Files.move(resizing.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void copy(Table from, Table to) {
+        MEMORY.writeLong(to.address + ZERO_KEY_VALUE_OFFSET, MEMORY.readLong(from.address + ZERO_KEY_VALUE_OFFSET));
+        final int mask = to.capacity - 1;
+        long used = 0;
+        for (int i = 0; i < from.capacity; i++) {
+            final long entry = from.entry(i);
+            final long key = MEMORY.readLong(entry);
+            final long value = MEMORY.readLong(entry + 8);
+            // removed entries are dropped
+            if (key == 0 || value == NO_VALUE)
+                continue;
+            int index = (int) hash(key) & mask;
+            while (MEMORY.readLong(to.entry(index)) != 0)
+                index = (index + 1) & mask;
+            MEMORY.writeLong(to.entry(index), key);
+            MEMORY.writeLong(to.entry(index) + 8, value);
+            used++;
+        }
+        usedSlots.set(used);
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public long size() {
+        return size.sum();
+    }
+
+    /**
+     * @return whether there are no entries
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the number of slots in the table, which doubles when live entries use more than 35% of them
+     */
+    public int capacity() {
+        return table.capacity;
+    }
+
+    /**
+     * Calls the consumer with each entry in a copy of the table, so the consumer can update the map without waiting
+     * for itself. Entries added or removed concurrently may or may not be seen.
+     *
+     * @param consumer of each key and value
+     */
+    void forEach0(EntryVisitor consumer) throws ClosedIllegalStateException {
+        throwExceptionIfClosed();
+        final Table copy;
+        final long bytes;
+        final long stamp = lock.readLock();
+        try {
+            final Table t = table;
+            bytes = Table.bytesFor(t.capacity);
+            copy = new Table(MEMORY.allocate(bytes), t.capacity);
+            MEMORY.copyMemory(t.address, copy.address, bytes);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        try {
+            final long zeroValue = MEMORY.readLong(copy.address + ZERO_KEY_VALUE_OFFSET);
+            if (zeroValue != NO_VALUE)
+                consumer.accept(0, zeroValue);
+            for (int i = 0; i < copy.capacity; i++) {
+                final long entry = copy.entry(i);
+                final long key = MEMORY.readLong(entry);
+                if (key == 0)
+                    continue;
+                final long value = MEMORY.readLong(entry + 8);
+                if (value != NO_VALUE)
+                    consumer.accept(key, value);
+            }
+        } finally {
+            MEMORY.freeMemory(copy.address, bytes);
+        }
+    }
+
+    @Override
+    protected void performClose() {
+        final RandomAccessFile raf;
+        final long stamp = lock.writeLock();
+        try {
+            if (table != null)
+                release(table);
+            raf = this.raf;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                Jvm.warn().on(getClass(), "Unable to close the file", e);
+            }
+        }
+    }
+
+    private void release(Table t) {
+        final long bytes = Table.bytesFor(t.capacity);
+        if (raf == null) {
+            MEMORY.freeMemory(t.address, bytes);
+        } else {
+            try {
+                OS.unmap(t.address, bytes);
+            } catch (IOException e) {
+                Jvm.warn().on(getClass(), "Unable to unmap", e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryVisitor {
+        void accept(long key, long value);
+    }
+
+    static final class Table {
+        final long address;
+        final int capacity;
+
+        Table(long address, int capacity) {
+            this.address = address;
+            this.capacity = capacity;
+        }
+
+        static long bytesFor(int capacity) {
+            return HEADER_SIZE + (long) capacity * ENTRY_SIZE;
+        }
+
+        long entry(int index) {
+            return address + HEADER_SIZE + (long) index * ENTRY_SIZE;
+        }
+
+        /**
+         * Clears the entries and the header apart from the magic number.
+         */
+        void clear() {
+            MEMORY.setMemory(address + CAPACITY_OFFSET, HEADER_SIZE - CAPACITY_OFFSET, (byte) 0);
+            MEMORY.writeLong(address + CAPACITY_OFFSET, capacity);
+            MEMORY.writeLong(address + ZERO_KEY_VALUE_OFFSET, NO_VALUE);
+            for (int i = 0; i < capacity; i++) {
+                MEMORY.writeLong(entry(i), 0);
+                MEMORY.writeLong(entry(i) + 8, NO_VALUE);
+            }
+        }
+
+        /**
+         * Written last so a partially initialised file isn't reopened.
+         */
+        void magic(long magic) {
+            MEMORY.writeOrderedLong(address + MAGIC_OFFSET, magic);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Histogram} which many threads can record samples to at once, for example latencies from several event
+ * loops, while another thread reads percentiles from it live.
+ * <p>
+ * Samples are bucketed exactly as by a {@link Histogram} with the same powersOf2, fractionBits and minValue. Each
+ * recording thread has its own shard of counts which only it writes, so {@link #sampleNanos(long)} is wait free and
+ * threads don't share cache lines. {@link #snapshot(Histogram)} sums the shards into a {@code Histogram} without
+ * blocking the writers; a snapshot taken while samples are being recorded may count a sample in the total before its
+ * bucket.
+ * <p>
+ * The shard of a thread which has stopped is kept so its samples still count.
+ */
+public class ConcurrentHistogram implements NanoSampler {
+    private final int powersOf2;
+    private final int fractionBits;
+    private final double minValue;
+    private final long floor;
+    private final int buckets;
+    private final List<Shard> shards = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Shard> shard = ThreadLocal.withInitial(this::newShard);
+
+    /**
+     * Creates a ConcurrentHistogram with the same defaults as {@link Histogram#Histogram()}.
+     */
+    public ConcurrentHistogram() {
+        this(42, 8);
+    }
+
+    /**
+     * @param powersOf2    the number of powers of 2 to use in the histogram
+     * @param fractionBits the number of fraction bits to use in the histogram
+     */
+    public ConcurrentHistogram(int powersOf2, int fractionBits) {
+        this(powersOf2, fractionBits, 1.0);
+    }
+
+    /**
+     * @param powersOf2    the number of powers of 2 to use in the histogram
+     * @param fractionBits the number of fraction bits to use in the histogram
+     * @param minValue     the minimum value for the histogram
+     */
+    public ConcurrentHistogram(int powersOf2, int fractionBits, double minValue) {
+        this.powersOf2 = powersOf2;
+        this.fractionBits = fractionBits;
+        this.minValue = minValue;
+        this.buckets = powersOf2 << fractionBits;
+        this.floor = Double.doubleToRawLongBits(minValue) >> (52 - fractionBits);
+    }
+
+    /**
+     * @return ConcurrentHistogram for use with System.nanoTime() up to 4 second delay, as {@link Histogram#timeMicros()}
+     */
+    @NotNull
+    public static ConcurrentHistogram timeMicros() {
+        return new ConcurrentHistogram(22 /* 4 seconds */, 3 /* 2 decimal places */, 1000.0 /* nano-seconds */);
+    }
+
+    private Shard newShard() {
+        final Shard s = new Shard(buckets);
+        shards.add(s);
+        return s;
+    }
+
+    /**
+     * Samples a value to the calling thread's shard.
+     *
+     * @param time the value to sample
+     * @return the bucket that the value was placed in
+     */
+    public int sample(double time) {
+        final int bucket = (int) ((Double.doubleToRawLongBits(time) >> (52 - fractionBits)) - floor);
+        shard.get().sample(bucket);
+        return bucket;
+    }
+
+    @Override
+    public void sampleNanos(long durationNs) {
+        sample(durationNs);
+    }
+
+    public int powersOf2() {
+        return powersOf2;
+    }
+
+    public int fractionBits() {
+        return fractionBits;
+    }
+
+    /**
+     * @return the number of threads which have recorded samples
+     */
+    public int shards() {
+        return shards.size();
+    }
+
+    /**
+     * @return the number of samples recorded by all threads
+     */
+    public long totalCount() {
+        long total = 0;
+        for (Shard s : shards)
+            total += s.totalCount.get();
+        return total;
+    }
+
+    /**
+     * @return a new Histogram with the samples recorded so far
+     */
+    @NotNull
+    public Histogram snapshot() {
+        return snapshot(new Histogram(powersOf2, fractionBits, minValue));
+    }
+
+    /**
+     * Replaces the contents of a Histogram with the samples recorded so far, without allocating.
+     *
+     * @param into a Histogram with the same powersOf2, fractionBits and minValue as this
+     * @return into
+     */
+    @NotNull
+    public Histogram snapshot(@NotNull Histogram into) {
+        assert into.powersOf2() == powersOf2 && into.fractionBits() == fractionBits && into.floor() == floor;
+        into.reset();
+        final int[] sampleCount = into.sampleCount();
+        long overRange = 0;
+        long totalCount = 0;
+        for (Shard s : shards) {
+            // buckets are read before the totals which are incremented first, so the total is never too low
+            for (int i = 0; i < buckets; i++)
+                sampleCount[i] += s.counts.get(i);
+            overRange += s.overRange.get();
+            totalCount += s.totalCount.get();
+        }
+        into.init(powersOf2, fractionBits, overRange, totalCount, floor);
+        return into;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentHistogram{" +
+                "powersOf2=" + powersOf2 +
+                ", fractionBits=" + fractionBits +
+                ", floor=" + floor +
+                ", shards=" + shards() +
+                ", totalCount=" + totalCount() +
+                '}';
+    }
+
+    static final class Shard {
+        final AtomicIntegerArray counts;
+        final AtomicLong overRange = new AtomicLong();
+        final AtomicLong totalCount = new AtomicLong();
+
+        Shard(int buckets) {
+            counts = new AtomicIntegerArray(buckets);
+        }
+
+        // only called by the thread which owns this shard, so ordered writes are enough
+        void sample(int bucket) {
+            totalCount.lazySet(totalCount.get() + 1);
+            if (bucket >= counts.length())
+                overRange.lazySet(overRange.get() + 1);
+            else if (bucket >= 0)
+                counts.lazySet(bucket, counts.get(bucket) + 1);
+        }
+    }
+}
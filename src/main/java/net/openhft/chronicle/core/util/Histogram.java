@@ -18,15 +18,18 @@
 
 package net.openhft.chronicle.core.util;
 
+import net.openhft.chronicle.core.Maths;
+import net.openhft.chronicle.core.UnsafeMemory;
 import net.openhft.chronicle.core.annotation.SingleThreaded;
 import org.jetbrains.annotations.NotNull;
 
+import java.math.BigDecimal;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
 import java.util.Arrays;
-import java.util.List;
+import java.util.Locale;
 import java.util.function.DoubleFunction;
-import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 
 /**
@@ -44,12 +47,63 @@ public class Histogram implements NanoSampler {
     private static final DecimalFormat F3 = new DecimalFormat("0.000");
     private static final DecimalFormat F2 = new DecimalFormat("0.00");
     private static final DecimalFormat F1 = new DecimalFormat("0.0");
+    // the symbols DecimalFormat and String.format use for the default locale, for appendP
+    private static final DecimalFormatSymbols SYMBOLS = F3.getDecimalFormatSymbols();
+    private static final String NEGATIVE_PREFIX = F3.getNegativePrefix();
+    private static final char GROUPING_SEPARATOR;
+    private static final int GROUPING_SIZE;
+    private static final long GROUPING_TENS;
+    // the product of two doubles which fit in 26 bits is exact
+    private static final double SPLIT = (1 << 27) + 1;
+    // above this the rounding in appendFixed could overflow a long
+    private static final double MAX_FIXED = 1e12;
+    /**
+     * The most percentiles {@link #percentilesFor(long, double[])} fills.
+     */
+    public static final int MAX_PERCENTILES = 15;
+    private static final double[] FIRST_4_NINES = {0.5, 0.9, 0.97, 0.99, 0.997, 0.999, 0.9997, 0.9999};
+    private static final Layout MICROS_1M = new Layout("50/90 99/99.9 99.99 - worst ",
+            new double[]{0.5, 0.9, 0.99, 0.999, 0.9999, 1},
+            " / ", "  ", " / ", "  ", " - ");
+    private static final Layout MICROS_10M = new Layout("50/90 99/99.9 99.99/99.999 - worst ",
+            new double[]{0.5, 0.9, 0.99, 0.999, 0.9999, 0.99999, 1},
+            " / ", "  ", " / ", "  ", " / ", " - ");
+    private static final Layout MICROS = new Layout("50/90 99/99.9 99.99/99.999 99.9999/worst ",
+            new double[]{0.5, 0.9, 0.99, 0.999, 0.9999, 0.99999, 0.999999, 1},
+            " / ", "  ", " / ", "  ", " / ", "  ", " / ");
+    private static final Layout LONG_MICROS_1M = new Layout("50/90 97/99 99.7/99.9 99.97/99.99 - worst ",
+            withFirst4Nines(1),
+            " / ", "  ", " / ", "  ", " / ", "  ", " / ", " - ");
+    private static final Layout LONG_MICROS_10M = new Layout("50/90 97/99 99.7/99.9 99.97/99.99 99.997/99.999 - worst ",
+            withFirst4Nines(0.99997, 0.99999, 1),
+            " / ", "  ", " / ", "  ", " / ", "  ", " / ", "  ", " / ", " - ");
+    private static final Layout LONG_MICROS = new Layout("50/90 97/99 99.7/99.9 99.97/99.99 99.997/99.999 99.9997/99.9999 - worst ",
+            withFirst4Nines(0.99997, 0.99999, 0.999997, 0.999999, 1),
+            " / ", "  ", " / ", "  ", " / ", "  ", " / ", "  ", " / ", "  ", " / ", " - ");
     private int fractionBits;
     private int powersOf2;
     private long overRange;
     private long totalCount;
     private long floor;
     private int[] sampleCount;
+    // reused by the append methods
+    private double[] percentiles;
+    private long expectedIntervalNanos;
+
+    static {
+        // as Formatter does for %,d
+        final Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        final NumberFormat nf = NumberFormat.getNumberInstance(locale);
+        int groupingSize = 3;
+        boolean grouping = true;
+        if (nf instanceof DecimalFormat) {
+            groupingSize = ((DecimalFormat) nf).getGroupingSize();
+            grouping = ((DecimalFormat) nf).isGroupingUsed() && groupingSize > 0;
+        }
+        GROUPING_SEPARATOR = grouping ? DecimalFormatSymbols.getInstance(locale).getGroupingSeparator() : 0;
+        GROUPING_SIZE = grouping ? groupingSize : 0;
+        GROUPING_TENS = grouping ? Maths.tens(groupingSize) : 0;
+    }
 
     /**
      * Creates a new Histogram with default parameters. The default number of powers of 2 is 42 and the default
@@ -98,22 +152,34 @@ public class Histogram implements NanoSampler {
      * @return an array of doubles representing the calculated percentiles
      */
     public static double[] percentilesFor(long count) {
-        List<Double> values = new ArrayList<>();
-        values.add(50 / 100.0);
-        values.add(90 / 100.0);
-        values.add(99 / 100.0);
+        final double[] fractions = new double[MAX_PERCENTILES];
+        return Arrays.copyOf(fractions, percentilesFor(count, fractions));
+    }
+
+    /**
+     * Fills an array with the percentiles to report for a given count, in ascending order, without allocating.
+     *
+     * @param count     the count of values
+     * @param fractions to fill, with space for at least {@link #MAX_PERCENTILES}
+     * @return the number of percentiles filled
+     */
+    public static int percentilesFor(long count, double[] fractions) {
+        int n = 0;
+        fractions[n++] = 50 / 100.0;
+        fractions[n++] = 90 / 100.0;
+        fractions[n++] = 99 / 100.0;
         if (count > 10_000)
-            values.add(0.997);
+            fractions[n++] = 0.997;
         for (int x = 1000; x <= 10_000_000; x *= 10) {
             if (count < 100L * x)
                 break;
-            values.add(1 - 1.0 / x);
+            fractions[n++] = 1 - 1.0 / x;
             if (count < 300L * x)
                 break;
-            values.add(1 - 3.0 / (10 * x));
+            fractions[n++] = 1 - 3.0 / (10 * x);
         }
-        values.add(100 / 100.0);
-        return values.stream().mapToDouble(d -> d).toArray();
+        fractions[n++] = 100 / 100.0;
+        return n;
     }
 
     @Override
@@ -224,6 +290,23 @@ public class Histogram implements NanoSampler {
             sampleCount[i] += h.sampleCount[i];
     }
 
+    /**
+     * Subtracts the contents of another histogram from this one, so the difference between two snapshots of a histogram
+     * which only accumulates is the samples recorded between them. The other histogram must have the same number of
+     * powers of 2 and fraction bits as this one.
+     *
+     * @param h the other histogram, typically an earlier snapshot
+     * @throws AssertionError if the other histogram does not have the same number of powers of 2 and fraction bits
+     */
+    public void subtract(@NotNull Histogram h) {
+        assert powersOf2 == h.powersOf2;
+        assert fractionBits == h.fractionBits;
+        totalCount -= h.totalCount;
+        overRange -= h.overRange;
+        for (int i = 0; i < sampleCount.length; i++)
+            sampleCount[i] -= h.sampleCount[i];
+    }
+
     /**
      * Samples a value and updates the histogram accordingly. The value is placed into a bucket based on its size,
      * with the bucket ranges determined by the powers of 2 and fraction bits specified when the histogram was created.
@@ -320,7 +403,195 @@ public class Histogram implements NanoSampler {
      * @return an array of calculated percentiles
      */
     public double @NotNull [] getPercentiles(double[] percentileFor) {
-        return DoubleStream.of(percentileFor).map(this::percentile).toArray();
+        final double[] values = new double[percentileFor.length];
+        getPercentiles(percentileFor, percentileFor.length, values);
+        return values;
+    }
+
+    /**
+     * Calculates percentiles into a caller supplied array without allocating. Fractions in ascending order, as from
+     * {@link #percentilesFor(long, double[])}, are calculated in a single pass over the buckets.
+     *
+     * @param fractions the fractions to calculate the percentiles for
+     * @param count     the number of fractions
+     * @param values    to fill with the percentile of each fraction
+     */
+    public void getPercentiles(double[] fractions, int count, double[] values) {
+        percentiles(fractions, count, values, 0);
+    }
+
+    /**
+     * Calculates percentiles into native memory without allocating. Fractions in ascending order, as from
+     * {@link #percentilesFor(long, double[])}, are calculated in a single pass over the buckets.
+     *
+     * @param fractions the fractions to calculate the percentiles for
+     * @param count     the number of fractions
+     * @param address   to write the percentile of each fraction to as a double, {@code count * 8} bytes
+     */
+    public void getPercentiles(double[] fractions, int count, long address) {
+        percentiles(fractions, count, null, address);
+    }
+
+    private void percentiles(double[] fractions, int count, double[] values, long address) {
+        // walks down from the top bucket, so the largest fractions are answered first
+        int bucket = sampleCount.length - 1;
+        long above = 0;
+        double previous = Double.POSITIVE_INFINITY;
+        for (int f = count - 1; f >= 0; f--) {
+            final double fraction = fractions[f];
+            double percentile;
+            if (fraction <= 0) {
+                percentile = percentile(fraction);
+            } else {
+                if (fraction > previous) {
+                    // not in ascending order so start again
+                    bucket = sampleCount.length - 1;
+                    above = 0;
+                }
+                previous = fraction;
+                final long value = (long) (totalCount * (1 - fraction)) - overRange;
+                if (value < 0) {
+                    percentile = Double.POSITIVE_INFINITY;
+                } else {
+                    while (bucket >= 0 && above + sampleCount[bucket] <= value)
+                        above += sampleCount[bucket--];
+                    percentile = bucket < 0 ? 1 : Double.longBitsToDouble((((bucket + floor) << 1) + 1) << (51 - fractionBits));
+                }
+            }
+            if (values != null)
+                values[f] = percentile;
+            else
+                UnsafeMemory.MEMORY.writeDouble(address + f * 8L, percentile);
+        }
+    }
+
+    /**
+     * Appends the same text as {@link #toMicrosFormat()} without allocating once the StringBuilder has grown.
+     *
+     * @param sb to append to
+     * @return sb
+     */
+    @NotNull
+    public StringBuilder appendMicrosFormat(@NotNull StringBuilder sb) {
+        return append(sb, totalCount < 1_000_000 ? MICROS_1M : totalCount < 10_000_000 ? MICROS_10M : MICROS);
+    }
+
+    /**
+     * Appends the same text as {@link #toLongMicrosFormat()} without allocating once the StringBuilder has grown.
+     *
+     * @param sb to append to
+     * @return sb
+     */
+    @NotNull
+    public StringBuilder appendLongMicrosFormat(@NotNull StringBuilder sb) {
+        return append(sb, totalCount < 1_000_000 ? LONG_MICROS_1M : totalCount < 10_000_000 ? LONG_MICROS_10M : LONG_MICROS);
+    }
+
+    @NotNull
+    private StringBuilder append(@NotNull StringBuilder sb, @NotNull Layout layout) {
+        if (percentiles == null)
+            percentiles = new double[MAX_PERCENTILES];
+        final int count = layout.fractions.length;
+        getPercentiles(layout.fractions, count, percentiles);
+        sb.append(layout.header).append(was());
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                sb.append(layout.separators[i - 1]);
+            appendP(sb, percentiles[i] / 1e3);
+        }
+        return sb;
+    }
+
+    // the same as p(double) without DecimalFormat or String.format, for the default locale when the class was loaded
+    void appendP(@NotNull StringBuilder sb, double v) {
+        final double v2 = v * 100 / (1 << fractionBits);
+        if (v2 < 1)
+            appendFixed(sb, v, 3);
+        else if (v2 < 10)
+            appendFixed(sb, v, 2);
+        else if (v2 < 100)
+            appendFixed(sb, v, 1);
+        else if (v2 < 1000)
+            sb.append(Math.round(v));
+        else
+            appendGrouped(sb, Math.round(v / 10) * 10);
+    }
+
+    // as format(F3, v) etc. does, rounding the exact value of the double half even
+    private static void appendFixed(@NotNull StringBuilder sb, double v, int digits) {
+        if (!(Math.abs(v) < MAX_FIXED)) {
+            // NaN, infinite or not expected for latencies in micro-seconds
+            synchronized (Histogram.class) {
+                sb.append(format(digits == 3 ? F3 : digits == 2 ? F2 : F1, v));
+            }
+            return;
+        }
+        if (v < 0) {
+            sb.append(NEGATIVE_PREFIX);
+            v = -v;
+        }
+        final long tens = Maths.tens(digits);
+        final long scaled = roundHalfEven(v, tens);
+        appendDigits(sb, -(scaled / tens), 1);
+        sb.append(SYMBOLS.getDecimalSeparator());
+        appendDigits(sb, -(scaled % tens), digits);
+    }
+
+    private static long roundHalfEven(double v, long tens) {
+        final double hi = v * tens;
+        // the rounding error of hi by Dekker's algorithm, as Math.fma needs Java 9
+        final double vs = v * SPLIT;
+        final double vh = vs - (vs - v);
+        final double vl = v - vh;
+        final double ts = tens * SPLIT;
+        final double th = ts - (ts - tens);
+        final double tl = tens - th;
+        final double lo = ((vh * th - hi) + vh * tl + vl * th) + vl * tl;
+        // hi is at least an ulp from any other half way point, and lo is at most half an ulp
+        final double floor = Math.floor(hi);
+        final double fraction = hi - floor;
+        long rounded = (long) floor;
+        if (fraction > 0.5 || (fraction == 0.5 && (lo > 0 || (lo == 0 && (rounded & 1) != 0))))
+            rounded++;
+        return rounded;
+    }
+
+    // the digits of -negative in the locale's zero digit, negated so Long.MIN_VALUE has a magnitude
+    private static void appendDigits(@NotNull StringBuilder sb, long negative, int minDigits) {
+        final char zero = SYMBOLS.getZeroDigit();
+        long tens = 1;
+        int digits = 1;
+        while (digits < 19 && negative <= -tens * 10) {
+            tens *= 10;
+            digits++;
+        }
+        for (; digits < minDigits; digits++)
+            sb.append(zero);
+        for (; tens > 0; tens /= 10)
+            sb.append((char) (zero - negative / tens % 10));
+    }
+
+    // as String.format("%,d") does
+    private static void appendGrouped(@NotNull StringBuilder sb, long n) {
+        if (n < 0)
+            sb.append('-');
+        appendGroupedNegative(sb, n < 0 ? n : -n);
+    }
+
+    private static void appendGroupedNegative(@NotNull StringBuilder sb, long negative) {
+        if (GROUPING_TENS == 0 || negative > -GROUPING_TENS) {
+            appendDigits(sb, negative, 1);
+            return;
+        }
+        appendGroupedNegative(sb, negative / GROUPING_TENS);
+        sb.append(GROUPING_SEPARATOR);
+        appendDigits(sb, negative % GROUPING_TENS, GROUPING_SIZE);
+    }
+
+    private static double[] withFirst4Nines(double... more) {
+        final double[] fractions = Arrays.copyOf(FIRST_4_NINES, FIRST_4_NINES.length + more.length);
+        System.arraycopy(more, 0, fractions, FIRST_4_NINES.length, more.length);
+        return fractions;
     }
 
     /**
@@ -431,18 +702,23 @@ public class Histogram implements NanoSampler {
     }
 
     @NotNull
-    private String p(double v) {
+    String p(double v) {
         double v2 = v * 100 / (1 << fractionBits);
         // Uses non thread safe static fields.
         synchronized (Histogram.class) {
-            return v2 < 1 ? F3.format(v) :
-                    v2 < 10 ? F2.format(v) :
-                            v2 < 100 ? F1.format(v) :
+            return v2 < 1 ? format(F3, v) :
+                    v2 < 10 ? format(F2, v) :
+                            v2 < 100 ? format(F1, v) :
                                     v2 < 1000 ? Long.toString(Math.round(v)) :
                                             String.format("%,d", Math.round(v / 10) * 10);
         }
     }
 
+    // the exact value of the double rounded half even, as DecimalFormat doesn't always round a double that way
+    private static String format(@NotNull DecimalFormat format, double v) {
+        return Double.isFinite(v) ? format.format(new BigDecimal(v)) : format.format(v);
+    }
+
     public long totalCount() {
         return totalCount;
     }
@@ -457,8 +733,58 @@ public class Histogram implements NanoSampler {
         Arrays.fill(sampleCount, 0);
     }
 
+    /**
+     * Sets the interval at which samples are expected, so {@link #sampleNanos(long)} corrects for coordinated omission.
+     * A sample which takes longer than the interval delayed the samples which should have started during it, so it is
+     * recorded along with a sample for each of them, shorter by one interval each time, as they would have been had the
+     * start times been scheduled rather than waiting for the slow sample.
+     *
+     * @param expectedIntervalNanos between samples, or 0 to record samples as given
+     * @return this
+     */
+    @NotNull
+    public Histogram expectedIntervalNanos(long expectedIntervalNanos) {
+        this.expectedIntervalNanos = expectedIntervalNanos;
+        return this;
+    }
+
+    /**
+     * @return the interval at which samples are expected, or 0 if samples are recorded as given
+     */
+    public long expectedIntervalNanos() {
+        return expectedIntervalNanos;
+    }
+
     @Override
     public void sampleNanos(long durationNs) {
+        sampleNanos(durationNs, expectedIntervalNanos);
+    }
+
+    /**
+     * Samples a duration, correcting for coordinated omission as described in {@link #expectedIntervalNanos(long)}.
+     * The cost is proportional to the duration divided by the interval.
+     *
+     * @param durationNs         the duration of the sample
+     * @param expectedIntervalNs between samples, or 0 to record the duration as given
+     */
+    public void sampleNanos(long durationNs, long expectedIntervalNs) {
         sample(durationNs);
+        if (expectedIntervalNs <= 0)
+            return;
+        for (long missed = durationNs - expectedIntervalNs; missed >= expectedIntervalNs; missed -= expectedIntervalNs)
+            sample(missed);
+    }
+
+    static final class Layout {
+        final String header;
+        final double[] fractions;
+        final String[] separators;
+
+        Layout(String header, double[] fractions, String... separators) {
+            assert separators.length == fractions.length - 1;
+            this.header = header;
+            this.fractions = fractions;
+            this.separators = separators;
+        }
     }
 }
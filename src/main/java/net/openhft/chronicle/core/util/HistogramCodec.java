@@ -0,0 +1,305 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import net.openhft.chronicle.core.Jvm;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+
+/**
+ * Encodes a {@link Histogram} in a compact binary form, so histograms from many processes can be shipped to and merged
+ * by an aggregator as bytes rather than strings.
+ * <p>
+ * The encoding is a version byte followed by stop bit encoded numbers, 7 bits per byte with the top bit set when more
+ * bytes follow, sized by {@link net.openhft.chronicle.core.Memory#stopBitLength(long)}:
+ * <pre>
+ * version powersOf2 fractionBits floor totalCount overRange runs (zeroBuckets nonZeroBuckets count*)*
+ * </pre>
+ * Only runs of non-empty buckets are written, so a histogram with few distinct latencies is a few dozen bytes.
+ * <p>
+ * Encoded histograms are read directly from a {@link ByteBuffer} or native address, and {@link #addTo(Histogram, ByteBuffer)}
+ * merges one into a histogram without decoding it to an intermediate histogram first.
+ * <p>
+ * A codec holds the position of the encoding being read or written so it doesn't allocate, and so should be reused by
+ * one thread at a time.
+ */
+public final class HistogramCodec {
+    public static final int VERSION = 1;
+    private static final int BYTE_ARRAY_OFFSET = Jvm.arrayByteBaseOffset();
+    // limits the buckets a corrupt encoding can make read() allocate
+    private static final int MAX_FRACTION_BITS = 16;
+
+    @Nullable
+    private Object base;
+    private long position;
+    private long limit;
+
+    /**
+     * @param h to encode
+     * @return the number of bytes in the encoding of the histogram
+     */
+    public int encodedLength(@NotNull Histogram h) {
+        final int[] counts = h.sampleCount();
+        final int buckets = buckets(h);
+        int length = 1
+                + MEMORY.stopBitLength(h.powersOf2())
+                + MEMORY.stopBitLength(h.fractionBits())
+                + MEMORY.stopBitLength(h.floor())
+                + MEMORY.stopBitLength(h.totalCount())
+                + MEMORY.stopBitLength(h.overRange());
+        int runs = 0;
+        for (int i = 0, last = 0; i < buckets; ) {
+            if (counts[i] == 0) {
+                i++;
+                continue;
+            }
+            final int start = i;
+            while (i < buckets && counts[i] != 0)
+                length += MEMORY.stopBitLength(counts[i++]);
+            length += MEMORY.stopBitLength(start - last) + MEMORY.stopBitLength(i - start);
+            last = i;
+            runs++;
+        }
+        return length + MEMORY.stopBitLength(runs);
+    }
+
+    private static int buckets(@NotNull Histogram h) {
+        return h.powersOf2() << h.fractionBits();
+    }
+
+    /**
+     * Writes the histogram at the buffer's position and advances it.
+     *
+     * @param h      to encode
+     * @param buffer to write to
+     * @return the number of bytes written
+     * @throws BufferOverflowException if there isn't space for the encoding
+     */
+    public int write(@NotNull Histogram h, @NotNull ByteBuffer buffer) throws BufferOverflowException {
+        final int length = encodedLength(h);
+        if (buffer.remaining() < length)
+            throw new BufferOverflowException();
+        setBase(buffer);
+        write0(h);
+        buffer.position(buffer.position() + length);
+        return length;
+    }
+
+    /**
+     * Writes the histogram to native memory.
+     *
+     * @param h       to encode
+     * @param address to write to, with at least {@link #encodedLength(Histogram)} bytes available
+     * @return the number of bytes written
+     */
+    public long write(@NotNull Histogram h, long address) {
+        base = null;
+        position = address;
+        limit = Long.MAX_VALUE;
+        write0(h);
+        return position - address;
+    }
+
+    private void write0(@NotNull Histogram h) {
+        final int[] counts = h.sampleCount();
+        final int buckets = buckets(h);
+        int runs = 0;
+        for (int i = 0; i < buckets; i++)
+            if (counts[i] != 0 && (i == 0 || counts[i - 1] == 0))
+                runs++;
+        MEMORY.writeByte(base, position++, (byte) VERSION);
+        writeStopBit(h.powersOf2());
+        writeStopBit(h.fractionBits());
+        writeStopBit(h.floor());
+        writeStopBit(h.totalCount());
+        writeStopBit(h.overRange());
+        writeStopBit(runs);
+        for (int i = 0, last = 0; i < buckets; ) {
+            if (counts[i] == 0) {
+                i++;
+                continue;
+            }
+            int end = i;
+            while (end < buckets && counts[end] != 0)
+                end++;
+            writeStopBit(i - last);
+            writeStopBit(end - i);
+            for (; i < end; i++)
+                writeStopBit(counts[i]);
+            last = end;
+        }
+    }
+
+    private void writeStopBit(long n) {
+        // negative numbers are written as their complement followed by a zero byte, as in Chronicle Bytes
+        final boolean negative = n < 0;
+        if (negative)
+            n = ~n;
+        while ((n & ~0x7FL) != 0) {
+            MEMORY.writeByte(base, position++, (byte) (n | 0x80));
+            n >>>= 7;
+        }
+        if (negative) {
+            MEMORY.writeByte(base, position++, (byte) (n | 0x80));
+            MEMORY.writeByte(base, position++, (byte) 0);
+        } else {
+            MEMORY.writeByte(base, position++, (byte) n);
+        }
+    }
+
+    /**
+     * Reads a histogram at the buffer's position and advances it.
+     *
+     * @param buffer to read from
+     * @return a new histogram with the encoded samples
+     * @throws IllegalArgumentException  if the encoding is not a supported version
+     * @throws BufferUnderflowException if the encoding is truncated
+     */
+    @NotNull
+    public Histogram read(@NotNull ByteBuffer buffer) throws IllegalArgumentException, BufferUnderflowException {
+        final long start = setBase(buffer);
+        readVersion();
+        final long powersOf2 = readStopBit();
+        final long fractionBits = readStopBit();
+        if (powersOf2 < 1 || powersOf2 > 64 || fractionBits < 0 || fractionBits > MAX_FRACTION_BITS)
+            throw new IllegalArgumentException("Invalid powersOf2: " + powersOf2 + ", fractionBits: " + fractionBits);
+        final Histogram h = new Histogram((int) powersOf2, (int) fractionBits);
+        h.init(h.powersOf2(), h.fractionBits(), 0, 0, readStopBit());
+        position = start;
+        addTo0(h);
+        buffer.position(buffer.position() + (int) (position - start));
+        return h;
+    }
+
+    /**
+     * Adds an encoded histogram at the buffer's position to a histogram and advances the position, without decoding
+     * it to a histogram first.
+     *
+     * @param into   the histogram to add to, which must have the same powersOf2, fractionBits and floor
+     * @param buffer to read from
+     * @return the number of bytes read
+     * @throws IllegalArgumentException  if the encoding is not a supported version or a different shape
+     * @throws BufferUnderflowException if the encoding is truncated
+     */
+    public int addTo(@NotNull Histogram into, @NotNull ByteBuffer buffer) throws IllegalArgumentException, BufferUnderflowException {
+        final long start = setBase(buffer);
+        addTo0(into);
+        final int length = (int) (position - start);
+        buffer.position(buffer.position() + length);
+        return length;
+    }
+
+    /**
+     * Adds an encoded histogram in native memory to a histogram, without decoding it to a histogram first.
+     *
+     * @param into    the histogram to add to, which must have the same powersOf2, fractionBits and floor
+     * @param address to read from
+     * @param length  the most bytes to read
+     * @return the number of bytes read
+     * @throws IllegalArgumentException  if the encoding is not a supported version or a different shape
+     * @throws BufferUnderflowException if the encoding is longer than the length
+     */
+    public long addTo(@NotNull Histogram into, long address, long length) throws IllegalArgumentException, BufferUnderflowException {
+        base = null;
+        position = address;
+        limit = address + length;
+        addTo0(into);
+        return position - address;
+    }
+
+    private void addTo0(@NotNull Histogram into) {
+        readVersion();
+        final long powersOf2 = readStopBit();
+        final long fractionBits = readStopBit();
+        final long floor = readStopBit();
+        if (powersOf2 != into.powersOf2() || fractionBits != into.fractionBits() || floor != into.floor())
+            throw new IllegalArgumentException("Cannot add a histogram with powersOf2: " + powersOf2 + ", fractionBits: " + fractionBits + ", floor: " + floor +
+                    " to one with powersOf2: " + into.powersOf2() + ", fractionBits: " + into.fractionBits() + ", floor: " + into.floor());
+        final long totalCount = readStopBit();
+        final long overRange = readStopBit();
+        final int[] counts = into.sampleCount();
+        final int buckets = buckets(into);
+        // validate all the runs before changing the histogram
+        final long start = position;
+        for (int phase = 0; phase < 2; phase++) {
+            position = start;
+            final long runs = readStopBit();
+            long bucket = 0;
+            for (long r = 0; r < runs; r++) {
+                bucket += readStopBit();
+                final long n = readStopBit();
+                if (bucket < 0 || n < 0 || bucket + n > buckets)
+                    throw new IllegalArgumentException("Run of " + n + " buckets at " + bucket + " is outside " + buckets + " buckets");
+                for (long end = bucket + n; bucket < end; bucket++) {
+                    final long count = readStopBit();
+                    if (phase == 1)
+                        counts[(int) bucket] += (int) count;
+                }
+            }
+        }
+        into.init(into.powersOf2(), into.fractionBits(), into.overRange() + overRange, into.totalCount() + totalCount, floor);
+    }
+
+    private void readVersion() {
+        final int version = readByte();
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported version: " + version);
+    }
+
+    private int readByte() {
+        if (position >= limit)
+            throw new BufferUnderflowException();
+        return MEMORY.readByte(base, position++);
+    }
+
+    private long readStopBit() {
+        long l = readByte();
+        if (l >= 0)
+            return l;
+        l &= 0x7F;
+        long b;
+        int shift = 7;
+        while ((b = readByte()) < 0) {
+            l |= (b & 0x7FL) << shift;
+            shift += 7;
+        }
+        if (b != 0)
+            return l | (b << shift);
+        return ~l;
+    }
+
+    // returns the offset of the buffer's position from base
+    private long setBase(@NotNull ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            base = null;
+            position = Jvm.address(buffer) + buffer.position();
+        } else {
+            base = buffer.array();
+            position = BYTE_ARRAY_OFFSET + buffer.arrayOffset() + buffer.position();
+        }
+        limit = position + buffer.remaining();
+        return position;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Records samples from one thread into a {@link Histogram} which another thread periodically swaps for an empty one,
+ * so each {@link #interval()} holds only the samples since the previous one, e.g. for a p99 each second.
+ * <p>
+ * The completed intervals are also kept in a ring so windows spanning several of them can be summed with
+ * {@link #window(int, Histogram)}. Calling {@code interval()} once a second and summing windows of 10 and 60 gives
+ * rolling 1s, 10s and 60s percentiles. All the histograms are created up front, so neither the recording thread nor the
+ * reporting thread allocates.
+ * <p>
+ * {@link #sampleNanos(long)} is wait free. The recording thread marks when it is sampling so {@code interval()} can
+ * wait for a sample in progress to finish before reading the histogram it was swapped out.
+ */
+public class IntervalRecorder implements NanoSampler {
+    private final Histogram[] ring;
+    // odd while the recording thread is sampling
+    private final AtomicLong sampling = new AtomicLong();
+    private volatile Histogram active;
+    private Histogram spare;
+    private long intervals;
+
+    /**
+     * @param histogramSupplier to create histograms of the same shape with
+     * @param windowIntervals   the most intervals which can be summed by window()
+     */
+    public IntervalRecorder(@NotNull Supplier<Histogram> histogramSupplier, int windowIntervals) {
+        if (windowIntervals < 1)
+            throw new IllegalArgumentException("windowIntervals: " + windowIntervals);
+        active = histogramSupplier.get();
+        spare = histogramSupplier.get();
+        ring = new Histogram[windowIntervals];
+        for (int i = 0; i < windowIntervals; i++)
+            ring[i] = histogramSupplier.get();
+    }
+
+    /**
+     * Samples a value. This must only be called by one thread at a time.
+     *
+     * @param time the value to sample
+     * @return the bucket that the value was placed in
+     */
+    public int sample(double time) {
+        final long seq = sampling.get();
+        // a volatile write so a swap of active after this is seen by the read below, or sees this sample in progress
+        sampling.set(seq + 1);
+        try {
+            return active.sample(time);
+        } finally {
+            sampling.lazySet(seq + 2);
+        }
+    }
+
+    @Override
+    public void sampleNanos(long durationNs) {
+        sample(durationNs);
+    }
+
+    /**
+     * Completes the current interval and starts a new one. This must only be called by one thread at a time.
+     *
+     * @return the samples recorded since the last call, which is reused after the next call
+     */
+    @NotNull
+    public Histogram interval() {
+        final Histogram completed = active;
+        spare.reset();
+        active = spare;
+        // wait for a sample which might be writing to the completed histogram
+        final long seq = sampling.get();
+        if ((seq & 1) != 0)
+            while (sampling.get() == seq)
+                Thread.yield();
+        spare = completed;
+
+        final Histogram slot = ring[(int) (intervals++ % ring.length)];
+        slot.reset();
+        slot.add(completed);
+        return completed;
+    }
+
+    /**
+     * @return the number of intervals completed
+     */
+    public long intervals() {
+        return intervals;
+    }
+
+    /**
+     * Sums the most recent completed intervals. This must be called by the thread which calls interval().
+     *
+     * @param count the number of intervals, up to the windowIntervals given
+     * @param into  the histogram to replace the contents of
+     * @return into
+     */
+    @NotNull
+    public Histogram window(int count, @NotNull Histogram into) {
+        if (count < 1 || count > ring.length)
+            throw new IllegalArgumentException("count: " + count + " must be between 1 and " + ring.length);
+        into.reset();
+        final long n = Math.min(count, intervals);
+        for (long i = intervals - n; i < intervals; i++)
+            into.add(ring[(int) (i % ring.length)]);
+        return into;
+    }
+
+    @Override
+    public String toString() {
+        return "IntervalRecorder{" +
+                "intervals=" + intervals +
+                ", windowIntervals=" + ring.length +
+                '}';
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import net.openhft.chronicle.core.io.ClosedIllegalStateException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A map of long keys to int values held off heap, which can be updated and read by many threads. Reads and updates
+ * share a read lock, so only wait while the table is being rehashed, and updates use compare-and-swap.
+ * <p>
+ * Any key or value may be used. The map must be closed to release its memory and must not be accessed concurrently with
+ * {@link #close()}.
+ *
+ * @see LongLongMap
+ */
+public class LongIntMap extends AbstractLongHashMap {
+    private static final long MAGIC = 0x4C6F6E67496E7400L; // LongInt
+
+    /**
+     * Creates a map in native memory.
+     *
+     * @param initialCapacity the number of entries expected
+     */
+    public LongIntMap(int initialCapacity) {
+        super(MAGIC, initialCapacity);
+    }
+
+    /**
+     * Creates a map in a memory mapped file, or reopens the map already in it.
+     *
+     * @param file            to map
+     * @param initialCapacity the number of entries expected if the file is new
+     * @throws IOException if the file could not be mapped, or contains a map which is corrupt
+     */
+    public LongIntMap(@NotNull File file, int initialCapacity) throws IOException {
+        super(MAGIC, file, initialCapacity);
+    }
+
+    /**
+     * @param key          to lookup
+     * @param defaultValue to return if there is no value for the key
+     * @return the value for the key, or the defaultValue if there isn't one
+     * @throws ClosedIllegalStateException if the map has been closed
+     */
+    public int getOrDefault(long key, int defaultValue) throws ClosedIllegalStateException {
+        final long value = get0(key);
+        return value == NO_VALUE ? defaultValue : (int) value;
+    }
+
+    /**
+     * @param key to lookup
+     * @return whether there is a value for the key
+     * @throws ClosedIllegalStateException if the map has been closed
+     */
+    public boolean containsKey(long key) throws ClosedIllegalStateException {
+        return get0(key) != NO_VALUE;
+    }
+
+    /**
+     * @param key   to set
+     * @param value to set
+     * @return true if there was no previous value
+     * @throws ClosedIllegalStateException if the map has been closed
+     */
+    public boolean put(long key, int value) throws ClosedIllegalStateException {
+        return put0(key, value) == NO_VALUE;
+    }
+
+    /**
+     * @param key to remove
+     * @return true if there was a value to remove
+     * @throws ClosedIllegalStateException if the map has been closed
+     */
+    public boolean remove(long key) throws ClosedIllegalStateException {
+        return put0(key, NO_VALUE) != NO_VALUE;
+    }
+
+    /**
+     * Calls the consumer with each entry. The entries are copied first, so the consumer can put and remove entries,
+     * and entries added or removed concurrently may or may not be seen.
+     *
+     * @param consumer of each key and value
+     * @throws ClosedIllegalStateException if the map has been closed
+     */
+    public void forEach(@NotNull EntryConsumer consumer) throws ClosedIllegalStateException {
+        forEach0((key, value) -> consumer.accept(key, (int) value));
+    }
+
+    @Override
+    public String toString() {
+        return "LongIntMap{" +
+                "size=" + size() +
+                ", capacity=" + capacity() +
+                '}';
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+}
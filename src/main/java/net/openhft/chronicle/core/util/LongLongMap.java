@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import net.openhft.chronicle.core.io.ClosedIllegalStateException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A map of long keys to long values held off heap, which can be updated and read by many threads. Reads and updates
+ * share a read lock, so only wait while the table is being rehashed, and updates use compare-and-swap.
+ * <p>
+ * Any key may be used, however {@link #NO_VALUE} can't be stored as it is returned when there is no value. The map
+ * must be closed to release its memory and must not be accessed concurrently with {@link #close()}.
+ *
+ * @see LongIntMap
+ */
+public class LongLongMap extends AbstractLongHashMap {
+    /**
+     * Returned when there is no value for a key, and so can't be stored.
+     */
+    public static final long NO_VALUE = AbstractLongHashMap.NO_VALUE;
+    private static final long MAGIC = 0x4C6F6E674C6F6E67L; // LongLong
+
+    /**
+     * Creates a map in native memory.
+     *
+     * @param initialCapacity the number of entries expected
+     */
+    public LongLongMap(int initialCapacity) {
+        super(MAGIC, initialCapacity);
+    }
+
+    /**
+     * Creates a map in a memory mapped file, or reopens the map already in it.
+     *
+     * @param file            to map
+     * @param initialCapacity the number of entries expected if the file is new
+     * @throws IOException if the file could not be mapped, or contains a map which is corrupt
+     */
+    public LongLongMap(@NotNull File file, int initialCapacity) throws IOException {
+        super(MAGIC, file, initialCapacity);
+    }
+
+    /**
+     * @param key to lookup
+     * @return the value for the key, or {@link #NO_VALUE} if there isn't one
+     * @throws ClosedIllegalStateException if the map has been closed
+     */
+    public long get(long key) throws ClosedIllegalStateException {
+        return get0(key);
+    }
+
+    /**
+     * @param key          to lookup
+     * @param defaultValue to return if there is no value for the key
+     * @return the value for the key, or the defaultValue if there isn't one
+     * @throws ClosedIllegalStateException if the map has been closed
+     */
+    public long getOrDefault(long key, long defaultValue) throws ClosedIllegalStateException {
+        final long value = get0(key);
+        return value == NO_VALUE ? defaultValue : value;
+    }
+
+    /**
+     * @param key to lookup
+     * @return whether there is a value for the key
+     * @throws ClosedIllegalStateException if the map has been closed
+     */
+    public boolean containsKey(long key) throws ClosedIllegalStateException {
+        return get0(key) != NO_VALUE;
+    }
+
+    /**
+     * @param key   to set
+     * @param value to set, which can't be {@link #NO_VALUE}
+     * @return the previous value, or {@link #NO_VALUE} if there wasn't one
+     * @throws IllegalArgumentException    if the value is NO_VALUE
+     * @throws ClosedIllegalStateException if the map has been closed
+     */
+    public long put(long key, long value) throws IllegalArgumentException, ClosedIllegalStateException {
+        if (value == NO_VALUE)
+            throw new IllegalArgumentException("Cannot store NO_VALUE for key: " + key);
+        return put0(key, value);
+    }
+
+    /**
+     * @param key to remove
+     * @return the previous value, or {@link #NO_VALUE} if there wasn't one
+     * @throws ClosedIllegalStateException if the map has been closed
+     */
+    public long remove(long key) throws ClosedIllegalStateException {
+        return put0(key, NO_VALUE);
+    }
+
+    /**
+     * Calls the consumer with each entry. The entries are copied first, so the consumer can put and remove entries,
+     * and entries added or removed concurrently may or may not be seen.
+     *
+     * @param consumer of each key and value
+     * @throws ClosedIllegalStateException if the map has been closed
+     */
+    public void forEach(@NotNull EntryConsumer consumer) throws ClosedIllegalStateException {
+        forEach0(consumer::accept);
+    }
+
+    @Override
+    public String toString() {
+        return "LongLongMap{" +
+                "size=" + size() +
+                ", capacity=" + capacity() +
+                '}';
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+}
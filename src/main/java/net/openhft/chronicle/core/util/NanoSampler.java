@@ -46,4 +46,23 @@ public interface NanoSampler {
      * @param durationNs The duration of the sample in nanoseconds. Must be non-negative.
      */
     void sampleNanos(long durationNs);
+
+    /**
+     * Wraps a sampler to correct for coordinated omission. A sample longer than the expected interval is passed on
+     * along with a sample for each one it delayed, shorter by one interval each time.
+     *
+     * @param sampler            to pass samples to
+     * @param expectedIntervalNs between samples
+     * @return a sampler which back-fills the samples a stall delayed
+     * @see Histogram#expectedIntervalNanos(long)
+     */
+    static NanoSampler withExpectedInterval(NanoSampler sampler, long expectedIntervalNs) {
+        if (expectedIntervalNs <= 0)
+            throw new IllegalArgumentException("expectedIntervalNs: " + expectedIntervalNs);
+        return durationNs -> {
+            sampler.sampleNanos(durationNs);
+            for (long missed = durationNs - expectedIntervalNs; missed >= expectedIntervalNs; missed -= expectedIntervalNs)
+                sampler.sampleNanos(missed);
+        };
+    }
 }
\ No newline at end of file
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.Maths;
+import net.openhft.chronicle.core.OS;
+import net.openhft.chronicle.core.io.AbstractCloseable;
+import net.openhft.chronicle.core.io.ClosedIllegalStateException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+
+/**
+ * A bounded queue of fixed size records held off heap, for one consumer and either one producer (SPSC) or many
+ * producers (MPSC). The buffer is either allocated with {@link net.openhft.chronicle.core.Memory#allocate(long)} or held
+ * in a memory mapped file with {@link #map(File, int, int, boolean)}, in which case the producers and the consumer can be in different processes.
+ * <p>
+ * Producers claim a run of sequences with {@link #tryClaim(int)}, write each record at {@link #recordAddress(long)}
+ * and then {@link #publish(long, int)} them. The consumer finds how many records are ready with {@link #readable(int)},
+ * reads them and then {@link #release(int)}s them to be reused. {@link #offer(long)}, {@link #poll(long)} and
+ * {@link #drain(RecordHandler, int)} wrap these for the common cases. None of these allocate.
+ * <p>
+ * The tail, claimed by producers, and the head, advanced by the consumer, are on their own cache lines. Each record is
+ * preceded by its sequence plus one, written when published, so the consumer stops at a record still being written
+ * even if later records have been published by other producers.
+ */
+public class RingBuffer extends AbstractCloseable {
+    private static final long MAGIC = 0x52696E6742756621L; // RingBuf!
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int RECORD_SIZE_OFFSET = 12;
+    private static final int MULTI_PRODUCER_OFFSET = 16;
+    // the tail and head are 128 bytes apart so the adjacent cache line prefetch doesn't share them either
+    private static final int TAIL_OFFSET = 128;
+    private static final int HEAD_OFFSET = 256;
+    static final int HEADER_SIZE = 384;
+    private static final int SEQUENCE_SIZE = 8;
+
+    private final int capacity;
+    private final int mask;
+    private final int recordSize;
+    private final int slotSize;
+    private final boolean multiProducer;
+    private final long address;
+    private final long tailAddress;
+    private final long headAddress;
+    private final long bytes;
+    @Nullable
+    private final RandomAccessFile raf;
+    // only used by a single producer
+    private long cachedHead;
+
+    /**
+     * Creates a ring buffer in native memory.
+     *
+     * @param capacity      the number of records, a power of 2
+     * @param recordSize    the size of each record in bytes, rounded up to a multiple of 8
+     * @param multiProducer whether more than one thread may produce at once
+     * @throws IllegalArgumentException if the capacity is not a power of 2, or the recordSize is not positive
+     */
+    public RingBuffer(int capacity, int recordSize, boolean multiProducer) throws IllegalArgumentException {
+        // validated before the super constructor registers this as a Closeable
+        this(validCapacity(capacity, recordSize), recordSize, multiProducer,
+                allocate(capacity, recordSize, multiProducer), null);
+    }
+
+    private RingBuffer(int capacity, int recordSize, boolean multiProducer, long address, @Nullable RandomAccessFile raf) {
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.recordSize = recordSize;
+        this.slotSize = SEQUENCE_SIZE + align8(recordSize);
+        this.multiProducer = multiProducer;
+        this.bytes = sizeFor(capacity, recordSize);
+        this.raf = raf;
+        this.address = address;
+        this.tailAddress = address + TAIL_OFFSET;
+        this.headAddress = address + HEAD_OFFSET;
+        this.cachedHead = MEMORY.readVolatileLong(headAddress);
+        singleThreadedCheckDisabled(true);
+    }
+
+    /**
+     * Creates a ring buffer in a memory mapped file, or opens the one already in it, so it can be shared with other
+     * processes.
+     *
+     * @param file          to map
+     * @param capacity      the number of records, a power of 2
+     * @param recordSize    the size of each record in bytes, rounded up to a multiple of 8
+     * @param multiProducer whether more than one thread may produce at once
+     * @return the ring buffer, which unmaps the file when closed
+     * @throws IllegalArgumentException if the capacity is not a power of 2, or the recordSize is not positive
+     * @throws IOException              if the file could not be mapped, or holds a ring buffer of a different shape
+     */
+    @NotNull
+    public static RingBuffer map(@NotNull File file, int capacity, int recordSize, boolean multiProducer) throws IllegalArgumentException, IOException {
+        validCapacity(capacity, recordSize);
+        final long bytes = sizeFor(capacity, recordSize);
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        long address = 0;
+        try {
+            if (raf.length() < bytes)
+                raf.setLength(bytes);
+            address = OS.map(raf.getChannel(), FileChannel.MapMode.READ_WRITE, 0, bytes);
+            if (MEMORY.readVolatileLong(address + MAGIC_OFFSET) == 0)
+                initialise(address, capacity, recordSize, multiProducer);
+            else
+                checkHeader(address, capacity, recordSize, multiProducer);
+            return new RingBuffer(capacity, recordSize, multiProducer, address, raf);
+        } catch (IOException | RuntimeException e) {
+            if (address != 0)
+                OS.unmap(address, bytes);
+            raf.close();
+            throw e;
+        }
+    }
+
+    private static long allocate(int capacity, int recordSize, boolean multiProducer) {
+        final long address = MEMORY.allocate(sizeFor(capacity, recordSize));
+        initialise(address, capacity, recordSize, multiProducer);
+        return address;
+    }
+
+    private static int validCapacity(int capacity, int recordSize) throws IllegalArgumentException {
+        if (capacity <= 0 || !Maths.isPowerOf2(capacity) || recordSize <= 0)
+            throw new IllegalArgumentException("capacity: " + capacity + " must be a power of 2, recordSize: " + recordSize + " must be positive");
+        return capacity;
+    }
+
+    /**
+     * @param capacity   the number of records
+     * @param recordSize the size of each record in bytes
+     * @return the bytes needed for a ring buffer of this shape
+     */
+    public static long sizeFor(int capacity, int recordSize) {
+        return HEADER_SIZE + (long) capacity * (SEQUENCE_SIZE + align8(recordSize));
+    }
+
+    private static int align8(int size) {
+        return (size + 7) & ~7;
+    }
+
+    private static void initialise(long address, int capacity, int recordSize, boolean multiProducer) {
+        MEMORY.setMemory(address, sizeFor(capacity, recordSize), (byte) 0);
+        MEMORY.writeInt(address + CAPACITY_OFFSET, capacity);
+        MEMORY.writeInt(address + RECORD_SIZE_OFFSET, recordSize);
+        MEMORY.writeInt(address + MULTI_PRODUCER_OFFSET, multiProducer ? 1 : 0);
+        // written last so another process doesn't use it before it's ready
+        MEMORY.writeOrderedLong(address + MAGIC_OFFSET, MAGIC);
+    }
+
+    private static void checkHeader(long address, int capacity, int recordSize, boolean multiProducer) throws IOException {
+        final long magic = MEMORY.readVolatileLong(address + MAGIC_OFFSET);
+        final int capacity2 = MEMORY.readInt(address + CAPACITY_OFFSET);
+        final int recordSize2 = MEMORY.readInt(address + RECORD_SIZE_OFFSET);
+        final boolean multiProducer2 = MEMORY.readInt(address + MULTI_PRODUCER_OFFSET) != 0;
+        if (magic != MAGIC || capacity2 != capacity || recordSize2 != recordSize || multiProducer2 != multiProducer)
+            throw new IOException("Expected a RingBuffer of capacity: " + capacity + ", recordSize: " + recordSize + ", multiProducer: " + multiProducer +
+                    " but found magic: " + Long.toHexString(magic) + ", capacity: " + capacity2 + ", recordSize: " + recordSize2 + ", multiProducer: " + multiProducer2);
+    }
+
+    /**
+     * @return the number of records the buffer holds
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the size of each record in bytes
+     */
+    public int recordSize() {
+        return recordSize;
+    }
+
+    /**
+     * @return whether more than one thread may produce at once
+     */
+    public boolean multiProducer() {
+        return multiProducer;
+    }
+
+    /**
+     * @return the number of records claimed and not yet released, which may include records not yet published
+     */
+    public long size() {
+        return MEMORY.readVolatileLong(tailAddress) - MEMORY.readVolatileLong(headAddress);
+    }
+
+    /**
+     * Claims the next {@code count} sequences if there is space for them.
+     *
+     * @param count the number of records to claim, up to the capacity
+     * @return the first sequence claimed, or -1 if there isn't space
+     * @throws ClosedIllegalStateException if the ring buffer has been closed
+     */
+    public long tryClaim(int count) throws ClosedIllegalStateException {
+        throwExceptionIfClosed();
+        assert count > 0 && count <= capacity;
+        if (multiProducer) {
+            for (; ; ) {
+                final long tail = MEMORY.readVolatileLong(tailAddress);
+                if (tail + count - MEMORY.readVolatileLong(headAddress) > capacity)
+                    return -1;
+                if (MEMORY.compareAndSwapLong(tailAddress, tail, tail + count))
+                    return tail;
+            }
+        }
+        final long tail = MEMORY.readLong(tailAddress);
+        if (tail + count - cachedHead > capacity) {
+            cachedHead = MEMORY.readVolatileLong(headAddress);
+            if (tail + count - cachedHead > capacity)
+                return -1;
+        }
+        MEMORY.writeOrderedLong(tailAddress, tail + count);
+        return tail;
+    }
+
+    /**
+     * @param sequence claimed or readable
+     * @return the address of the record for the sequence
+     */
+    public long recordAddress(long sequence) {
+        return slotAddress(sequence) + SEQUENCE_SIZE;
+    }
+
+    private long slotAddress(long sequence) {
+        return address + HEADER_SIZE + (sequence & mask) * slotSize;
+    }
+
+    /**
+     * Makes records written to claimed sequences visible to the consumer.
+     *
+     * @param sequence the first sequence returned by {@link #tryClaim(int)}
+     * @param count    the number of records to publish
+     */
+    public void publish(long sequence, int count) {
+        for (int i = 0; i < count; i++)
+            MEMORY.writeOrderedLong(slotAddress(sequence + i), sequence + i + 1);
+    }
+
+    /**
+     * Adds a record, writing the value in its first 8 bytes.
+     *
+     * @param value to add
+     * @return false if the buffer is full
+     * @throws ClosedIllegalStateException if the ring buffer has been closed
+     */
+    public boolean offer(long value) throws ClosedIllegalStateException {
+        assert recordSize >= 8;
+        final long sequence = tryClaim(1);
+        if (sequence < 0)
+            return false;
+        MEMORY.writeLong(recordAddress(sequence), value);
+        publish(sequence, 1);
+        return true;
+    }
+
+    /**
+     * @return the sequence of the next record for the consumer to read
+     */
+    public long head() {
+        return MEMORY.readLong(headAddress);
+    }
+
+    /**
+     * Finds how many records from {@link #head()} have been published, and so can be read by the consumer.
+     *
+     * @param limit the most records to look for
+     * @return the number of records which can be read
+     * @throws ClosedIllegalStateException if the ring buffer has been closed
+     */
+    public int readable(int limit) throws ClosedIllegalStateException {
+        throwExceptionIfClosed();
+        final long head = MEMORY.readLong(headAddress);
+        final int max = Math.min(limit, capacity);
+        int count = 0;
+        while (count < max && MEMORY.readVolatileLong(slotAddress(head + count)) == head + count + 1)
+            count++;
+        return count;
+    }
+
+    /**
+     * Releases records which have been read by the consumer so they can be reused.
+     *
+     * @param count the number of records read from {@link #head()}
+     */
+    public void release(int count) {
+        MEMORY.writeOrderedLong(headAddress, MEMORY.readLong(headAddress) + count);
+    }
+
+    /**
+     * Removes a record, reading the value in its first 8 bytes.
+     *
+     * @param emptyValue to return if there is no record
+     * @return the value, or the emptyValue if there was no record
+     * @throws ClosedIllegalStateException if the ring buffer has been closed
+     */
+    public long poll(long emptyValue) throws ClosedIllegalStateException {
+        assert recordSize >= 8;
+        if (readable(1) == 0)
+            return emptyValue;
+        final long value = MEMORY.readLong(recordAddress(head()));
+        release(1);
+        return value;
+    }
+
+    /**
+     * Passes up to {@code limit} records to the handler and releases them.
+     *
+     * @param handler called with the address of each record
+     * @param limit   the most records to read
+     * @return the number of records read
+     * @throws ClosedIllegalStateException if the ring buffer has been closed
+     */
+    public int drain(@NotNull RecordHandler handler, int limit) throws ClosedIllegalStateException {
+        final int count = readable(limit);
+        final long head = head();
+        for (int i = 0; i < count; i++)
+            handler.onRecord(recordAddress(head + i));
+        release(count);
+        return count;
+    }
+
+    @Override
+    protected void performClose() {
+        if (raf == null) {
+            MEMORY.freeMemory(address, bytes);
+            return;
+        }
+        try {
+            OS.unmap(address, bytes);
+        } catch (IOException e) {
+            Jvm.warn().on(RingBuffer.class, "Unable to unmap", e);
+        }
+        try {
+            raf.close();
+        } catch (IOException e) {
+            Jvm.warn().on(RingBuffer.class, "Unable to close the file", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RingBuffer{" +
+                "capacity=" + capacity +
+                ", recordSize=" + recordSize +
+                ", multiProducer=" + multiProducer +
+                ", size=" + (isClosed() ? 0 : size()) +
+                '}';
+    }
+
+    @FunctionalInterface
+    public interface RecordHandler {
+        /**
+         * @param address of the record
+         */
+        void onRecord(long address);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.values;
+
+import net.openhft.chronicle.core.io.QueryCloseable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+
+/**
+ * {@link LongArrayValues} held at an offset in an object, such as a {@code long[]}, or at a native address when the
+ * object is null, e.g. in memory mapped with {@link net.openhft.chronicle.core.OS#map}.
+ * <p>
+ * The layout is the capacity (8 bytes), the number used (8 bytes) and the values (8 bytes each) in native byte order,
+ * so another process mapping the same file can read the values with volatile loads.
+ * <p>
+ * This doesn't own the memory; it reports being closed when the owner of the memory is closed and must not be used
+ * after that. {@link #bindValueAt(long, LongValue)} moves a {@link MemoryLongValue} to an element, so one can be reused
+ * rather than creating one per element with {@link #valueAt(long)}.
+ */
+public class MemoryLongArrayValues implements LongArrayValues {
+    public static final int CAPACITY_OFFSET = 0;
+    public static final int USED_OFFSET = 8;
+    public static final int VALUES_OFFSET = 16;
+
+    @Nullable
+    private final Object base;
+    private final long offset;
+    private final long capacity;
+    @Nullable
+    private final QueryCloseable owner;
+
+    /**
+     * Uses an array previously written by {@link #initialise(Object, long, long)}.
+     *
+     * @param base   the object holding the array, or null if the offset is an address
+     * @param offset of the array in the object, or its address, aligned to 8 bytes
+     * @param owner  of the memory, or null if it is never released
+     */
+    public MemoryLongArrayValues(@Nullable Object base, long offset, @Nullable QueryCloseable owner) {
+        if ((offset & 7) != 0)
+            throw new IllegalArgumentException("offset: " + offset + " is not 8 byte aligned");
+        this.base = base;
+        this.offset = offset;
+        this.owner = owner;
+        this.capacity = MEMORY.readVolatileLong(base, offset + CAPACITY_OFFSET);
+    }
+
+    /**
+     * Writes the header of an empty array.
+     *
+     * @param base     the object to hold the array, or null if the offset is an address
+     * @param offset   of the array in the object, or its address, aligned to 8 bytes
+     * @param capacity of the array
+     */
+    public static void initialise(@Nullable Object base, long offset, long capacity) {
+        MEMORY.writeLong(base, offset + USED_OFFSET, 0);
+        MEMORY.writeOrderedLong(base, offset + CAPACITY_OFFSET, capacity);
+    }
+
+    /**
+     * @param capacity of the array
+     * @return the bytes needed for an array of this capacity including its header
+     */
+    public static long sizeFor(long capacity) {
+        return VALUES_OFFSET + capacity * 8;
+    }
+
+    /**
+     * @return the offset of the array in the object, or its address
+     */
+    public long offset() {
+        return offset;
+    }
+
+    private long valueOffset(long index) {
+        return offset + VALUES_OFFSET + index * 8;
+    }
+
+    private long readOffset(long index) throws BufferUnderflowException {
+        if (index < 0 || index >= capacity)
+            throw new BufferUnderflowException();
+        return valueOffset(index);
+    }
+
+    private long writeOffset(long index) throws BufferOverflowException {
+        if (index < 0 || index >= capacity)
+            throw new BufferOverflowException();
+        return valueOffset(index);
+    }
+
+    /**
+     * @param index of the value
+     * @return a LongValue for one element, e.g. to increment with {@link LongValue#addAtomicValue(long)}
+     * @throws BufferOverflowException if the index is out of bounds
+     */
+    @NotNull
+    public MemoryLongValue valueAt(long index) throws BufferOverflowException {
+        return new MemoryLongValue(base, writeOffset(index), owner);
+    }
+
+    /**
+     * Adds to the value at an index atomically.
+     *
+     * @param index of the value
+     * @param delta to add
+     * @return the new value
+     * @throws BufferOverflowException if the index is out of bounds
+     */
+    public long addAtomicValueAt(long index, long delta) throws BufferOverflowException {
+        return MEMORY.addLong(base, writeOffset(index), delta);
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getUsed() {
+        return MEMORY.readVolatileLong(base, offset + USED_OFFSET);
+    }
+
+    @Override
+    public void setUsed(long used) {
+        MEMORY.writeOrderedLong(base, offset + USED_OFFSET, used);
+    }
+
+    @Override
+    public void setMaxUsed(long usedAtLeast) {
+        for (long used; (used = getUsed()) < usedAtLeast; )
+            if (MEMORY.compareAndSwapLong(base, offset + USED_OFFSET, used, usedAtLeast))
+                return;
+    }
+
+    @Override
+    public long getValueAt(long index) throws BufferUnderflowException {
+        return MEMORY.readLong(base, readOffset(index));
+    }
+
+    @Override
+    public void setValueAt(long index, long value) throws BufferOverflowException {
+        MEMORY.writeLong(base, writeOffset(index), value);
+    }
+
+    @Override
+    public long getVolatileValueAt(long index) throws BufferUnderflowException {
+        return MEMORY.readVolatileLong(base, readOffset(index));
+    }
+
+    @Override
+    public void setOrderedValueAt(long index, long value) throws BufferOverflowException {
+        MEMORY.writeOrderedLong(base, writeOffset(index), value);
+    }
+
+    @Override
+    public boolean compareAndSet(long index, long expected, long value) throws BufferOverflowException {
+        return MEMORY.compareAndSwapLong(base, writeOffset(index), expected, value);
+    }
+
+    /**
+     * Moves a {@link MemoryLongValue} to the element at an index.
+     *
+     * @param index of the value
+     * @param value to move, which must be a MemoryLongValue
+     * @throws BufferOverflowException       if the index is out of bounds
+     * @throws UnsupportedOperationException if the value is not a MemoryLongValue
+     */
+    @Override
+    public void bindValueAt(long index, LongValue value) throws BufferOverflowException {
+        if (!(value instanceof MemoryLongValue))
+            throw new UnsupportedOperationException("Cannot bind a " + (value == null ? null : value.getClass().getName()) + ", only a MemoryLongValue");
+        ((MemoryLongValue) value).bind(base, writeOffset(index), owner);
+    }
+
+    @Override
+    public long sizeInBytes(long capacity) {
+        return sizeFor(capacity);
+    }
+
+    @Override
+    public boolean isNull() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        for (long i = 0; i < capacity; i++)
+            MEMORY.writeLong(base, valueOffset(i), 0);
+        setUsed(0);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return owner != null && owner.isClosed();
+    }
+
+    @Override
+    public void close() {
+        // the memory is released by its owner
+    }
+
+    @Override
+    public String toString() {
+        if (isClosed())
+            return "closed";
+        final StringBuilder sb = new StringBuilder("[");
+        for (long i = 0; i < capacity; i++) {
+            if (i > 0)
+                sb.append(", ");
+            sb.append(getVolatileValueAt(i));
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.values;
+
+import net.openhft.chronicle.core.io.QueryCloseable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+
+/**
+ * A {@link LongValue} held at an offset in an object, such as a {@code long[]}, or at a native address when the object
+ * is null, e.g. in memory mapped with {@link net.openhft.chronicle.core.OS#map}.
+ * <p>
+ * {@link #addValue(long)} is a plain read followed by an ordered write, suitable for a value with one writer, while
+ * {@link #addAtomicValue(long)} is safe for many writers. Neither allocates.
+ * <p>
+ * This doesn't own the memory; it reports being closed when the owner of the memory is closed and must not be used
+ * after that. It can be moved to another value with {@link MemoryLongArrayValues#bindValueAt(long, LongValue)}, which
+ * is not thread safe.
+ */
+public class MemoryLongValue implements LongValue {
+    @Nullable
+    private Object base;
+    private long offset;
+    @Nullable
+    private QueryCloseable owner;
+
+    /**
+     * @param base   the object holding the value, or null if the offset is an address
+     * @param offset of the value in the object, or its address, aligned to 8 bytes
+     * @param owner  of the memory, or null if it is never released
+     */
+    public MemoryLongValue(@Nullable Object base, long offset, @Nullable QueryCloseable owner) {
+        bind(base, offset, owner);
+    }
+
+    void bind(@Nullable Object base, long offset, @Nullable QueryCloseable owner) {
+        if ((offset & 7) != 0)
+            throw new IllegalArgumentException("offset: " + offset + " is not 8 byte aligned");
+        this.base = base;
+        this.offset = offset;
+        this.owner = owner;
+    }
+
+    /**
+     * @param values the array holding the value
+     * @param index  of the value in the array
+     * @return a LongValue for an element of the array
+     */
+    @NotNull
+    public static MemoryLongValue of(long @NotNull [] values, int index) {
+        if (index < 0 || index >= values.length)
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + values.length);
+        return new MemoryLongValue(values, MEMORY.arrayBaseOffset(long[].class) + index * 8L, null);
+    }
+
+    /**
+     * @return the offset of the value in the object, or its address
+     */
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public long getValue() {
+        return MEMORY.readLong(base, offset);
+    }
+
+    @Override
+    public void setValue(long value) {
+        MEMORY.writeLong(base, offset, value);
+    }
+
+    @Override
+    public long getVolatileValue() {
+        return MEMORY.readVolatileLong(base, offset);
+    }
+
+    @Override
+    public void setVolatileValue(long value) {
+        MEMORY.writeVolatileLong(base, offset, value);
+    }
+
+    @Override
+    public void setOrderedValue(long value) {
+        MEMORY.writeOrderedLong(base, offset, value);
+    }
+
+    @Override
+    public long addValue(long delta) {
+        final long value = MEMORY.readLong(base, offset) + delta;
+        MEMORY.writeOrderedLong(base, offset, value);
+        return value;
+    }
+
+    @Override
+    public long addAtomicValue(long delta) {
+        return MEMORY.addLong(base, offset, delta);
+    }
+
+    @Override
+    public boolean compareAndSwapValue(long expected, long value) {
+        return MEMORY.compareAndSwapLong(base, offset, expected, value);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return owner != null && owner.isClosed();
+    }
+
+    @Override
+    public String toString() {
+        return isClosed() ? "closed" : Long.toString(getVolatileValue());
+    }
+}
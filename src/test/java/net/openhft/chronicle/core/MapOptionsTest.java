@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core;
+
+import net.openhft.chronicle.core.io.IOTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MapOptionsTest extends CoreTestCommon {
+
+    @Test
+    public void requested() {
+        assertEquals(EnumSet.noneOf(MapOption.class), MapOptions.mapOptions().requested());
+        assertEquals(EnumSet.of(MapOption.HUGE_PAGES, MapOption.POPULATE, MapOption.RANDOM, MapOption.NUMA_NODE),
+                MapOptions.mapOptions()
+                        .hugePages(true)
+                        .populate(true)
+                        .advice(MapOption.RANDOM)
+                        .numaNode(0)
+                        .requested());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adviceMustBeAdvice() {
+        MapOptions.mapOptions().advice(MapOption.POPULATE);
+    }
+
+    @Test
+    public void parseCpuList() {
+        BitSet expected = new BitSet();
+        expected.set(0, 4);
+        expected.set(8);
+        expected.set(10, 12);
+        assertEquals(expected, OS.parseCpuList("0-3,8,10-11\n"));
+        assertTrue(OS.parseCpuList("").isEmpty());
+    }
+
+    @Test
+    public void mapPopulated() throws IOException {
+        File file = IOTools.createTempFile("mapPopulated");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final long size = 1 << 20;
+            raf.setLength(size);
+            final FileChannel fc = raf.getChannel();
+            final int pageSize = (int) OS.mapAlignment();
+            final long populated = OS.memoryMappedByOption().get(MapOption.POPULATE);
+
+            final long address = OS.map(fc, FileChannel.MapMode.READ_WRITE, 0, size, pageSize,
+                    MapOptions.mapOptions()
+                            .populate(true)
+                            .advice(MapOption.SEQUENTIAL));
+            try {
+                final Set<MapOption> applied = OS.mapOptionsApplied(address);
+                assertTrue(applied.contains(MapOption.POPULATE));
+                // madvise depends on the platform and posix library
+                assertTrue(MapOptions.mapOptions().populate(true).advice(MapOption.SEQUENTIAL).requested().containsAll(applied));
+                assertEquals(populated + size, (long) OS.memoryMappedByOption().get(MapOption.POPULATE));
+
+                OS.memory().writeLong(address + size - 8, 128);
+                assertEquals(128, OS.memory().readLong(address + size - 8));
+            } finally {
+                OS.unmap(address, size, pageSize);
+            }
+            assertTrue(OS.mapOptionsApplied(address).isEmpty());
+            assertEquals(populated, (long) OS.memoryMappedByOption().get(MapOption.POPULATE));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dontNeedAndPopulate() throws IOException {
+        File file = IOTools.createTempFile("dontNeedAndPopulate");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            OS.map(raf.getChannel(), FileChannel.MapMode.READ_WRITE, 0, 4096, (int) OS.mapAlignment(),
+                    MapOptions.mapOptions()
+                            .populate(true)
+                            .advice(MapOption.DONT_NEED));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core;
+
+import net.openhft.chronicle.core.io.IOTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.*;
+
+public class MappedPretoucherTest extends CoreTestCommon {
+
+    @Test
+    public void touchesAheadOfCursor() throws IOException {
+        File file = IOTools.createTempFile("touchesAheadOfCursor");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final int pageSize = OS.pageSize();
+            final long size = 64L * pageSize;
+            raf.setLength(size);
+            final long address = OS.map(raf.getChannel(), FileChannel.MapMode.READ_WRITE, 0, size);
+            try {
+                OS.memory().writeInt(address + pageSize, 12345);
+                final MappedPretoucher pretoucher = new MappedPretoucher("pretoucher~test", address, size, true, 16L * pageSize);
+                try {
+                    waitFor(pretoucher, 16L * pageSize);
+                    Jvm.pause(20);
+                    // doesn't go beyond the cursor + ahead
+                    assertEquals(16L * pageSize, pretoucher.touchedTo());
+                    assertEquals(16, pretoucher.pagesTouched());
+
+                    pretoucher.cursor(size - pageSize);
+                    waitFor(pretoucher, size);
+                    assertEquals(64, pretoucher.pagesTouched());
+                    assertTrue(pretoucher.faultTimeNanos() >= pretoucher.maxFaultNanos());
+                } finally {
+                    pretoucher.close();
+                }
+                // the data is unchanged
+                assertEquals(12345, OS.memory().readInt(address + pageSize));
+            } finally {
+                OS.unmap(address, size);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void rateLimited() {
+        final int pageSize = OS.pageSize();
+        final long size = 100L * pageSize;
+        final long address = OS.memory().allocate(size);
+        try {
+            final long start = System.nanoTime();
+            final MappedPretoucher pretoucher = new MappedPretoucher("pretoucher~rate", address, size, false, size, 1000, null);
+            try {
+                waitFor(pretoucher, size);
+            } finally {
+                pretoucher.close();
+            }
+            // 100 pages at 1000 per second
+            assertTrue(System.nanoTime() - start >= 80_000_000);
+        } finally {
+            OS.memory().freeMemory(address, size);
+        }
+    }
+
+    private static void waitFor(MappedPretoucher pretoucher, long touchedTo) {
+        final long end = System.currentTimeMillis() + 5_000;
+        while (pretoucher.touchedTo() < touchedTo) {
+            if (System.currentTimeMillis() > end)
+                fail("Timed out " + pretoucher);
+            Jvm.pause(1);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core;
+
+import net.openhft.chronicle.core.io.AbstractCloseable;
+import net.openhft.chronicle.core.io.IOTools;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.*;
+
+public class MappedRegionsTest extends CoreTestCommon {
+
+    @Test
+    public void mapAndUnmap() throws IOException {
+        File file = IOTools.createTempFile("mapAndUnmap");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final long size = OS.mapAlignment();
+            raf.setLength(size);
+            final long address = OS.map(raf.getChannel(), FileChannel.MapMode.READ_WRITE, 0, size);
+            final MappedRegion region = MappedRegions.region(address);
+            try {
+                assertNotNull(region);
+                assertEquals(size, region.size());
+                assertEquals(0, region.offset());
+                assertEquals(file.getAbsolutePath(), new File(region.file()).getAbsolutePath());
+                final String owner = Jvm.isResourceTracing() ? MappedRegionsTest.class.getName() : MappedRegion.UNKNOWN;
+                assertEquals(owner, region.owner());
+                assertEquals("READ_WRITE", region.mode());
+                assertTrue(MappedRegions.regions().contains(region));
+                // other mappings without resource tracing are also owned by "unknown"
+                if (Jvm.isResourceTracing())
+                    assertEquals(size, (long) MappedRegions.mappedBytesByOwner().get(owner));
+                else
+                    assertTrue(MappedRegions.mappedBytesByOwner().get(owner) >= size);
+                assertFalse(region.isClosed());
+            } finally {
+                OS.unmap(address, size);
+            }
+            assertTrue(region.isClosed());
+            assertNull(MappedRegions.region(address));
+            assertFalse(MappedRegions.regions().contains(region));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void leakedMappingIsReported() throws IOException {
+        File file = IOTools.createTempFile("leakedMappingIsReported");
+        AbstractCloseable.enableCloseableTracing();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final long size = OS.mapAlignment();
+            raf.setLength(size);
+            final long address = OS.map(raf.getChannel(), FileChannel.MapMode.READ_WRITE, 0, size);
+            final AssertionError e = assertThrows(AssertionError.class, AbstractCloseable::assertCloseablesClosed);
+            assertTrue(e.getSuppressed().length > 0);
+            assertTrue(e.getSuppressed()[0].getMessage().contains("MappedRegion"));
+            // the leaked mapping is unmapped
+            assertNull(MappedRegions.region(address));
+        } finally {
+            AbstractCloseable.disableCloseableTracing();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void mbean() throws Exception {
+        MappedRegions.registerMBean();
+        final ObjectName objectName = new ObjectName("net.openhft.chronicle.core:type=MappedRegions");
+        assertEquals(MappedRegions.regions().size(),
+                ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "Count"));
+    }
+}
@@ -22,8 +22,9 @@ import org.jetbrains.annotations.Nullable;
 import org.junit.Test;
 import sun.misc.Unsafe;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import java.util.Map;
+
+import static org.junit.Assert.*;
 
 public class MemoryTest extends CoreTestCommon {
 
@@ -61,4 +62,59 @@ public class MemoryTest extends CoreTestCommon {
         assertEquals(Unsafe.ARRAY_LONG_INDEX_SCALE, Memory.sizeOf(long.class));
         assertEquals(Unsafe.ARRAY_OBJECT_INDEX_SCALE, Memory.sizeOf(Long.class));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void nativeMemoryUsedByCaller() {
+        final UnsafeMemory memory = UnsafeMemory.INSTANCE;
+        final long nativeMemoryUsed = memory.nativeMemoryUsed();
+        final boolean track = memory.trackNativeMemoryByCaller();
+        final int sampleInterval = memory.callerSampleInterval();
+        memory.trackNativeMemoryByCaller(true);
+        // sample every allocation so the breakdown is exact
+        memory.callerSampleInterval(1);
+        try {
+            long address = memory.allocate(1000);
+            assertEquals(nativeMemoryUsed + 1000, memory.nativeMemoryUsed());
+            final Map<String, Long> byCaller = Jvm.usedNativeMemoryByCaller();
+            assertEquals(1000L, (long) byCaller.get(MemoryTest.class.getName()));
+
+            memory.freeMemory(address, 1000);
+            assertEquals(nativeMemoryUsed, memory.nativeMemoryUsed());
+            assertNull(Jvm.usedNativeMemoryByCaller().get(MemoryTest.class.getName()));
+        } finally {
+            memory.trackNativeMemoryByCaller(track);
+            memory.callerSampleInterval(sampleInterval);
+        }
+        assertTrue(track || Jvm.usedNativeMemoryByCaller().isEmpty());
+    }
+
+    @Test
+    public void nativeMemoryUsedByCallerIsSampled() {
+        final UnsafeMemory memory = UnsafeMemory.INSTANCE;
+        final boolean track = memory.trackNativeMemoryByCaller();
+        final int sampleInterval = memory.callerSampleInterval();
+        memory.trackNativeMemoryByCaller(true);
+        memory.callerSampleInterval(4);
+        final long[] addresses = new long[4000];
+        try {
+            for (int i = 0; i < addresses.length; i++)
+                addresses[i] = memory.allocate(100);
+            // each sample counts for 4 allocations, so the estimate is a multiple of 400 bytes close to the total
+            final long estimate = Jvm.usedNativeMemoryByCaller().get(MemoryTest.class.getName());
+            assertEquals(0, estimate % 400);
+            assertEquals(400_000, estimate, 100_000);
+
+            for (long address : addresses)
+                memory.freeMemory(address, 100);
+            assertNull(Jvm.usedNativeMemoryByCaller().get(MemoryTest.class.getName()));
+        } finally {
+            memory.trackNativeMemoryByCaller(track);
+            memory.callerSampleInterval(sampleInterval);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void callerSampleIntervalMustBePositive() {
+        UnsafeMemory.INSTANCE.callerSampleInterval(0);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core;
+
+import net.openhft.chronicle.core.io.ClosedIllegalStateException;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NativeArenaTest extends CoreTestCommon {
+
+    @Test
+    public void sizeClasses() {
+        assertEquals(16, NativeArena.blockSize(NativeArena.sizeClass(1)));
+        assertEquals(16, NativeArena.blockSize(NativeArena.sizeClass(16)));
+        assertEquals(32, NativeArena.blockSize(NativeArena.sizeClass(17)));
+        assertEquals(1024, NativeArena.blockSize(NativeArena.sizeClass(1000)));
+        assertEquals(64 << 10, NativeArena.blockSize(NativeArena.sizeClass(64 << 10)));
+    }
+
+    @Test
+    public void allocateAndReuse() {
+        final long nativeMemoryUsed = Jvm.usedNativeMemory();
+        NativeArena arena = new NativeArena("allocateAndReuse", 4096, 1024);
+        try {
+            long a = arena.allocate(100);
+            long b = arena.allocate(100);
+            assertNotEquals(a, b);
+            assertEquals(0, a % NativeArena.MIN_BLOCK_SIZE);
+            assertEquals(4096, arena.reservedBytes());
+            assertEquals(256, arena.usedBytes());
+            assertEquals(nativeMemoryUsed + 4096, Jvm.usedNativeMemory());
+
+            arena.free(a, 100);
+            assertEquals(128, arena.usedBytes());
+            // the same thread gets the block back
+            assertEquals(a, arena.allocate(120));
+
+            long large = arena.allocate(10_000);
+            assertEquals(4096 + 10_000, arena.reservedBytes());
+            arena.free(large, 10_000);
+            assertEquals(4096, arena.reservedBytes());
+            assertEquals(4, arena.allocations());
+            assertEquals(2, arena.frees());
+            assertTrue(NativeArena.arenas().contains(arena));
+        } finally {
+            arena.close();
+        }
+        assertFalse(NativeArena.arenas().contains(arena));
+        assertEquals(0, arena.reservedBytes());
+        assertEquals(nativeMemoryUsed, Jvm.usedNativeMemory());
+    }
+
+    @Test
+    public void newSlabWhenFull() {
+        NativeArena arena = new NativeArena("newSlabWhenFull", 1024, 256);
+        try {
+            Set<Long> addresses = new HashSet<>();
+            for (int i = 0; i < 20; i++) {
+                long address = arena.allocate(256);
+                touch(address, 256);
+                assertTrue(addresses.add(address));
+            }
+            assertEquals(5 * 1024, arena.reservedBytes());
+        } finally {
+            arena.close();
+        }
+    }
+
+    @Test(expected = ClosedIllegalStateException.class)
+    public void allocateAfterClose() {
+        NativeArena arena = new NativeArena("allocateAfterClose");
+        arena.close();
+        arena.allocate(8);
+    }
+
+    @Test
+    public void freeAfterClose() {
+        final long nativeMemoryUsed = Jvm.usedNativeMemory();
+        NativeArena arena = new NativeArena("freeAfterClose", 4096, 64);
+        // more than a thread caches, so some go to the shared free list
+        long[] addresses = new long[200];
+        for (int i = 0; i < addresses.length; i++)
+            addresses[i] = arena.allocate(64);
+        for (int i = 0; i < 100; i++)
+            arena.free(addresses[i], 64);
+        arena.close();
+        assertEquals(nativeMemoryUsed, Jvm.usedNativeMemory());
+        // ignored, rather than written to the released slabs
+        for (int i = 100; i < addresses.length; i++)
+            arena.free(addresses[i], 64);
+        assertEquals(0, arena.usedBytes());
+        assertEquals(200, arena.frees());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxBlockSizeNotPowerOf2() {
+        new NativeArena("maxBlockSizeNotPowerOf2", 4096, 1000);
+    }
+
+    @Test
+    public void multipleThreads() throws Exception {
+        NativeArena arena = new NativeArena("multipleThreads");
+        ExecutorService es = Executors.newFixedThreadPool(4, r -> new Thread(r, "arena~"));
+        try {
+            Future<?>[] futures = new Future[4];
+            for (int t = 0; t < futures.length; t++) {
+                final long value = t;
+                futures[t] = es.submit(() -> {
+                    long[] addresses = new long[100];
+                    for (int j = 0; j < 1000; j++) {
+                        for (int i = 0; i < addresses.length; i++) {
+                            addresses[i] = arena.allocate(8 + i);
+                            UnsafeMemory.MEMORY.writeLong(addresses[i], value);
+                        }
+                        for (int i = 0; i < addresses.length; i++) {
+                            assertEquals(value, UnsafeMemory.MEMORY.readLong(addresses[i]));
+                            arena.free(addresses[i], 8 + i);
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures)
+                future.get();
+            assertEquals(0, arena.usedBytes());
+            assertEquals(arena.allocations(), arena.frees());
+        } finally {
+            es.shutdown();
+            assertTrue(es.awaitTermination(1, TimeUnit.SECONDS));
+            arena.close();
+        }
+    }
+
+    private static void touch(long address, int length) {
+        UnsafeMemory.MEMORY.setMemory(address, length, (byte) 1);
+    }
+}
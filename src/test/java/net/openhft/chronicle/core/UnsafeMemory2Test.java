@@ -28,6 +28,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Random;
 
+import static net.openhft.chronicle.core.UnsafeMemory.IS_LITTLE_ENDIAN;
 import static net.openhft.chronicle.core.UnsafeMemory.UNSAFE;
 import static net.openhft.chronicle.core.UnsafeMemory.UNSAFE_COPY_THRESHOLD;
 import static org.junit.Assert.*;
@@ -181,6 +182,49 @@ public class UnsafeMemory2Test extends CoreTestCommon {
         UNSAFE.freeMemory(addr);
     }
 
+    @Test
+    public void firstNon7BitBytes() {
+        for (int i = 0; i <= 100; i++) {
+            byte[] bytes = new byte[i + 3];
+            assertEquals(i, memory.firstNon7Bit(bytes, 3, i));
+            for (int j = 0; j < i; j++) {
+                bytes[3 + j] = (byte) 0x80;
+                assertEquals(j, memory.firstNon7Bit(bytes, 3, i));
+                assertFalse(memory.is7Bit(bytes, 3, i));
+                bytes[3 + j] = '0';
+            }
+            assertTrue(memory.is7Bit(bytes, 3, i));
+        }
+    }
+
+    @Test
+    public void firstNon7BitChars() {
+        for (int i = 0; i <= 50; i++) {
+            char[] chars = new char[i + 1];
+            assertEquals(i, memory.firstNon7Bit(chars, 1, i));
+            for (int j = 0; j < i; j++) {
+                chars[1 + j] = 0x80;
+                assertEquals(j, memory.firstNon7Bit(chars, 1, i));
+                chars[1 + j] = 0x7F;
+            }
+        }
+    }
+
+    @Test
+    public void firstNon7BitAddr() {
+        final long addr = UNSAFE.allocateMemory(100);
+        UNSAFE.setMemory(addr, 100, (byte) 'a');
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(i, memory.firstNon7Bit(addr, i));
+            for (int j = 0; j < i; j++) {
+                memory.writeByte(addr + j, (byte) -1);
+                assertEquals(j, memory.firstNon7Bit(addr, i));
+                memory.writeByte(addr + j, (byte) 'a');
+            }
+        }
+        UNSAFE.freeMemory(addr);
+    }
+
     @Test
     public void partialReadBytes() {
         byte[] bytes = new byte[16];
@@ -270,6 +314,66 @@ public class UnsafeMemory2Test extends CoreTestCommon {
         memory.freeMemory(addr2, capacity);
     }
 
+    @Test
+    public void moveMemoryOverlapMoreThanThreshold() {
+        final long capacity = (int) (UNSAFE_COPY_THRESHOLD * 2.5d);
+        final int shift = 1000;
+        long addr = memory.allocate(capacity + shift);
+        for (int i = 0; i < capacity; i += 4)
+            memory.writeInt(addr + i, i);
+        memory.moveMemory(addr, addr + shift, capacity);
+        for (int i = 0; i < capacity; i += 4)
+            assertEquals(i, memory.readInt(addr + shift + i));
+        memory.moveMemory(addr + shift, addr, capacity);
+        for (int i = 0; i < capacity; i += 4)
+            assertEquals(i, memory.readInt(addr + i));
+        memory.freeMemory(addr, capacity + shift);
+    }
+
+    @Test
+    public void fillMemory() {
+        final int capacity = 37;
+        long addr = memory.allocate(capacity + 1);
+        for (int length = 0; length < capacity; length++) {
+            memory.setMemory(addr, capacity + 1, (byte) 0);
+            memory.fillMemory(addr, length, 0x0807060504030201L);
+            for (int i = 0; i < length; i++)
+                assertEquals(IS_LITTLE_ENDIAN ? i % 8 + 1 : 8 - i % 8, memory.readByte(addr + i));
+            assertEquals(0, memory.readByte(addr + length));
+        }
+        memory.fillMemory(addr, capacity, 0x7F7F7F7F7F7F7F7FL);
+        for (int i = 0; i < capacity; i++)
+            assertEquals(0x7F, memory.readByte(addr + i));
+        memory.freeMemory(addr, capacity + 1);
+    }
+
+    @Test
+    public void mismatchAndCompare() {
+        final int capacity = 1000;
+        long addr = memory.allocate(capacity);
+        long addr2 = memory.allocate(capacity);
+        for (int i = 0; i < capacity; i++) {
+            memory.writeByte(addr + i, (byte) i);
+            memory.writeByte(addr2 + i, (byte) i);
+        }
+        for (int length = 0; length <= capacity; length += 7) {
+            assertEquals(-1, memory.mismatch(addr, addr2, length));
+            assertEquals(0, memory.compareMemory(addr, addr2, length));
+            assertTrue(memory.isEqual(addr, addr2, length));
+        }
+        for (int i = 0; i < capacity; i++) {
+            memory.writeByte(addr2 + i, (byte) ~i);
+            assertEquals(i, memory.mismatch(addr, addr2, capacity));
+            assertEquals(-1, memory.mismatch(addr, addr2, i));
+            assertFalse(memory.isEqual(addr, addr2, i + 1));
+            final int expected = Integer.compare(i & 0xFF, ~i & 0xFF);
+            assertEquals(expected, Integer.signum(memory.compareMemory(addr, addr2, capacity)));
+            memory.writeByte(addr2 + i, (byte) i);
+        }
+        memory.freeMemory(addr, capacity);
+        memory.freeMemory(addr2, capacity);
+    }
+
     @Test
     public void address() {
         assertNotEquals(0, memory.address(ByteBuffer.allocateDirect(32)));
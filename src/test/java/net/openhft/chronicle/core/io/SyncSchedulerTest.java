@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.io;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.OS;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SyncSchedulerTest extends CoreTestCommon {
+    private final List<long[]> msyncs = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void coalescesRanges() {
+        final int pageSize = OS.pageSize();
+        final long base = 1L << 30;
+        try (SyncScheduler scheduler = new SyncScheduler("sync~coalesce", 0, 0, (a, l) -> msyncs.add(new long[]{a, l}))) {
+            scheduler.markDirty(base + 10, 20);
+            scheduler.markDirty(base + pageSize + 100, 8);
+            scheduler.markDirty(base + 4L * pageSize, pageSize + 1);
+            scheduler.markDirty(base + 2L * pageSize - 1, 2);
+            SortedMap<Long, Long> ranges = scheduler.dirtyRanges();
+            assertEquals(2, ranges.size());
+            assertEquals(base + 3L * pageSize, (long) ranges.get(base));
+            assertEquals(base + 6L * pageSize, (long) ranges.get(base + 4L * pageSize));
+            assertEquals(5L * pageSize, scheduler.dirtyBytes());
+            assertTrue(msyncs.isEmpty());
+
+            scheduler.barrier();
+            assertEquals(2, msyncs.size());
+            assertEquals(base, msyncs.get(0)[0]);
+            assertEquals(3L * pageSize, msyncs.get(0)[1]);
+            assertEquals(0, scheduler.dirtyBytes());
+            assertEquals(5L * pageSize, scheduler.bytesSynced());
+        }
+    }
+
+    @Test
+    public void coalescesSyncables() {
+        AtomicInteger count = new AtomicInteger();
+        Syncable syncable = count::incrementAndGet;
+        try (SyncScheduler scheduler = new SyncScheduler("sync~syncables", 0, 0, (a, l) -> msyncs.add(new long[]{a, l}))) {
+            for (int i = 0; i < 10; i++)
+                scheduler.sync(syncable);
+            scheduler.barrier();
+            assertEquals(1, count.get());
+            assertEquals(1, scheduler.syncs());
+            assertEquals(1, scheduler.batches());
+        }
+    }
+
+    @Test
+    public void flushOnTimeAndBytes() {
+        AtomicInteger count = new AtomicInteger();
+        try (SyncScheduler scheduler = new SyncScheduler("sync~policies", 10, 4L * OS.pageSize(), (a, l) -> msyncs.add(new long[]{a, l}))) {
+            scheduler.sync(count::incrementAndGet);
+            for (int i = 0; i < 100 && count.get() == 0; i++)
+                Jvm.pause(5);
+            assertEquals(1, count.get());
+
+            scheduler.markDirty(1L << 30, 4L * OS.pageSize());
+            for (int i = 0; i < 100 && msyncs.isEmpty(); i++)
+                Jvm.pause(1);
+            assertEquals(1, msyncs.size());
+        }
+    }
+
+    @Test
+    public void flushOnClose() {
+        AtomicInteger count = new AtomicInteger();
+        SyncScheduler scheduler = new SyncScheduler("sync~close", 0, 0, (a, l) -> msyncs.add(new long[]{a, l}));
+        scheduler.sync(count::incrementAndGet);
+        scheduler.close();
+        assertEquals(1, count.get());
+    }
+
+    @Test(timeout = 10_000L)
+    public void closedBySyncable() {
+        AtomicInteger count = new AtomicInteger();
+        SyncScheduler[] scheduler = {null};
+        scheduler[0] = new SyncScheduler("sync~closedBySyncable", 0, 0, (a, l) -> msyncs.add(new long[]{a, l}));
+        scheduler[0].sync(() -> {
+            scheduler[0].close();
+            count.incrementAndGet();
+        });
+        scheduler[0].barrier();
+        assertTrue(scheduler[0].isClosed());
+        assertEquals(1, count.get());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.metrics;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.io.IOTools;
+import net.openhft.chronicle.core.util.ConcurrentHistogram;
+import net.openhft.chronicle.core.values.LongValue;
+import net.openhft.chronicle.core.values.MemoryLongArrayValues;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest extends CoreTestCommon {
+
+    @Test
+    public void countersAndGauges() {
+        try (MetricsRegistry registry = new MetricsRegistry(8)) {
+            LongValue requests = registry.counter("requests");
+            LongValue depth = registry.gauge("queue.depth");
+            assertSame(requests, registry.counter("requests"));
+            for (int i = 0; i < 10; i++)
+                requests.addAtomicValue(1);
+            depth.setOrderedValue(42);
+
+            assertEquals(2, registry.size());
+            assertEquals(MetricType.COUNTER, registry.type("requests"));
+            assertEquals(MetricType.GAUGE, registry.type("queue.depth"));
+            assertNull(registry.type("unknown"));
+            assertEquals("{requests=10, queue.depth=42}", registry.snapshot().toString());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void typeMismatch() {
+        try (MetricsRegistry registry = new MetricsRegistry(8)) {
+            registry.counter("requests");
+            registry.gauge("requests");
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void full() {
+        try (MetricsRegistry registry = new MetricsRegistry(2)) {
+            registry.counter("a");
+            registry.counter("b");
+            registry.counter("c");
+        }
+    }
+
+    @Test
+    public void histogramGauges() {
+        try (MetricsRegistry registry = new MetricsRegistry(8)) {
+            ConcurrentHistogram latency = registry.histogram("latency");
+            assertSame(latency, registry.histogram("latency"));
+            for (int i = 1; i <= 1000; i++)
+                latency.sampleNanos(i * 1000L);
+            registry.updateHistograms();
+
+            assertEquals(6, registry.size());
+            assertEquals(1000, registry.gauge("latency.count").getVolatileValue());
+            assertEquals(500_000, registry.gauge("latency.p50").getVolatileValue(), 500_000 / 10);
+            assertEquals(1_000_000, registry.gauge("latency.max").getVolatileValue(), 1_000_000 / 10);
+        }
+    }
+
+    @Test
+    public void histogramClashRegistersNoGauges() {
+        try (MetricsRegistry registry = new MetricsRegistry(16)) {
+            registry.counter("latency.p99");
+            try {
+                registry.histogram("latency");
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // latency.p99 is a counter
+            }
+            assertEquals(1, registry.size());
+            assertNull(registry.type("latency.count"));
+        }
+    }
+
+    @Test
+    public void readMappedFile() throws IOException {
+        final File file = IOTools.createTempFile("readMappedFile");
+        try (MetricsRegistry registry = MetricsRegistry.map(file, 16)) {
+            LongValue requests = registry.counter("requests");
+            requests.addAtomicValue(5);
+
+            try (MetricsReader reader = MetricsReader.map(file)) {
+                assertEquals(16, reader.capacity());
+                assertEquals(1, reader.size());
+                assertEquals("requests", reader.name(0));
+                assertEquals(MetricType.COUNTER, reader.type(0));
+                assertEquals(5, reader.value("requests", -1));
+                assertEquals(-1, reader.value("errors", -1));
+
+                // registered after the reader was opened
+                registry.gauge("errors").setOrderedValue(3);
+                requests.addAtomicValue(1);
+                assertEquals(2, reader.size());
+                assertEquals(3, reader.value("errors", -1));
+                assertEquals(6, reader.value(0));
+            }
+        }
+        // reopening keeps the metrics registered
+        try (MetricsRegistry registry = MetricsRegistry.map(file, 16)) {
+            assertEquals(2, registry.size());
+            assertEquals(6, registry.counter("requests").getValue());
+        }
+        try {
+            MetricsRegistry.map(file, 8).close();
+            fail();
+        } catch (IOException expected) {
+            // different capacity
+        }
+    }
+
+    @Test
+    public void arraysInMappedFile() throws IOException {
+        final File file = IOTools.createTempFile("arraysInMappedFile");
+        try (MetricsRegistry registry = MetricsRegistry.map(file, 16)) {
+            registry.counter("requests").addAtomicValue(2);
+            // 16 + 10 * 8 bytes takes two slots
+            MemoryLongArrayValues partitions = registry.counters("partition.messages", 10);
+            assertSame(partitions, registry.counters("partition.messages", 10));
+            assertEquals(10, partitions.getCapacity());
+            partitions.addAtomicValueAt(3, 7);
+            partitions.valueAt(9).addAtomicValue(1);
+            registry.gauge("depth").setOrderedValue(4);
+            try {
+                registry.counters("partition.messages", 5);
+                fail();
+            } catch (IllegalArgumentException expected) {
+                // different length
+            }
+
+            try (MetricsReader reader = MetricsReader.map(file)) {
+                assertEquals(3, reader.size());
+                assertEquals(MetricType.COUNTER_ARRAY, reader.type(1));
+                assertEquals(10, reader.length(1));
+                assertEquals(7, reader.value(1, 3));
+                assertEquals(1, reader.value(1, 9));
+                assertEquals(4, reader.value("depth", -1));
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                MetricsReaderMain.print(reader, new PrintStream(out, true));
+                assertEquals("requests 2\n" +
+                                "partition.messages[0] 0\n" +
+                                "partition.messages[1] 0\n" +
+                                "partition.messages[2] 0\n" +
+                                "partition.messages[3] 7\n" +
+                                "partition.messages[4] 0\n" +
+                                "partition.messages[5] 0\n" +
+                                "partition.messages[6] 0\n" +
+                                "partition.messages[7] 0\n" +
+                                "partition.messages[8] 0\n" +
+                                "partition.messages[9] 1\n" +
+                                "depth 4\n",
+                        out.toString());
+            }
+        }
+        try (MetricsRegistry registry = MetricsRegistry.map(file, 16)) {
+            assertEquals(7, registry.counters("partition.messages", 10).getVolatileValueAt(3));
+            assertEquals(4, registry.gauge("depth").getVolatileValue());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static net.openhft.chronicle.core.threads.Pauser.Phase.*;
+import static org.junit.Assert.*;
+
+public class BackoffPauserTest extends CoreTestCommon {
+
+    @Test
+    public void spinsThenYieldsThenParksLonger() {
+        final AtomicLong time = new AtomicLong(1_000_000);
+        final BackoffPauser pauser = new BackoffPauser(300, 200, 1_000, 3_000, time::get);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, pauser.parkNanos());
+            pauser.pause();
+            time.addAndGet(100);
+        }
+        assertEquals(3, pauser.count(SPIN));
+        assertEquals(2, pauser.count(YIELD));
+        assertEquals(300, pauser.timeNanos(SPIN));
+
+        assertEquals(1_000, pauser.parkNanos());
+        pauser.pause();
+        assertEquals(2_000, pauser.parkNanos());
+        pauser.pause();
+        assertEquals(3_000, pauser.parkNanos());
+        pauser.pause();
+        assertEquals(3_000, pauser.parkNanos());
+        assertEquals(3, pauser.count(PARK));
+        assertEquals(200, pauser.timeNanos(YIELD));
+        // recorded when the loop stops parking
+        assertEquals(0, pauser.timeNanos(PARK));
+
+        time.addAndGet(10_000);
+        pauser.reset();
+        assertEquals(0, pauser.parkNanos());
+        assertEquals(10_000, pauser.timeNanos(PARK));
+
+        // the next idle period starts from spinning
+        pauser.pause();
+        assertEquals(4, pauser.count(SPIN));
+        assertEquals(0, pauser.parkNanos());
+    }
+
+    @Test
+    public void unpauseWakesAPark() throws InterruptedException {
+        final BackoffPauser pauser = new BackoffPauser(0, 0, TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(10));
+        final Thread thread = new Thread(pauser::pause, "unpauseWakesAPark");
+        thread.start();
+        final long start = System.nanoTime();
+        while (thread.isAlive() && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+            pauser.unpause();
+            thread.join(1);
+        }
+        assertFalse(thread.isAlive());
+        assertEquals(1, pauser.count(PARK));
+    }
+
+    @Test
+    public void unpauseJustBeforeAParkIsNotLost() throws InterruptedException {
+        final BackoffPauser pauser = new BackoffPauser(0, 0, TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(10));
+        // as the loop does after an iteration with work
+        pauser.reset();
+        // clear any permit left by an earlier test
+        LockSupport.parkNanos(1);
+        final Thread thread = new Thread(pauser::unpause, "unpauseJustBeforeAPark");
+        thread.start();
+        thread.join();
+        final long start = System.nanoTime();
+        pauser.pause();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void ofDescription() {
+        assertSame(Pauser.busy(), Pauser.of("busy"));
+        assertTrue(Pauser.of(" balanced ") instanceof BackoffPauser);
+        assertTrue(Pauser.of("sleepy").toString().startsWith("BackoffPauser{spinNanos=0, yieldNanos=50000, minParkNanos=500000, maxParkNanos=100000000"));
+        assertTrue(Pauser.of("1, 2,3,40").toString().startsWith("BackoffPauser{spinNanos=1000, yieldNanos=2000, minParkNanos=3000, maxParkNanos=40000"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ofUnknown() {
+        Pauser.of("lazy");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxLessThanMin() {
+        new BackoffPauser(0, 0, 2_000, 1_000);
+    }
+}
@@ -10,6 +10,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -128,4 +129,84 @@ class CancellableTimerTest extends CoreTestCommon {
         assertThrows(InvalidEventHandlerException.class, () -> scheduledEventHandler.action());
         verifyNoInteractions(runnable);
     }
-}
\ No newline at end of file
+
+    @Test
+    void fixedRateCatchesUpWithoutDrift() throws InvalidEventHandlerException {
+        final long start = 1_000_000_000L;
+        timeProvider.currentTimeNanos(start);
+        final int[] calls = {0};
+        timer.scheduleAtFixedRate(() -> {
+            calls[0]++;
+            return false;
+        }, 100, 100, TimeUnit.MICROSECONDS);
+
+        // due at 100 and 200 us, both are made up
+        timeProvider.currentTimeNanos(start + 250_000);
+        scheduledEventHandler.action();
+        scheduledEventHandler.action();
+        scheduledEventHandler.action();
+        assertEquals(2, calls[0]);
+
+        // still due at 300 us, not 350 us
+        timeProvider.currentTimeNanos(start + 299_999);
+        scheduledEventHandler.action();
+        assertEquals(2, calls[0]);
+        timeProvider.currentTimeNanos(start + 300_000);
+        scheduledEventHandler.action();
+        assertEquals(3, calls[0]);
+    }
+
+    @Test
+    void millisecondPeriodIsMeasuredFromTheStartOfTheCall() throws InvalidEventHandlerException {
+        final long start = 1_000_000_000L;
+        timeProvider.currentTimeMillis(start);
+        final int[] calls = {0};
+        timer.scheduleAtFixedRate(() -> {
+            calls[0]++;
+            // the call takes 5 ms
+            timeProvider.advanceMillis(5);
+            return false;
+        }, 10, 10);
+
+        timeProvider.currentTimeMillis(start + 10);
+        scheduledEventHandler.action();
+        assertEquals(1, calls[0]);
+
+        // due every 10 ms, not 15 ms
+        timeProvider.currentTimeMillis(start + 19);
+        scheduledEventHandler.action();
+        assertEquals(1, calls[0]);
+        timeProvider.currentTimeMillis(start + 20);
+        scheduledEventHandler.action();
+        assertEquals(2, calls[0]);
+        timeProvider.currentTimeMillis(start + 30);
+        scheduledEventHandler.action();
+        assertEquals(3, calls[0]);
+    }
+
+    @Test
+    void fixedDelayIsMeasuredFromTheEndOfTheCall() throws InvalidEventHandlerException {
+        final long start = 1_000_000_000L;
+        timeProvider.currentTimeNanos(start);
+        final int[] calls = {0};
+        timer.scheduleWithFixedDelay(() -> {
+            calls[0]++;
+            // the call takes 30 us
+            timeProvider.advanceMicros(30);
+            return false;
+        }, 100, 100, TimeUnit.MICROSECONDS);
+
+        timeProvider.currentTimeNanos(start + 250_000);
+        scheduledEventHandler.action();
+        scheduledEventHandler.action();
+        assertEquals(1, calls[0]);
+
+        // the call ended at 280 us so the next is due at 380 us
+        timeProvider.currentTimeNanos(start + 379_999);
+        scheduledEventHandler.action();
+        assertEquals(1, calls[0]);
+        timeProvider.currentTimeNanos(start + 380_000);
+        scheduledEventHandler.action();
+        assertEquals(2, calls[0]);
+    }
+}
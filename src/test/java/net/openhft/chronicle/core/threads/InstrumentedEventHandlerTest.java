@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.util.Histogram;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InstrumentedEventHandlerTest extends CoreTestCommon {
+
+    @Test
+    public void countsAndSamples() throws InvalidEventHandlerException {
+        final int[] calls = {0};
+        InstrumentedEventHandler handler = new InstrumentedEventHandler(() -> ++calls[0] % 4 == 0, "every4th", 10);
+        assertEquals(16, handler.sampleInterval());
+        for (int i = 0; i < 1000; i++)
+            handler.action();
+
+        assertEquals(1000, calls[0]);
+        assertEquals(1000, handler.invocations());
+        assertEquals(250, handler.busy());
+        assertEquals(0.25, handler.busyRatio(), 0.0);
+        Histogram histogram = handler.actionNanos(new Histogram());
+        // calls 0, 16, 32 ... 992
+        assertEquals(63, histogram.totalCount());
+        assertTrue(handler.actionNanosEstimate() > 0);
+    }
+
+    @Test
+    public void delegatesToHandler() throws Exception {
+        final List<String> events = new ArrayList<>();
+        class Handler implements EventHandler, Closeable {
+            @Override
+            public boolean action() {
+                events.add("action");
+                return false;
+            }
+
+            @Override
+            public void loopStarted() {
+                events.add("loopStarted");
+            }
+
+            @Override
+            public void loopFinished() {
+                events.add("loopFinished");
+            }
+
+            @Override
+            public HandlerPriority priority() {
+                return HandlerPriority.HIGH;
+            }
+
+            @Override
+            public void close() {
+                events.add("close");
+            }
+        }
+        final List<EventHandler> added = new ArrayList<>();
+        InstrumentedEventLoop loop = new InstrumentedEventLoop(new CollectingEventLoop(added), 1);
+        loop.addHandler(new Handler());
+
+        assertEquals(1, added.size());
+        InstrumentedEventHandler instrumented = (InstrumentedEventHandler) added.get(0);
+        assertEquals("Handler", instrumented.name());
+        assertEquals(HandlerPriority.HIGH, instrumented.priority());
+        instrumented.loopStarted();
+        instrumented.action();
+
+        assertEquals(1, loop.handlers().size());
+        final String report = loop.report();
+        assertTrue(report, report.startsWith("handler "));
+        assertTrue(report, report.contains("\nHandler "));
+
+        instrumented.loopFinished();
+        instrumented.close();
+        assertEquals("[loopStarted, action, loopFinished, close]", events.toString());
+        assertEquals(0, loop.handlers().size());
+        loop.close();
+    }
+
+    @Test
+    public void removedHandlersAreNotReported() throws IOException {
+        final List<EventHandler> added = new ArrayList<>();
+        InstrumentedEventLoop loop = new InstrumentedEventLoop(new CollectingEventLoop(added), 1);
+        loop.addHandler("finished", () -> false);
+        loop.addHandler("closed", () -> false);
+        loop.addHandler("running", () -> false);
+        added.get(0).loopFinished();
+        ((Closeable) added.get(1)).close();
+
+        assertEquals(1, loop.handlers().size());
+        assertEquals("running", loop.handlers().get(0).name());
+        final String report = loop.report();
+        assertTrue(report, report.contains("\nrunning "));
+        assertFalse(report, report.contains("finished"));
+        assertFalse(report, report.contains("closed"));
+        loop.close();
+    }
+
+    static final class CollectingEventLoop implements EventLoop {
+        private final List<EventHandler> handlers;
+
+        CollectingEventLoop(List<EventHandler> handlers) {
+            this.handlers = handlers;
+        }
+
+        @Override
+        public String name() {
+            return "collecting";
+        }
+
+        @Override
+        public void addHandler(EventHandler handler) {
+            handlers.add(handler);
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void unpause() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public boolean isAlive() {
+            return false;
+        }
+
+        @Override
+        public boolean isStopped() {
+            return false;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.Jvm;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PauseMonitorTest extends CoreTestCommon {
+
+    @Test
+    public void classify() {
+        try (PauseMonitor monitor = new PauseMonitor("classify~", TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(10), 16)) {
+            monitor.record(1_000, 2_000, PauseCause.GC);
+            monitor.record(5_000, 6_000, PauseCause.SAFEPOINT);
+            monitor.record(8_000, 9_000, PauseCause.OS);
+
+            assertEquals(PauseCause.GC, monitor.classify(900, 2_100));
+            assertEquals(PauseCause.SAFEPOINT, monitor.classify(4_500, 6_000));
+            assertEquals(PauseCause.OS, monitor.classify(8_000, 9_500));
+            // the pause covers less than half the stall
+            assertEquals(PauseCause.APPLICATION, monitor.classify(1_000, 4_000));
+            assertEquals(PauseCause.APPLICATION, monitor.classify(10_000, 20_000));
+
+            assertEquals(3, monitor.pauses().size());
+            assertEquals(1, monitor.count(PauseCause.GC));
+            assertEquals(1_000, monitor.totalNanos(PauseCause.OS));
+        }
+    }
+
+    @Test
+    public void classifyLateGcNotification() {
+        try (PauseMonitor monitor = new PauseMonitor("classifyLateGc~", TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(10), 16)) {
+            monitor.record(1_000, 2_000, PauseCause.OS);
+            monitor.record(5_000, 6_000, PauseCause.OS);
+            // notified after the later hiccup was recorded
+            monitor.record(3_000, 4_000, PauseCause.GC);
+            monitor.record(8_000, 9_000, PauseCause.SAFEPOINT);
+
+            assertEquals(PauseCause.GC, monitor.classify(3_000, 4_500));
+            // older hiccups are still seen past the GC
+            assertEquals(PauseCause.OS, monitor.classify(900, 2_100));
+            assertEquals(PauseCause.SAFEPOINT, monitor.classify(7_900, 9_000));
+        }
+    }
+
+    @Test
+    public void keepsTheMostRecent() {
+        try (PauseMonitor monitor = new PauseMonitor("keepsTheMostRecent~", TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(10), 2)) {
+            for (int i = 0; i < 5; i++)
+                monitor.record(i * 10, i * 10 + 5, PauseCause.OS);
+            assertEquals("[OS 0 us, OS 0 us]", monitor.pauses().toString());
+            assertEquals(30, monitor.pauses().get(0).startNanos());
+            assertEquals(5, monitor.count(PauseCause.OS));
+            assertEquals(PauseCause.APPLICATION, monitor.classify(0, 5));
+        }
+    }
+
+    @Test
+    public void gcNotification() {
+        try (PauseMonitor monitor = new PauseMonitor("gcNotification~")) {
+            System.gc();
+            for (int i = 0; i < 50 && monitor.count(PauseCause.GC) == 0; i++)
+                Jvm.pause(100);
+            assertTrue(monitor.toString(), monitor.count(PauseCause.GC) > 0);
+        }
+    }
+
+    @Test
+    public void stallProfilerClassifiesSamples() throws IOException {
+        try (PauseMonitor pauses = new PauseMonitor("stallProfilerClassifiesSamples~", TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(10), 16);
+             StallProfiler profiler = new StallProfiler("stallProfilerClassifiesSamples~", TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.DAYS.toNanos(1), null, 0)
+                     .pauseMonitor(pauses)) {
+            StallProfiler.Monitor monitor = profiler.monitorCurrentThread();
+            monitor.atStage("gc");
+            final long now = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+            pauses.record(now - TimeUnit.MILLISECONDS.toNanos(10), now, PauseCause.GC);
+            assertTrue(profiler.sample(monitor, now));
+            profiler.classifyPending(now, true);
+
+            StringBuilder sb = new StringBuilder();
+            profiler.writeReport(sb);
+            assertTrue(sb.toString(), sb.toString().contains(" ms, GC 1, samples 1\n"));
+            assertEquals(1, MonitorProfileAnalyserMain.samplesOf("thread has blocked for 10 ms, GC 1, samples 1"));
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.io.ClosedIllegalStateException;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+public class PriorityEventLoopTest extends CoreTestCommon {
+
+    private static void waitFor(@NotNull AtomicInteger counter, int atLeast) {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (counter.get() < atLeast) {
+            assertTrue("Timed out waiting for " + atLeast + " got " + counter.get(), System.nanoTime() < end);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    @Test
+    public void prioritiesRunOnTheirThreads() {
+        final Map<HandlerPriority, String> threads = new ConcurrentHashMap<>();
+        final Map<HandlerPriority, Boolean> insideCoreLoop = new ConcurrentHashMap<>();
+        final AtomicInteger ran = new AtomicInteger();
+        try (PriorityEventLoop loop = new PriorityEventLoop("priorities")) {
+            for (HandlerPriority priority : HandlerPriority.values()) {
+                loop.addHandler(new CountingHandler(priority) {
+                    @Override
+                    public boolean action() throws InvalidEventHandlerException {
+                        threads.put(priority, Thread.currentThread().getName());
+                        insideCoreLoop.put(priority, loop.runsInsideCoreLoop() && EventLoop.inEventLoop());
+                        ran.incrementAndGet();
+                        throw InvalidEventHandlerException.reusable();
+                    }
+                });
+            }
+            // nothing runs before start
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+            assertEquals(0, ran.get());
+            assertFalse(loop.isAlive());
+
+            loop.start();
+            waitFor(ran, HandlerPriority.values().length);
+            assertTrue(loop.isAlive());
+        }
+        for (HandlerPriority priority : HandlerPriority.values()) {
+            final String expected;
+            switch (priority.alias()) {
+                case MONITOR:
+                    expected = "priorities~monitor";
+                    break;
+                case BLOCKING:
+                    expected = "priorities~blocking-1";
+                    break;
+                default:
+                    expected = "priorities";
+                    break;
+            }
+            assertEquals(priority.toString(), expected, threads.get(priority));
+            assertEquals(priority.toString(), expected.equals("priorities"), insideCoreLoop.get(priority));
+        }
+    }
+
+    @Test
+    public void mediumRunsLessOftenThanBusyHigh() {
+        final CountingHandler medium = new CountingHandler(HandlerPriority.MEDIUM);
+        final CountingHandler daemon = new CountingHandler(HandlerPriority.DAEMON);
+        final AtomicInteger mediumWhileHighBusy = new AtomicInteger();
+        final AtomicInteger daemonWhileHighBusy = new AtomicInteger();
+        final CountingHandler high = new CountingHandler(HandlerPriority.HIGH) {
+            @Override
+            public boolean action() throws InvalidEventHandlerException {
+                if (actions.incrementAndGet() >= 40_000) {
+                    mediumWhileHighBusy.set(medium.actions.get());
+                    daemonWhileHighBusy.set(daemon.actions.get());
+                    throw InvalidEventHandlerException.reusable();
+                }
+                return true;
+            }
+        };
+        try (PriorityEventLoop loop = new PriorityEventLoop("mediumRunsLessOften", Pauser.busy(), null)) {
+            loop.addHandler(high);
+            loop.addHandler(medium);
+            loop.addHandler(daemon);
+            loop.start();
+            waitFor(high.finished, 1);
+            assertEquals(10_000 - 1, mediumWhileHighBusy.get());
+            // DAEMON only runs when nothing else is busy
+            assertEquals(0, daemonWhileHighBusy.get());
+            waitFor(daemon.actions, 1000);
+        }
+    }
+
+    @Test
+    public void removedAndClosedHandlersFinish() {
+        final CountingHandler invalid = new CountingHandler(HandlerPriority.MEDIUM) {
+            @Override
+            public boolean action() throws InvalidEventHandlerException {
+                if (actions.incrementAndGet() == 3)
+                    throw new InvalidEventHandlerException("done");
+                return false;
+            }
+        };
+        final CountingHandler timer = new CountingHandler(HandlerPriority.REPLICATION_TIMER);
+        final CountingHandler monitor = new CountingHandler(HandlerPriority.MONITOR);
+        final CountingHandler blocking = new CountingHandler(HandlerPriority.BLOCKING) {
+            @Override
+            public boolean action() {
+                actions.incrementAndGet();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                return false;
+            }
+        };
+        final CountingHandler neverStarted;
+        final PriorityEventLoop loop = new PriorityEventLoop("removedAndClosed");
+        try {
+            loop.addHandler(invalid);
+            loop.addHandler(timer);
+            loop.addHandler(monitor);
+            loop.addHandler(blocking);
+            loop.start();
+            waitFor(invalid.finished, 1);
+            assertEquals(3, invalid.actions.get());
+            assertEquals(1, invalid.started.get());
+            assertEquals(1, invalid.closed.get());
+            assertSame(loop, invalid.eventLoop);
+
+            waitFor(timer.actions, 2);
+            waitFor(monitor.actions, 2);
+            waitFor(blocking.actions, 2);
+            loop.stop();
+            assertTrue(loop.isStopped());
+            assertFalse(loop.isAlive());
+            try {
+                loop.addHandler(new CountingHandler(HandlerPriority.MEDIUM));
+                fail();
+            } catch (IllegalStateException expected) {
+                // stopped
+            }
+            neverStarted = new CountingHandler(HandlerPriority.MEDIUM);
+        } finally {
+            loop.close();
+        }
+        for (CountingHandler handler : new CountingHandler[]{timer, monitor, blocking}) {
+            assertEquals(1, handler.started.get());
+            assertEquals(1, handler.finished.get());
+            assertEquals(1, handler.closed.get());
+        }
+        try {
+            loop.addHandler(neverStarted);
+            fail();
+        } catch (ClosedIllegalStateException expected) {
+            // closed
+        }
+    }
+
+    @Test
+    public void handlersAddedBeforeStartFinishIfNeverStarted() {
+        final CountingHandler handler = new CountingHandler(HandlerPriority.HIGH);
+        final PriorityEventLoop loop = new PriorityEventLoop("neverStarted");
+        loop.addHandler(handler);
+        loop.close();
+        assertEquals(0, handler.started.get());
+        assertEquals(1, handler.finished.get());
+        assertEquals(1, handler.closed.get());
+    }
+
+    @Test
+    public void handlersAddedAsTheLoopStopsFinish() {
+        final CountingHandler medium = new CountingHandler(HandlerPriority.MEDIUM);
+        final CountingHandler monitor = new CountingHandler(HandlerPriority.MONITOR);
+        try (PriorityEventLoop loop = new PriorityEventLoop("addedAsTheLoopStops")) {
+            loop.addHandler(new CountingHandler(HandlerPriority.HIGH) {
+                @Override
+                public boolean action() {
+                    loop.addHandler(medium);
+                    loop.addHandler(monitor);
+                    // the core thread stops before it takes the handlers just added
+                    loop.stop();
+                    return false;
+                }
+            });
+            loop.start();
+            waitFor(medium.finished, 1);
+            waitFor(monitor.finished, 1);
+        }
+        assertEquals(0, medium.started.get());
+        assertEquals(0, medium.actions.get());
+        assertEquals(1, medium.finished.get());
+        assertEquals(1, medium.closed.get());
+        // the monitor thread may or may not have started it
+        assertEquals(1, monitor.finished.get());
+        assertEquals(1, monitor.closed.get());
+    }
+
+    @Test
+    public void blockingOnVirtualThreadsIfSupported() {
+        final AtomicReference<Thread> thread = new AtomicReference<>();
+        final CountingHandler blocking = new CountingHandler(HandlerPriority.BLOCKING) {
+            @Override
+            public boolean action() throws InvalidEventHandlerException {
+                thread.set(Thread.currentThread());
+                actions.incrementAndGet();
+                throw InvalidEventHandlerException.reusable();
+            }
+        };
+        if (!VirtualThreads.isSupported())
+            expectException("Virtual threads are not supported");
+        try (PriorityEventLoop loop = new PriorityEventLoop("virtualThreads", Pauser.busy(), null, true)) {
+            assertEquals(VirtualThreads.isSupported(), loop.virtualThreads());
+            loop.addHandler(blocking);
+            loop.start();
+            waitFor(blocking.finished, 1);
+        }
+        assertEquals("virtualThreads~blocking-1", thread.get().getName());
+        assertEquals(VirtualThreads.isSupported(), VirtualThreads.isVirtual(thread.get()));
+    }
+
+    @Test
+    public void pauserFromSystemProperty() {
+        assertTrue(PriorityEventLoop.pauserFor("pauserFromSystemProperty") instanceof BackoffPauser);
+        System.setProperty("pauserFromSystemProperty.pauser", "busy");
+        try {
+            assertSame(Pauser.busy(), PriorityEventLoop.pauserFor("pauserFromSystemProperty"));
+        } finally {
+            System.clearProperty("pauserFromSystemProperty.pauser");
+        }
+    }
+
+    static class CountingHandler implements EventHandler, Closeable {
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger actions = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+        private final HandlerPriority priority;
+        volatile EventLoop eventLoop;
+
+        CountingHandler(HandlerPriority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public void eventLoop(EventLoop eventLoop) {
+            this.eventLoop = eventLoop;
+        }
+
+        @Override
+        public void loopStarted() {
+            started.incrementAndGet();
+        }
+
+        @Override
+        public boolean action() throws InvalidEventHandlerException {
+            actions.incrementAndGet();
+            return false;
+        }
+
+        @Override
+        public void loopFinished() {
+            finished.incrementAndGet();
+        }
+
+        @Override
+        public @NotNull HandlerPriority priority() {
+            return priority;
+        }
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.io.IOTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StallProfilerTest extends CoreTestCommon {
+
+    @Test
+    public void samplesOnlyStalledThreads() throws IOException {
+        try (StallProfiler profiler = new StallProfiler("samplesOnlyStalledThreads~", TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.DAYS.toNanos(1), null, 0)) {
+            StallProfiler.Monitor monitor = profiler.monitorCurrentThread();
+            assertEquals(1, profiler.monitored());
+            long now = System.nanoTime();
+            // not at a stage yet
+            assertFalse(profiler.sample(monitor, now));
+
+            monitor.atStage("fast");
+            assertFalse(profiler.sample(monitor, System.nanoTime()));
+
+            monitor.atStage("slow");
+            final long later = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+            // the same stack is counted twice
+            for (int i = 0; i < 2; i++)
+                assertTrue(profiler.sample(monitor, later));
+            assertEquals(2, profiler.samples());
+
+            monitor.finished();
+            assertFalse(profiler.sample(monitor, later));
+
+            StringBuilder sb = new StringBuilder();
+            profiler.writeReport(sb);
+            String report = sb.toString();
+            assertTrue(report, report.contains(StallProfiler.PROFILE_OF_THE_THREAD + " " + Thread.currentThread().getName() + " slow " +
+                    StallProfiler.THREAD_HAS_BLOCKED_FOR + " "));
+            assertTrue(report, report.contains(StallProfiler.SAMPLES + "2\n\tat "));
+            assertEquals(1, profiler.stacks());
+
+            monitor.close();
+            assertEquals(0, profiler.monitored());
+        }
+    }
+
+    @Test
+    public void reportFileForAnalyser() throws InterruptedException, IOException {
+        final File file = IOTools.createTempFile("reportFileForAnalyser");
+        final StallProfiler profiler = new StallProfiler("reportFileForAnalyser~", TimeUnit.MILLISECONDS.toNanos(5), TimeUnit.MILLISECONDS.toNanos(1), file, 50);
+        final Thread thread = new Thread(() -> {
+            final StallProfiler.Monitor monitor = profiler.monitorCurrentThread();
+            for (int i = 0; i < 5; i++) {
+                monitor.atStage("pausing");
+                Jvm.pause(20);
+                monitor.finished();
+            }
+            monitor.close();
+        }, "stalling");
+        thread.start();
+        thread.join();
+        profiler.close();
+
+        assertTrue(profiler.samples() > 0);
+        final String report = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        assertTrue(report, report.contains(StallProfiler.PROFILE_OF_THE_THREAD + " stalling pausing"));
+        assertEquals(1, MonitorProfileAnalyserMain.samplesOf("thread has blocked for 10 ms"));
+        assertEquals(37, MonitorProfileAnalyserMain.samplesOf("profile of the thread main stage thread has blocked for 10 ms, samples 37"));
+    }
+}
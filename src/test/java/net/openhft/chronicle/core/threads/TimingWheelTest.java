@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.time.SetTimeProvider;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest extends CoreTestCommon {
+    static final long TICK = TimeUnit.MICROSECONDS.toNanos(100);
+
+    @Test
+    public void neverEarlyAndAtMostATickLate() throws InvalidEventHandlerException {
+        final SetTimeProvider time = new SetTimeProvider(1_000_000_000L);
+        final TimingWheel wheel = new TimingWheel(time, TICK, HandlerPriority.TIMER);
+        final Random random = new Random(1);
+        final int count = 10_000;
+        final long[] deadlines = new long[count];
+        final long[] ranAt = new long[count];
+        for (int i = 0; i < count; i++) {
+            // up to 2^55 ns, beyond the range of the top level
+            final long delay = random.nextLong() >>> (8 + random.nextInt(48));
+            deadlines[i] = time.currentTimeNanos() + delay;
+            final int n = i;
+            wheel.schedule(() -> ranAt[n] = time.currentTimeNanos(), delay);
+        }
+        wheel.action();
+        while (wheel.size() > 0) {
+            time.advanceNanos(random.nextLong() >>> (8 + random.nextInt(48)));
+            wheel.action();
+            final long now = time.currentTimeNanos();
+            for (int i = 0; i < count; i++) {
+                if (deadlines[i] + TICK <= now)
+                    assertTrue("task " + i + " is late", ranAt[i] != 0);
+                else if (deadlines[i] > now)
+                    assertEquals(0, ranAt[i]);
+            }
+        }
+        for (int i = 0; i < count; i++)
+            assertTrue(ranAt[i] >= deadlines[i]);
+    }
+
+    @Test
+    public void periodicAndCancel() throws InvalidEventHandlerException, IOException {
+        final SetTimeProvider time = new SetTimeProvider(0);
+        final TimingWheel wheel = new TimingWheel(time, TICK, HandlerPriority.TIMER);
+        wheel.loopStarted();
+        final List<String> calls = new ArrayList<>();
+        final TimingWheel.Task heartbeat = wheel.schedule(() -> calls.add("heartbeat " + time.currentTimeMillis()), 10_000_000, 20_000_000);
+        final TimingWheel.Task expiry = wheel.schedule(() -> calls.add("expiry"), 15_000_000);
+        assertEquals(2, wheel.size());
+
+        for (int ms = 0; ms <= 50; ms++) {
+            time.currentTimeMillis(ms);
+            wheel.action();
+            if (ms == 12)
+                expiry.close();
+        }
+        assertEquals("[heartbeat 10, heartbeat 30, heartbeat 50]", calls.toString());
+        assertTrue(expiry.isCancelled());
+        assertEquals(1, wheel.size());
+
+        heartbeat.close();
+        assertEquals(0, wheel.size());
+        wheel.close();
+        assertTrue(heartbeat.isCancelled());
+        try {
+            wheel.action();
+            fail();
+        } catch (InvalidEventHandlerException expected) {
+            // removed from the event loop
+        }
+    }
+
+    @Test
+    public void cancelledByAnotherTaskInTheSameSlot() throws InvalidEventHandlerException {
+        final SetTimeProvider time = new SetTimeProvider(0);
+        final TimingWheel wheel = new TimingWheel(time, TICK, HandlerPriority.TIMER);
+        wheel.loopStarted();
+        final List<String> calls = new ArrayList<>();
+        // tasks are added to the front of a slot, so these run first, second, third
+        wheel.schedule(() -> calls.add("third"), 1_000_000);
+        final TimingWheel.Task second = wheel.schedule(() -> calls.add("second"), 1_000_000);
+        wheel.schedule(() -> {
+            calls.add("first");
+            second.close();
+        }, 1_000_000);
+        assertEquals(3, wheel.size());
+
+        time.currentTimeMillis(1);
+        wheel.action();
+        assertEquals("[first, third]", calls.toString());
+        assertTrue(second.isCancelled());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void millisecondPeriodIsMeasuredFromTheStartOfTheCall() throws InvalidEventHandlerException {
+        final List<EventHandler> handlers = new ArrayList<>();
+        final SetTimeProvider time = new SetTimeProvider(0);
+        final CancellableTimer timer = new CancellableTimer(new InstrumentedEventHandlerTest.CollectingEventLoop(handlers), time, TICK);
+        final List<Long> calls = new ArrayList<>();
+        timer.scheduleAtFixedRate(() -> {
+            calls.add(time.currentTimeMillis());
+            // the call takes 5 ms
+            time.advanceMillis(5);
+            return false;
+        }, 10, 10);
+        final EventHandler wheel = handlers.get(0);
+        for (int ms = 0; ms <= 40; ms++) {
+            time.currentTimeMillis(Math.max(ms, time.currentTimeMillis()));
+            wheel.action();
+        }
+        assertEquals("[10, 20, 30, 40]", calls.toString());
+    }
+
+    @Test
+    public void periodZeroRepeatsWithAndWithoutAWheel() throws InvalidEventHandlerException {
+        for (long tickNanos : new long[]{0, TICK}) {
+            final List<EventHandler> handlers = new ArrayList<>();
+            final SetTimeProvider time = new SetTimeProvider(0);
+            final CancellableTimer timer = new CancellableTimer(new InstrumentedEventHandlerTest.CollectingEventLoop(handlers), time, tickNanos);
+            final List<Long> atFixedRate = new ArrayList<>();
+            final List<Long> withFixedDelay = new ArrayList<>();
+            timer.scheduleAtFixedRate(() -> atFixedRate.add(time.currentTimeMillis()), 1, 0);
+            timer.scheduleWithFixedDelay(() -> withFixedDelay.add(time.currentTimeMillis()), 1, 0, TimeUnit.MILLISECONDS);
+            for (int ms = 0; ms <= 4; ms++) {
+                time.currentTimeMillis(ms);
+                for (EventHandler handler : handlers)
+                    handler.action();
+            }
+            assertEquals("tickNanos " + tickNanos, "[1, 2, 3, 4]", atFixedRate.toString());
+            assertEquals("tickNanos " + tickNanos, "[1, 2, 3, 4]", withFixedDelay.toString());
+        }
+    }
+
+    @Test
+    public void cancelledFromAnotherThread() throws InvalidEventHandlerException, InterruptedException {
+        final SetTimeProvider time = new SetTimeProvider(0);
+        final TimingWheel wheel = new TimingWheel(time, TICK, HandlerPriority.TIMER);
+        wheel.loopStarted();
+        final int[] calls = {0};
+        final TimingWheel.Task task = wheel.schedule(() -> {
+            calls[0]++;
+            return false;
+        }, 1_000_000, 1_000_000);
+        final Thread thread = new Thread(task::close);
+        thread.start();
+        thread.join();
+        // unlinked when its slot is reached
+        assertEquals(1, wheel.size());
+        time.currentTimeMillis(5);
+        wheel.action();
+        assertEquals(0, calls[0]);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void handlerCanRemoveItself() throws InvalidEventHandlerException {
+        final SetTimeProvider time = new SetTimeProvider(0);
+        final TimingWheel wheel = new TimingWheel(time, TICK, HandlerPriority.TIMER);
+        final int[] calls = {0};
+        final TimingWheel.Task task = wheel.schedule(() -> {
+            if (++calls[0] == 3)
+                throw InvalidEventHandlerException.reusable();
+            return true;
+        }, 0, 1_000_000);
+        for (int ms = 0; ms < 10; ms++) {
+            time.currentTimeMillis(ms);
+            wheel.action();
+        }
+        assertEquals(3, calls[0]);
+        assertTrue(task.isCancelled());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cancellableTimerUsesOneHandlerPerPriority() throws InvalidEventHandlerException, IOException {
+        final List<EventHandler> handlers = new ArrayList<>();
+        final SetTimeProvider time = new SetTimeProvider(0);
+        final CancellableTimer timer = new CancellableTimer(new InstrumentedEventHandlerTest.CollectingEventLoop(handlers), time, TICK);
+        final int[] calls = {0};
+        for (int i = 0; i < 1000; i++)
+            timer.scheduleAtFixedRate(() -> {
+                calls[0]++;
+                return false;
+            }, 1, 10);
+        final Closeable once = timer.schedule(() -> calls[0] += 1000, 5);
+        timer.scheduleAtFixedRate(() -> false, 1, 10, HandlerPriority.REPLICATION_TIMER);
+        assertEquals(2, handlers.size());
+
+        final TimingWheel wheel = (TimingWheel) handlers.get(0);
+        time.currentTimeMillis(1);
+        wheel.action();
+        assertEquals(1000, calls[0]);
+        once.close();
+        time.currentTimeMillis(11);
+        wheel.action();
+        assertEquals(2000, calls[0]);
+    }
+
+    @Test
+    public void fixedRateAndFixedDelay() throws InvalidEventHandlerException {
+        final SetTimeProvider time = new SetTimeProvider(0);
+        final TimingWheel wheel = new TimingWheel(time, TICK, HandlerPriority.TIMER);
+        final List<Long> rate = new ArrayList<>();
+        final List<Long> delay = new ArrayList<>();
+        wheel.schedule(() -> rate.add(time.currentTimeMillis()), 1_000_000, 1_000_000, true);
+        wheel.schedule(() -> delay.add(time.currentTimeMillis()), 1_000_000, 1_000_000, false);
+        for (int ms : new int[]{1, 3, 4}) {
+            time.currentTimeMillis(ms);
+            wheel.action();
+        }
+        // the fixed rate task catches up on the call due at 2 ms
+        assertEquals("[1, 3, 3, 4]", rate.toString());
+        assertEquals("[1, 3, 4]", delay.toString());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.openhft.chronicle.core.threads;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.Jvm;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class VirtualThreadsTest extends CoreTestCommon {
+
+    @Test
+    public void supportedFromJava21() {
+        assertEquals(Jvm.majorVersion() >= 21, VirtualThreads.isSupported());
+        assertFalse(VirtualThreads.isVirtual(Thread.currentThread()));
+        if (!VirtualThreads.isSupported()) {
+            try {
+                VirtualThreads.newThread("unsupported", () -> {
+                });
+                fail();
+            } catch (UnsupportedOperationException expected) {
+                // Java 8 to 20
+            }
+        }
+    }
+
+    @Test
+    public void cleansUpThreadLocals() throws InterruptedException {
+        assumeTrue(VirtualThreads.isSupported());
+        final AtomicInteger cleaned = new AtomicInteger();
+        final CleaningThreadLocal<String> threadLocal = CleaningThreadLocal.withCleanup(() -> "value", s -> cleaned.incrementAndGet());
+        final AtomicReference<String> seen = new AtomicReference<>();
+        final Thread thread = VirtualThreads.newThread("cleansUpThreadLocals", () -> seen.set(threadLocal.get()));
+        assertTrue(VirtualThreads.isVirtual(thread));
+        assertEquals("cleansUpThreadLocals", thread.getName());
+        thread.start();
+        thread.join();
+        assertEquals("value", seen.get());
+        assertEquals(1, cleaned.get());
+    }
+
+    @Test
+    public void pinnedStatistics() {
+        final long count = VirtualThreads.pinnedCount();
+        final long nanos = VirtualThreads.pinnedNanos();
+        VirtualThreads.pinned(Long.MAX_VALUE / 4);
+        VirtualThreads.pinned(1_000);
+        assertEquals(count + 2, VirtualThreads.pinnedCount());
+        assertEquals(nanos + Long.MAX_VALUE / 4 + 1_000, VirtualThreads.pinnedNanos());
+        assertEquals(Long.MAX_VALUE / 4, VirtualThreads.maxPinnedNanos());
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentHistogramTest extends CoreTestCommon {
+
+    @Test
+    public void sameBucketsAsHistogram() {
+        ConcurrentHistogram ch = new ConcurrentHistogram(10, 5, 1000);
+        Histogram h = new Histogram(10, 5, 1000);
+        long seed = 2141;
+        for (int i = 0; i <= 500; i++) {
+            assertEquals(h.sample(seed), ch.sample(seed));
+            seed += 128_981;
+            if (seed > 1_000_000)
+                seed -= 1_000_000;
+        }
+        ch.sampleNanos(1L << 40);
+        h.sampleNanos(1L << 40);
+        final Histogram snapshot = ch.snapshot();
+        assertEquals(h, snapshot);
+        assertEquals(h.totalCount(), snapshot.totalCount());
+        assertEquals(1, snapshot.overRange());
+        assertEquals(h.toMicrosFormat(), snapshot.toMicrosFormat());
+    }
+
+    @Test
+    public void manyThreads() throws Exception {
+        final int threads = 4;
+        final int samples = 100_000;
+        ConcurrentHistogram ch = ConcurrentHistogram.timeMicros();
+        ExecutorService es = Executors.newFixedThreadPool(threads, r -> new Thread(r, "sampler~"));
+        try {
+            Future<?>[] futures = new Future[threads];
+            for (int t = 0; t < threads; t++) {
+                final long nanos = (t + 1) * 10_000L;
+                futures[t] = es.submit(() -> {
+                    for (int i = 0; i < samples; i++)
+                        ch.sampleNanos(nanos);
+                });
+            }
+            // snapshots while the samples are being recorded
+            Histogram h = Histogram.timeMicros();
+            for (int i = 0; i < 10; i++) {
+                ch.snapshot(h);
+                long inBuckets = 0;
+                for (int count : h.sampleCount())
+                    inBuckets += count;
+                assertTrue(inBuckets <= h.totalCount());
+            }
+            for (Future<?> future : futures)
+                future.get();
+            assertEquals(threads, ch.shards());
+            assertEquals((long) threads * samples, ch.totalCount());
+            ch.snapshot(h);
+            assertEquals((long) threads * samples, h.totalCount());
+            assertEquals(10_000, h.min(), 1_000);
+            assertEquals(40_000, h.max(), 4_000);
+        } finally {
+            es.shutdown();
+            assertTrue(es.awaitTermination(1, TimeUnit.SECONDS));
+        }
+    }
+}
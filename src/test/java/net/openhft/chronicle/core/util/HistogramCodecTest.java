@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import org.junit.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+import static org.junit.Assert.*;
+
+public class HistogramCodecTest extends CoreTestCommon {
+
+    private static Histogram sampled(long seed) {
+        Histogram h = Histogram.timeMicros();
+        for (int i = 0; i <= 500; i++) {
+            h.sampleNanos(seed);
+            seed += 128_981;
+            if (seed > 1_000_000)
+                seed -= 1_000_000;
+        }
+        h.sampleNanos(Long.MAX_VALUE);
+        return h;
+    }
+
+    @Test
+    public void roundTripHeapAndDirect() {
+        Histogram h = sampled(2141);
+        HistogramCodec codec = new HistogramCodec();
+        final int length = codec.encodedLength(h);
+        assertTrue(length < 200);
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(256), ByteBuffer.allocateDirect(256)}) {
+            buffer.position(3);
+            assertEquals(length, codec.write(h, buffer));
+            assertEquals(3 + length, buffer.position());
+            buffer.flip().position(3);
+            Histogram h2 = codec.read(buffer);
+            assertEquals(3 + length, buffer.position());
+            assertEquals(h, h2);
+            assertEquals(h.totalCount(), h2.totalCount());
+            assertEquals(1, h2.overRange());
+            assertEquals(h.toMicrosFormat(), h2.toMicrosFormat());
+        }
+    }
+
+    @Test
+    public void mergeFromAddress() {
+        Histogram h1 = sampled(2141);
+        Histogram h2 = sampled(33);
+        HistogramCodec codec = new HistogramCodec();
+        final long address = MEMORY.allocate(1024);
+        try {
+            final long length = codec.write(h2, address);
+            assertEquals(codec.encodedLength(h2), length);
+            Histogram merged = sampled(2141);
+            assertEquals(length, codec.addTo(merged, address, length));
+            h1.add(h2);
+            assertEquals(h1, merged);
+            assertEquals(h1.totalCount(), merged.totalCount());
+            assertEquals(2, merged.overRange());
+
+            try {
+                codec.addTo(merged, address, length - 1);
+                fail();
+            } catch (BufferUnderflowException expected) {
+                // truncated encodings are rejected without changing the histogram
+            }
+            assertEquals(h1, merged);
+        } finally {
+            MEMORY.freeMemory(address, 1024);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void differentShape() {
+        HistogramCodec codec = new HistogramCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        codec.write(sampled(1), buffer);
+        buffer.flip();
+        codec.addTo(new Histogram(), buffer);
+    }
+
+    @Test
+    public void emptyAndNegative() {
+        HistogramCodec codec = new HistogramCodec();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        Histogram empty = new Histogram(10, 2);
+        codec.write(empty, buffer);
+        buffer.flip();
+        assertEquals(empty, codec.read(buffer));
+
+        // a delta can have negative counts
+        Histogram delta = new Histogram(10, 2);
+        delta.sample(3);
+        delta.subtract(sampledOnce(5));
+        buffer.clear();
+        final int length = codec.write(delta, buffer);
+        buffer.flip();
+        Histogram delta2 = codec.read(buffer);
+        assertEquals(length, buffer.position());
+        assertEquals(delta, delta2);
+        assertEquals(0, delta2.totalCount());
+    }
+
+    private static Histogram sampledOnce(double value) {
+        Histogram h = new Histogram(10, 2);
+        h.sample(value);
+        return h;
+    }
+}
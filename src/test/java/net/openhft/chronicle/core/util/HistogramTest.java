@@ -19,11 +19,14 @@
 package net.openhft.chronicle.core.util;
 
 import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.UnsafeMemory;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 public class HistogramTest extends CoreTestCommon {
@@ -98,6 +101,126 @@ public class HistogramTest extends CoreTestCommon {
         assertEquals(both, h1);
     }
 
+    @Test
+    public void testSubtract() {
+        Histogram h1 = Histogram.timeMicros();
+        sampleWithSeed(h1, 2141);
+        Histogram snapshot = Histogram.timeMicros();
+        snapshot.add(h1);
+
+        Histogram h2 = Histogram.timeMicros();
+        sampleWithSeed(h2, 33);
+        h1.add(h2);
+        h1.sampleNanos(Long.MAX_VALUE);
+        h2.sampleNanos(Long.MAX_VALUE);
+
+        h1.subtract(snapshot);
+        assertEquals(h2, h1);
+        assertEquals(h2.totalCount(), h1.totalCount());
+        assertEquals(1, h1.overRange());
+    }
+
+    @Test
+    public void percentilesWithoutAllocating() {
+        for (long count : new long[]{1, 20_000, 50_000_000})
+            assertArrayEquals(Histogram.percentilesFor(count), percentilesFor(count), 0.0);
+
+        Histogram h = new Histogram(10, 5, 1000);
+        sampleWithSeed(h, 2141);
+        h.sampleNanos(Long.MAX_VALUE);
+        double[] fractions = {0, 0.1, 0.5, 0.5, 0.99, 0.999, 1, 0.3};
+        double[] values = new double[fractions.length];
+        h.getPercentiles(fractions, fractions.length, values);
+        for (int i = 0; i < fractions.length; i++)
+            assertEquals(h.percentile(fractions[i]), values[i], 0.0);
+
+        final long address = UnsafeMemory.MEMORY.allocate(fractions.length * 8L);
+        try {
+            h.getPercentiles(fractions, fractions.length, address);
+            for (int i = 0; i < fractions.length; i++)
+                assertEquals(values[i], UnsafeMemory.MEMORY.readDouble(address + i * 8L), 0.0);
+        } finally {
+            UnsafeMemory.MEMORY.freeMemory(address, fractions.length * 8L);
+        }
+    }
+
+    private static double[] percentilesFor(long count) {
+        double[] fractions = new double[Histogram.MAX_PERCENTILES];
+        return Arrays.copyOf(fractions, Histogram.percentilesFor(count, fractions));
+    }
+
+    @Test
+    public void appendMicrosFormat() {
+        StringBuilder sb = new StringBuilder();
+        for (Histogram h : new Histogram[]{new Histogram(), Histogram.timeMicros(), new Histogram(40, 2), new Histogram(10, 5, 1000)}) {
+            for (int i = 0; i < 3; i++) {
+                if (i == 1)
+                    sampleWithSeed(h, 2141);
+                if (i == 2)
+                    for (int j = 0; j < 2_000_000; j++)
+                        h.sampleNanos(j * 7L);
+                sb.setLength(0);
+                assertEquals(h.toMicrosFormat(), h.appendMicrosFormat(sb).toString());
+                sb.setLength(0);
+                assertEquals(h.toLongMicrosFormat(), h.appendLongMicrosFormat(sb).toString());
+            }
+        }
+    }
+
+    @Test
+    public void appendPMatchesP() {
+        StringBuilder sb = new StringBuilder();
+        for (Histogram h : new Histogram[]{new Histogram(), new Histogram(40, 2), new Histogram(10, 5, 1000)}) {
+            Random rand = new Random(h.fractionBits());
+            for (int i = 0; i < 200_000; i++) {
+                double v = rand.nextDouble() * Math.pow(10, rand.nextInt(16) - 4);
+                assertAppendP(h, sb, v);
+                assertAppendP(h, sb, -v);
+                // half way between the digits shown, some exactly
+                double tie = (rand.nextInt(100_000) + 0.5) / Math.pow(10, rand.nextInt(4));
+                assertAppendP(h, sb, tie);
+                assertAppendP(h, sb, rand.nextInt(1 << 20) / 8.0);
+                assertAppendP(h, sb, Math.nextUp(tie));
+                assertAppendP(h, sb, Math.nextDown(tie));
+            }
+            for (double v : new double[]{0.0, -0.0, 0.0005, 0.0015, 0.0025, 1.005, 2.675, 9.995, 99.95, 999.5, 1e11, 1e12, 1e15, 1e18, 1e20, Long.MAX_VALUE,
+                    Double.MIN_VALUE, Double.MAX_VALUE, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN}) {
+                assertAppendP(h, sb, v);
+                assertAppendP(h, sb, -v);
+            }
+        }
+    }
+
+    private static void assertAppendP(Histogram h, StringBuilder sb, double v) {
+        sb.setLength(0);
+        h.appendP(sb, v);
+        assertEquals(Double.toString(v), h.p(v), sb.toString());
+    }
+
+    @Test
+    public void correctedForCoordinatedOmission() {
+        Histogram raw = Histogram.timeMicros();
+        Histogram corrected = Histogram.timeMicros().expectedIntervalNanos(10_000);
+        Histogram wrapped = Histogram.timeMicros();
+        NanoSampler sampler = NanoSampler.withExpectedInterval(wrapped, 10_000);
+        for (int i = 0; i < 99; i++) {
+            raw.sampleNanos(5_000);
+            corrected.sampleNanos(5_000);
+            sampler.sampleNanos(5_000);
+        }
+        // a 1 ms stall delayed 99 more samples of 990, 980 ... 10 us
+        raw.sampleNanos(1_000_000);
+        corrected.sampleNanos(1_000_000);
+        sampler.sampleNanos(1_000_000);
+
+        assertEquals(100, raw.totalCount());
+        assertEquals(199, corrected.totalCount());
+        assertEquals(corrected, wrapped);
+        assertEquals(5_000, raw.percentile(0.9), 500);
+        assertEquals(500_000, corrected.percentile(0.75), 50_000);
+        assertEquals(raw.max(), corrected.max(), 0.0);
+    }
+
     private int percentile(@NotNull Histogram h, double fraction) {
         return (int) h.percentile(fraction) / 10000;
     }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class IntervalRecorderTest extends CoreTestCommon {
+
+    @Test
+    public void intervalsAndWindows() {
+        IntervalRecorder recorder = new IntervalRecorder(Histogram::timeMicros, 3);
+        Histogram window = Histogram.timeMicros();
+        for (int i = 1; i <= 4; i++) {
+            for (int j = 0; j < i; j++)
+                recorder.sampleNanos(i * 10_000);
+            final Histogram interval = recorder.interval();
+            assertEquals(i, interval.totalCount());
+            assertEquals(i * 10_000, interval.max(), i * 1_000);
+        }
+        assertEquals(4, recorder.intervals());
+        assertEquals(4, recorder.window(1, window).totalCount());
+        // only the last 3 intervals are kept
+        assertEquals(2 + 3 + 4, recorder.window(3, window).totalCount());
+        assertEquals(20_000, window.min(), 2_000);
+        assertEquals(0, recorder.interval().totalCount());
+    }
+
+    @Test
+    public void noSamplesLost() throws InterruptedException {
+        IntervalRecorder recorder = new IntervalRecorder(Histogram::timeMicros, 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong sampled = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            long count = 0;
+            while (running.get()) {
+                recorder.sampleNanos(1_000);
+                count++;
+            }
+            sampled.set(count);
+        }, "writer");
+        writer.start();
+        long total = 0;
+        for (int i = 0; i < 100; i++) {
+            total += recorder.interval().totalCount();
+            Thread.yield();
+        }
+        running.set(false);
+        writer.join();
+        total += recorder.interval().totalCount();
+        assertEquals(sampled.get(), total);
+    }
+}
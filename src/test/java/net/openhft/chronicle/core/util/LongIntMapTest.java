@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.io.IOTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class LongIntMapTest extends CoreTestCommon {
+
+    @Test
+    public void putGetRemove() {
+        try (LongIntMap map = new LongIntMap(4)) {
+            assertTrue(map.put(1, Integer.MIN_VALUE));
+            assertFalse(map.put(1, Integer.MAX_VALUE));
+            assertTrue(map.put(Long.MAX_VALUE, -1));
+            assertEquals(Integer.MAX_VALUE, map.getOrDefault(1, 0));
+            assertEquals(-1, map.getOrDefault(Long.MAX_VALUE, 0));
+            assertEquals(7, map.getOrDefault(2, 7));
+            assertTrue(map.remove(1));
+            assertFalse(map.remove(1));
+            assertFalse(map.containsKey(1));
+            assertEquals(1, map.size());
+
+            for (int i = 0; i < 100; i++)
+                map.put(i, i);
+            int[] sum = {0};
+            map.forEach((key, value) -> sum[0] += value);
+            assertEquals(99 * 100 / 2 - 1, sum[0]);
+        }
+    }
+
+    @Test
+    public void persisted() throws IOException {
+        File file = IOTools.createTempFile("persisted");
+        try {
+            try (LongIntMap map = new LongIntMap(file, 100)) {
+                map.put(42, 420);
+            }
+            try (LongIntMap map = new LongIntMap(file, 100)) {
+                assertEquals(420, map.getOrDefault(42, 0));
+                assertEquals(1, map.size());
+            }
+            // a LongLongMap can't be read as a LongIntMap
+            try (LongLongMap map = new LongLongMap(file, 100)) {
+                fail(map.toString());
+            } catch (IOException expected) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.Jvm;
+import net.openhft.chronicle.core.io.ClosedIllegalStateException;
+import net.openhft.chronicle.core.io.IOTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.chronicle.core.util.LongLongMap.NO_VALUE;
+import static org.junit.Assert.*;
+
+public class LongLongMapTest extends CoreTestCommon {
+
+    @Test
+    public void putGetRemove() {
+        try (LongLongMap map = new LongLongMap(16)) {
+            assertTrue(map.isEmpty());
+            assertEquals(NO_VALUE, map.put(1, 10));
+            assertEquals(10, map.put(1, 11));
+            assertEquals(NO_VALUE, map.put(0, 100));
+            assertEquals(NO_VALUE, map.put(-1, -100));
+            assertEquals(3, map.size());
+            assertEquals(11, map.get(1));
+            assertEquals(100, map.get(0));
+            assertEquals(-100, map.get(-1));
+            assertEquals(NO_VALUE, map.get(2));
+            assertEquals(-2, map.getOrDefault(2, -2));
+            assertTrue(map.containsKey(0));
+
+            assertEquals(100, map.remove(0));
+            assertEquals(11, map.remove(1));
+            assertEquals(NO_VALUE, map.remove(1));
+            assertFalse(map.containsKey(1));
+            assertEquals(1, map.size());
+            assertEquals(NO_VALUE, map.put(1, 12));
+            assertEquals(12, map.get(1));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noValueCannotBeStored() {
+        try (LongLongMap map = new LongLongMap(16)) {
+            map.put(1, NO_VALUE);
+        }
+    }
+
+    @Test
+    public void resize() {
+        final long nativeMemoryUsed = Jvm.usedNativeMemory();
+        try (LongLongMap map = new LongLongMap(16)) {
+            final int capacity = map.capacity();
+            for (long i = 0; i < 10_000; i++)
+                map.put(i * 31, i);
+            assertTrue(map.capacity() > capacity);
+            assertEquals(10_000, map.size());
+            for (long i = 0; i < 10_000; i++)
+                assertEquals(i, map.get(i * 31));
+
+            Map<Long, Long> copy = new HashMap<>();
+            map.forEach(copy::put);
+            assertEquals(10_000, copy.size());
+            assertEquals(9999, (long) copy.get(9999 * 31L));
+        }
+        assertEquals(nativeMemoryUsed, Jvm.usedNativeMemory());
+    }
+
+    @Test
+    public void churnDoesNotGrow() {
+        final long nativeMemoryUsed = Jvm.usedNativeMemory();
+        try (LongLongMap map = new LongLongMap(200)) {
+            final int capacity = map.capacity();
+            final long tableMemory = Jvm.usedNativeMemory() - nativeMemoryUsed;
+            // a steady 100 entries with keys which keep changing, like order ids
+            for (long i = 1; i <= 1_000_000; i++) {
+                map.put(i, i);
+                if (i > 100)
+                    assertEquals(i - 100, map.remove(i - 100));
+            }
+            assertEquals(100, map.size());
+            assertEquals(capacity, map.capacity());
+            // replaced tables aren't kept until close
+            assertEquals(tableMemory, Jvm.usedNativeMemory() - nativeMemoryUsed);
+            for (long i = 1_000_000 - 99; i <= 1_000_000; i++)
+                assertEquals(i, map.get(i));
+        }
+        assertEquals(nativeMemoryUsed, Jvm.usedNativeMemory());
+    }
+
+    @Test
+    public void forEachCanUpdate() {
+        try (LongLongMap map = new LongLongMap(16)) {
+            for (long i = 1; i <= 10; i++)
+                map.put(i, i);
+            final int capacity = map.capacity();
+            // puts enough entries to resize the table while visiting it
+            map.forEach((key, value) -> {
+                map.remove(key);
+                for (long i = 0; i < 10; i++)
+                    map.put(key * 100 + i, value);
+            });
+            assertTrue(map.capacity() > capacity);
+            assertEquals(100, map.size());
+            assertEquals(NO_VALUE, map.get(1));
+            assertEquals(7, map.get(705));
+        }
+    }
+
+    @Test(expected = ClosedIllegalStateException.class)
+    public void getAfterClose() {
+        LongLongMap map = new LongLongMap(16);
+        map.close();
+        map.get(1);
+    }
+
+    @Test
+    public void concurrentPuts() throws Exception {
+        ExecutorService es = Executors.newFixedThreadPool(4, r -> new Thread(r, "map~"));
+        try (LongLongMap map = new LongLongMap(16)) {
+            Future<?>[] futures = new Future[4];
+            for (int t = 0; t < futures.length; t++) {
+                final long thread = t;
+                futures[t] = es.submit(() -> {
+                    for (long i = 0; i < 20_000; i++) {
+                        map.put(i, i);
+                        map.put((thread + 1) << 32 | i, thread);
+                        assertEquals(i, map.get(i));
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures)
+                future.get();
+            assertEquals(5 * 20_000, map.size());
+            for (long t = 0; t < futures.length; t++)
+                for (long i = 0; i < 20_000; i++)
+                    assertEquals(t, map.get((t + 1) << 32 | i));
+        } finally {
+            es.shutdown();
+            assertTrue(es.awaitTermination(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void persisted() throws IOException {
+        File file = IOTools.createTempFile("persisted");
+        try {
+            try (LongLongMap map = new LongLongMap(file, 16)) {
+                for (long i = 0; i < 1000; i++)
+                    map.put(i, -i);
+                map.remove(500);
+            }
+            try (LongLongMap map = new LongLongMap(file, 16)) {
+                assertEquals(999, map.size());
+                assertEquals(-999, map.get(999));
+                assertEquals(0, map.get(0));
+                assertEquals(NO_VALUE, map.get(500));
+                map.put(500, 5);
+                assertEquals(1000, map.size());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void persistedChurnDoesNotGrow() throws IOException {
+        File file = IOTools.createTempFile("persistedChurn");
+        try {
+            final int capacity;
+            try (LongLongMap map = new LongLongMap(file, 200)) {
+                capacity = map.capacity();
+                for (long i = 1; i <= 100_000; i++) {
+                    map.put(i, i);
+                    if (i > 100)
+                        map.remove(i - 100);
+                }
+                assertEquals(capacity, map.capacity());
+            }
+            assertEquals(capacity * 16L + 64, file.length());
+            try (LongLongMap map = new LongLongMap(file, 200)) {
+                assertEquals(100, map.size());
+                assertEquals(100_000, map.get(100_000));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void crashDuringResizeLeavesTheOldTable() throws IOException {
+        File file = IOTools.createTempFile("crashDuringResize");
+        File resizing = new File(file.getPath() + ".resizing");
+        try {
+            try (LongLongMap map = new LongLongMap(file, 16)) {
+                for (long i = 1; i <= 100; i++)
+                    map.put(i, i);
+            }
+            // replaced once the rehash is complete
+            assertFalse(resizing.exists());
+            // as left by a crash part way through writing the new table
+            try (RandomAccessFile raf = new RandomAccessFile(resizing, "rw")) {
+                raf.setLength(1024);
+            }
+            try (LongLongMap map = new LongLongMap(file, 16)) {
+                assertEquals(100, map.size());
+                assertEquals(50, map.get(50));
+            }
+            assertFalse(resizing.exists());
+        } finally {
+            file.delete();
+            resizing.delete();
+        }
+    }
+}
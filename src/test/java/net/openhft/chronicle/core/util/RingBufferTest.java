@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.util;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import net.openhft.chronicle.core.io.IOTools;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+import static org.junit.Assert.*;
+
+public class RingBufferTest extends CoreTestCommon {
+
+    @Test
+    public void offerAndPoll() {
+        try (RingBuffer rb = new RingBuffer(4, 8, false)) {
+            assertEquals(-1, rb.poll(-1));
+            for (int i = 0; i < 4; i++)
+                assertTrue(rb.offer(i));
+            assertFalse(rb.offer(4));
+            assertEquals(4, rb.size());
+            assertEquals(0, rb.poll(-1));
+            assertTrue(rb.offer(4));
+            for (int i = 1; i <= 4; i++)
+                assertEquals(i, rb.poll(-1));
+            assertEquals(-1, rb.poll(-1));
+            assertEquals(0, rb.size());
+        }
+    }
+
+    @Test
+    public void batchClaimAndPublish() {
+        try (RingBuffer rb = new RingBuffer(8, 12, true)) {
+            final long first = rb.tryClaim(3);
+            final long second = rb.tryClaim(2);
+            assertEquals(0, first);
+            assertEquals(3, second);
+            for (int i = 0; i < 2; i++)
+                MEMORY.writeInt(rb.recordAddress(second + i) + 8, 30 + i);
+            rb.publish(second, 2);
+            // the first batch is still being written
+            assertEquals(0, rb.readable(8));
+            for (int i = 0; i < 3; i++)
+                MEMORY.writeInt(rb.recordAddress(first + i) + 8, 10 + i);
+            rb.publish(first, 3);
+            assertEquals(5, rb.readable(8));
+
+            int[] sum = {0};
+            assertEquals(5, rb.drain(address -> sum[0] += MEMORY.readInt(address + 8), 8));
+            assertEquals(10 + 11 + 12 + 30 + 31, sum[0]);
+            assertEquals(5, rb.head());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityNotPowerOf2() {
+        new RingBuffer(10, 8, false);
+    }
+
+    @Test
+    public void multipleProducers() throws Exception {
+        final int producers = 4;
+        final int perProducer = 100_000;
+        ExecutorService es = Executors.newFixedThreadPool(producers, r -> new Thread(r, "producer~"));
+        try (RingBuffer rb = new RingBuffer(1024, 8, true)) {
+            Future<?>[] futures = new Future[producers];
+            for (int t = 0; t < producers; t++) {
+                final long producer = t;
+                futures[t] = es.submit(() -> {
+                    for (long i = 0; i < perProducer; i++)
+                        while (!rb.offer(producer << 32 | i))
+                            Thread.yield();
+                });
+            }
+            final long[] next = new long[producers];
+            for (long received = 0; received < (long) producers * perProducer; ) {
+                final long value = rb.poll(-1);
+                if (value == -1) {
+                    Thread.yield();
+                    continue;
+                }
+                // each producer's values arrive in order
+                assertEquals(next[(int) (value >>> 32)]++, value & 0xFFFFFFFFL);
+                received++;
+            }
+            for (Future<?> future : futures)
+                future.get();
+            assertEquals(0, rb.size());
+        } finally {
+            es.shutdown();
+            assertTrue(es.awaitTermination(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void sharedViaFile() throws IOException {
+        File file = IOTools.createTempFile("sharedViaFile");
+        try {
+            try (RingBuffer producer = RingBuffer.map(file, 16, 8, false);
+                 RingBuffer consumer = RingBuffer.map(file, 16, 8, false)) {
+                assertTrue(producer.offer(123));
+                assertEquals(123, consumer.poll(-1));
+                assertTrue(producer.offer(456));
+            }
+            try (RingBuffer consumer = RingBuffer.map(file, 16, 8, false)) {
+                assertEquals(456, consumer.poll(-1));
+            }
+            try (RingBuffer rb = RingBuffer.map(file, 32, 8, false)) {
+                fail(rb.toString());
+            } catch (IOException expected) {
+                // expected
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
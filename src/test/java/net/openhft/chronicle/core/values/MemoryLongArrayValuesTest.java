@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016-2022 chronicle.software
+ *
+ *       https://chronicle.software
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.openhft.chronicle.core.values;
+
+import net.openhft.chronicle.core.CoreTestCommon;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+
+import static net.openhft.chronicle.core.UnsafeMemory.MEMORY;
+import static org.junit.Assert.*;
+
+public class MemoryLongArrayValuesTest extends CoreTestCommon {
+
+    @Test
+    public void bindValueAt() {
+        final long[] memory = new long[2 + 4];
+        final long offset = MEMORY.arrayBaseOffset(long[].class);
+        MemoryLongArrayValues.initialise(memory, offset, 4);
+        final MemoryLongArrayValues values = new MemoryLongArrayValues(memory, offset, null);
+
+        final MemoryLongValue value = values.valueAt(0);
+        values.bindValueAt(2, value);
+        value.setValue(22);
+        assertEquals(22, values.getValueAt(2));
+        assertEquals(0, values.getValueAt(0));
+        values.bindValueAt(3, value);
+        assertEquals(1, value.addAtomicValue(1));
+        assertEquals(1, values.getValueAt(3));
+        assertEquals(22, values.getValueAt(2));
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void bindValueAtOutOfBounds() {
+        final long[] memory = new long[2 + 4];
+        final long offset = MEMORY.arrayBaseOffset(long[].class);
+        MemoryLongArrayValues.initialise(memory, offset, 4);
+        new MemoryLongArrayValues(memory, offset, null).bindValueAt(4, MemoryLongValue.of(new long[1], 0));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void bindValueAtOtherLongValue() {
+        final long[] memory = new long[2 + 4];
+        final long offset = MEMORY.arrayBaseOffset(long[].class);
+        MemoryLongArrayValues.initialise(memory, offset, 4);
+        new MemoryLongArrayValues(memory, offset, null).bindValueAt(0, new UnsetLongValue(0));
+    }
+}